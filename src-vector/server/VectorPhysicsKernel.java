@@ -0,0 +1,97 @@
+package server;
+
+import common.PlayerStore;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The step of {@link PhysicsKernel} for several players at a time with the Vector API, as many
+ * as fit in the widest vectors of the machine.
+ * <p>
+ * Every lane goes through the same operations as the scalar step, branches being turned into
+ * masks, and no operation is fused, so each player ends up with exactly the same bits.
+ * <p>
+ * Kept in a source root of its own, {@code src-vector}, since it needs the incubating
+ * {@code jdk.incubator.vector} module to compile and run. {@link PhysicsKernel} loads it by
+ * reflection if it is on the class path and the module is loaded, and only uses it when asked
+ * to, see {@link PhysicsKernel#isVectorized()}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+class VectorPhysicsKernel implements PhysicsKernel.VectorStep {
+
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public int step(PlayerStore store, double[] grounds, double[] onGround, int count,
+      double groundFriction, double airFriction, double fall) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVelocityX();
+    double[] vy = store.getVelocityY();
+    double[] width = store.getWidth();
+    double[] height = store.getHeight();
+    // Every scalar as a vector, which operations with scalars would broadcast every time.
+    DoubleVector air = DoubleVector.broadcast(DOUBLES, airFriction);
+    DoubleVector friction = DoubleVector.broadcast(DOUBLES, groundFriction);
+    DoubleVector gravity = DoubleVector.broadcast(DOUBLES, fall);
+    DoubleVector stageWidth = DoubleVector.broadcast(DOUBLES, PhysicsKernel.STAGE_WIDTH);
+    DoubleVector two = DoubleVector.broadcast(DOUBLES, 2);
+    DoubleVector one = DoubleVector.broadcast(DOUBLES, 1);
+    DoubleVector minusOne = DoubleVector.broadcast(DOUBLES, -1);
+    DoubleVector zero = DoubleVector.zero(DOUBLES);
+
+    // Conditions are combined by blending, which unlike logic on masks is compiled to vector
+    // instructions everywhere. Negating is multiplying by -1, which is exact.
+    int bound = DOUBLES.loopBound(count);
+    for (int i = 0; i < bound; i += DOUBLES.length()) {
+      DoubleVector px = DoubleVector.fromArray(DOUBLES, x, i);
+      DoubleVector py = DoubleVector.fromArray(DOUBLES, y, i);
+      DoubleVector pvx = DoubleVector.fromArray(DOUBLES, vx, i);
+      DoubleVector pvy = DoubleVector.fromArray(DOUBLES, vy, i);
+      DoubleVector w = DoubleVector.fromArray(DOUBLES, width, i);
+      DoubleVector h = DoubleVector.fromArray(DOUBLES, height, i);
+      DoubleVector ground = DoubleVector.fromArray(DOUBLES, grounds, i);
+      DoubleVector was = DoubleVector.fromArray(DOUBLES, onGround, i);
+
+      // Off the ground above it, friction, gravity and landing. Whatever it was before, a player
+      // is on the ground after this exactly when its feet were not above it.
+      VectorMask<Double> below = py.add(h).compare(VectorOperators.LT, ground);
+      VectorMask<Double> grounded = was.compare(VectorOperators.NE, zero);
+      pvx = pvx.add(pvx.mul(air.blend(friction, grounded).blend(air, below)));
+      DoubleVector top = ground.sub(h);
+      pvy = zero.blend(pvy, grounded).blend(pvy.add(gravity), below);
+      py = top.blend(py, grounded).blend(py, below);
+      one.blend(zero, below).intoArray(onGround, i);
+
+      // Walls, see PhysicsKernel.bounce, the right one counting if both are passed.
+      DoubleVector half = w.div(two);
+      DoubleVector feetX = px.add(half);
+      DoubleVector right = stageWidth.sub(w);
+      VectorMask<Double> pastRight = feetX.add(half).compare(VectorOperators.GT, stageWidth);
+      VectorMask<Double> pastLeft = feetX.sub(half).compare(VectorOperators.LT, zero);
+      DoubleVector turned = pvx.mul(minusOne);
+      px = px.blend(right.min(px.mul(minusOne)), pastLeft)
+          .blend(right.sub(px.sub(right).max(zero)).max(zero), pastRight);
+      pvx = pvx.blend(turned, pastLeft).blend(turned, pastRight);
+
+      // Ceiling
+      VectorMask<Double> above = py.compare(VectorOperators.LT, zero);
+      py = py.blend(top.min(py.mul(minusOne)), above);
+      pvy = pvy.blend(pvy.mul(minusOne), above);
+
+      px.intoArray(x, i);
+      py.intoArray(y, i);
+      pvx.intoArray(vx, i);
+      pvy.intoArray(vy, i);
+    }
+    return bound;
+  }
+}
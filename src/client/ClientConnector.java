@@ -0,0 +1,227 @@
+package client;
+
+import common.Connection;
+import common.GameDefaults;
+import common.SocketConnection;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects a {@link GameClient} to a server on background threads so that the user interface
+ * keeps running while the server is looked up, connected to and waited on.
+ * <p>
+ * Every address the server name resolves to is tried at the same time and the first connection
+ * made is used, the others are closed. The client has joined once the server has assigned it a
+ * player, which happens when the match starts. The attempt can be cancelled at any point.
+ * <p>
+ * The listener is called on a background thread, user interfaces have to move the calls to their
+ * own thread. It is not called after {@link #cancel()}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ClientConnector {
+
+  private Listener listener;
+  private int timeoutMillis;
+  private ExecutorService executor;
+  private List<Socket> attempts;
+  private GameClient client;
+  private volatile boolean cancelled;
+
+  /**
+   * Creates an instance of ClientConnector.
+   *
+   * @param listener told about the progress of the connection
+   * @param timeout the longest time in seconds a connection attempt may take
+   */
+  public ClientConnector(Listener listener, double timeout) {
+    this.listener = listener;
+    timeoutMillis = (int) (timeout * 1000);
+    attempts = new ArrayList<>();
+    executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "GameClient connect");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts connecting to a server in the background. The listener is told once the match has
+   * started or if the client could not join.
+   *
+   * @param address address of server
+   * @param port port of server
+   */
+  public void connect(String address, int port) {
+    executor.execute(() -> {
+      try {
+        listener.onProgress("Looking up " + address);
+        InetAddress[] hosts = InetAddress.getAllByName(address);
+
+        Connection connection = GameClient.connectLocal(hosts[0], port);
+        if (connection == null) {
+          listener.onProgress("Connecting to " + address);
+          connection = connectSocket(hosts, port);
+        }
+
+        GameClient joining = new GameClient(address, port, connection);
+        if (GameDefaults.ROLLBACK_NETCODE) {
+          joining.enableRollback(GameDefaults.INPUT_DELAY, GameDefaults.MAX_ROLLBACK);
+        }
+        synchronized (attempts) {
+          client = joining;
+        }
+        if (cancelled) {
+          joining.close();
+          return;
+        }
+
+        listener.onProgress("Waiting for opponent");
+        joining.handshake();
+        if (cancelled) {
+          joining.close();
+        } else {
+          listener.onConnected(joining);
+        }
+      } catch (IOException e) {
+        if (!cancelled) {
+          listener.onConnectFailed(e);
+        }
+      } catch (InterruptedException e) {
+        // Cancelled
+      } finally {
+        executor.shutdown();
+      }
+    });
+  }
+
+  /**
+   * Tries every address at the same time and keeps the first connection made.
+   *
+   * @param hosts the addresses of the server
+   * @param port port of server
+   * @return the connection
+   * @throws IOException if no address could be connected to
+   * @throws InterruptedException if the attempt was cancelled
+   */
+  private Connection connectSocket(InetAddress[] hosts, int port)
+      throws IOException, InterruptedException {
+    CompletionService<Socket> done = new ExecutorCompletionService<>(executor);
+    for (InetAddress host : hosts) {
+      Socket socket = new Socket();
+      synchronized (attempts) {
+        if (cancelled) {
+          throw new InterruptedException();
+        }
+        attempts.add(socket);
+        done.submit(() -> {
+          socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+          return socket;
+        });
+      }
+    }
+
+    IOException failure = null;
+    try {
+      for (int i = 0; i < hosts.length; i++) {
+        // Every attempt ends by itself within the timeout, the extra second only guards it.
+        Future<Socket> attempt = done.poll(timeoutMillis + 1000L, TimeUnit.MILLISECONDS);
+        if (attempt == null) {
+          throw new SocketTimeoutException("Connect timed out");
+        }
+        try {
+          Socket socket = attempt.get();
+          synchronized (attempts) {
+            attempts.remove(socket);
+          }
+          return new SocketConnection(socket);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            failure = (IOException) e.getCause();
+          } else {
+            failure = new IOException(e.getCause());
+          }
+        }
+      }
+    } finally {
+      closeAttempts();
+    }
+    throw failure;
+  }
+
+  /**
+   * Closes the sockets of the attempts still in progress, which ends them.
+   */
+  private void closeAttempts() {
+    synchronized (attempts) {
+      for (Socket socket : attempts) {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      attempts.clear();
+    }
+  }
+
+  /**
+   * Stops connecting. A connection already made is closed unless the listener has been told
+   * about it.
+   */
+  public void cancel() {
+    cancelled = true;
+    closeAttempts();
+    synchronized (attempts) {
+      if (client != null && !client.isJoined()) {
+        client.close();
+      }
+    }
+    executor.shutdownNow();
+  }
+
+  /**
+   * Receives the progress of a connection.
+   */
+  public interface Listener {
+
+    /**
+     * Called with a description of what is being done.
+     *
+     * @param message the description
+     */
+    void onProgress(String message);
+
+    /**
+     * Called once the server has assigned the client a player.
+     *
+     * @param client the joined client, not yet started
+     */
+    void onConnected(GameClient client);
+
+    /**
+     * Called if the client could not connect or the connection was lost before the match
+     * started.
+     *
+     * @param exception the reason
+     */
+    void onConnectFailed(IOException exception);
+  }
+}
@@ -0,0 +1,249 @@
+package client;
+
+import common.GamePlayer;
+import common.GameStage;
+import common.StageSnapshot;
+import javafx.geometry.Point2D;
+import javafx.scene.input.KeyEvent;
+import server.GameController;
+import server.GameEngine;
+import server.PlayerController;
+import server.StageController;
+
+/**
+ * Predicts the owned player locally while the server stays authoritative.
+ * <p>
+ * Every frame the held actions are tagged with the frame number, sent to the server and applied
+ * locally right away. The input and the state before each frame are kept in a ring. When the
+ * server reports the state of the owned player together with the last frame of input it has
+ * received, the state is rewound to the frame after that, the server state is applied and the
+ * unacknowledged frames are simulated again. The difference between the old prediction and the
+ * corrected one is blended in over a few snapshots instead of snapping, unless it is too large.
+ * <p>
+ * Only used when online matches run without rollback, see
+ * {@link common.GameDefaults#ROLLBACK_NETCODE}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ClientPrediction implements GameController {
+
+  /**
+   * Share of a position correction that is applied per server snapshot.
+   */
+  public static final double CORRECTION_BLEND = 0.2;
+  /**
+   * Corrections larger than this, in stage units, are applied at once.
+   */
+  public static final double SNAP_DISTANCE = 2;
+
+  // Number of frames kept for replaying unacknowledged input, must be a power of two.
+  private static final int HISTORY = 128;
+  private static final int HISTORY_MASK = HISTORY - 1;
+
+  private GameStage stage;
+  private GameEngine engine;
+  private PlayerController controller;
+  private GamePlayer player;
+  private int localPlayer;
+  private InputSender sender;
+  private double frameTime;
+  private double accumulator;
+
+  private int[] masks;
+  private StageSnapshot[] snapshots;
+  private StageSnapshot current;
+
+  // Written by the JavaFX thread.
+  private volatile int localMask;
+
+  private int frame;
+  private int corrections;
+  private double lastError;
+
+  /**
+   * Creates an instance of ClientPrediction.
+   *
+   * @param stage the stage to simulate on
+   * @param localPlayer index of the owned player
+   * @param sender receives the input that is to be sent to the server
+   */
+  public ClientPrediction(GameStage stage, int localPlayer, InputSender sender) {
+    this.stage = stage;
+    this.localPlayer = localPlayer;
+    this.sender = sender;
+    player = stage.getPlayers()[localPlayer];
+    frameTime = 1d / GameEngine.DEFAULT_TPS;
+
+    engine = new GameEngine();
+    StageController stageController = new StageController(stage);
+    engine.addController(stageController);
+    controller = stageController.getPlayerController(localPlayer);
+    engine.addController(controller);
+
+    masks = new int[HISTORY];
+    snapshots = new StageSnapshot[HISTORY];
+    for (int i = 0; i < HISTORY; i++) {
+      snapshots[i] = new StageSnapshot(stage.getPlayers().length);
+    }
+    current = new StageSnapshot(stage.getPlayers().length);
+  }
+
+  /**
+   * Simulates as many frames as fit in {@param delta}.
+   *
+   * @param delta the time difference between this and the previous tick
+   */
+  @Override
+  public synchronized void update(double delta) {
+    accumulator += delta;
+    while (accumulator >= frameTime) {
+      int slot = frame & HISTORY_MASK;
+      int mask = localMask;
+
+      masks[slot] = mask;
+      snapshots[slot].captureFrom(stage);
+      sender.sendInput(frame, mask);
+
+      controller.queueActionMask(mask);
+      engine.tick(frameTime);
+      frame++;
+      accumulator -= frameTime;
+    }
+  }
+
+  /**
+   * Corrects the prediction with the state of the owned player reported by the server.
+   *
+   * @param ackFrame the last frame of input the server had received, or -1 for none
+   * @param position the position on the server
+   * @param velocity the velocity on the server
+   * @param hp the hit points on the server
+   * @param faceRight the facing on the server
+   */
+  public synchronized void reconcile(int ackFrame, Point2D position, Point2D velocity, int hp,
+      boolean faceRight) {
+    int from = ackFrame + 1;
+    if (from > frame || frame - from >= HISTORY) {
+      // Nothing to replay, or too old to replay, take the server state as it is.
+      player.setPosition(position);
+      player.setVelocity(velocity);
+      player.setHP(hp);
+      player.setFaceRight(faceRight);
+      return;
+    }
+
+    Point2D predicted = player.getPosition();
+    current.captureFrom(stage);
+
+    // Rewind to the first frame the server has not seen and apply the server state there.
+    if (from < frame) {
+      snapshots[from & HISTORY_MASK].restorePlayer(stage, localPlayer);
+      controller.setActionMask(from > 0 ? masks[(from - 1) & HISTORY_MASK] : 0);
+    }
+    player.setPosition(position);
+    player.setVelocity(velocity);
+    player.setFaceRight(faceRight);
+
+    for (int f = from; f < frame; f++) {
+      controller.queueActionMask(masks[f & HISTORY_MASK]);
+      engine.tick(frameTime);
+    }
+
+    // Other players are not predicted, undo what the replay did to them.
+    for (int i = 0; i < stage.getPlayers().length; i++) {
+      if (i != localPlayer) {
+        current.restorePlayer(stage, i);
+      }
+    }
+    player.setHP(hp);
+
+    Point2D corrected = player.getPosition();
+    lastError = corrected.distance(predicted);
+    if (lastError > 0) {
+      corrections++;
+    }
+    if (lastError < SNAP_DISTANCE) {
+      player.setPosition(predicted.add(corrected.subtract(predicted).multiply(CORRECTION_BLEND)));
+    }
+  }
+
+  /**
+   * Replaces the whole stage with a keyframe from the server, used after reconnecting.
+   *
+   * @param snapshot the state of the stage on the server
+   */
+  public synchronized void resync(StageSnapshot snapshot) {
+    snapshot.restore(stage);
+  }
+
+  /**
+   * Sets the actions currently held by the owned player.
+   *
+   * @param mask the action bitmask
+   */
+  public void setLocalInput(int mask) {
+    localMask = mask;
+  }
+
+  /**
+   * Gets the next frame to be simulated.
+   *
+   * @return the frame number
+   */
+  public synchronized int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Gets the number of snapshots that disagreed with the prediction.
+   *
+   * @return number of corrections
+   */
+  public synchronized int getCorrections() {
+    return corrections;
+  }
+
+  /**
+   * Gets the distance between prediction and server state at the last snapshot.
+   *
+   * @return the distance in stage units
+   */
+  public synchronized double getLastError() {
+    return lastError;
+  }
+
+  /**
+   * Attaches this prediction to an engine, which then drives it in real time.
+   *
+   * @param engine the engine to attach this controller to
+   */
+  @Override
+  public void attach(GameEngine engine) {
+    engine.addController(this);
+  }
+
+  /**
+   * Does nothing, input is given through {@link #setLocalInput(int)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyPressed(KeyEvent event) {
+
+  }
+
+  /**
+   * Does nothing, input is given through {@link #setLocalInput(int)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyReleased(KeyEvent event) {
+
+  }
+}
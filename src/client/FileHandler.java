@@ -1,8 +1,11 @@
 package client;
 
 
+import common.CancelGraph;
+import common.FrameTable;
 import common.GamePlayer;
 import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -40,6 +43,13 @@ public class FileHandler {
   private static double aSpool;
   private static double aDuration;
   private static double aCooldown;
+  private static String mName;
+  private static String mInput;
+  private static double mWindow;
+  private static double mCharge;
+  private static String cFrom;
+  private static String cPhase;
+  private static String cInto;
 
   /**
    * Imports the character data specified in an XML file using the SAX parser.
@@ -47,6 +57,16 @@ public class FileHandler {
    * @param player the player that receives the data
    */
   public static void importCharacters(GamePlayer player) {
+    importCharacters(player, null);
+  }
+
+  /**
+   * Imports character data using the SAX parser, from a stream instead of the character file.
+   *
+   * @param player the player that receives the data
+   * @param characters stream of character XML, or null to read the character file
+   */
+  public static void importCharacters(GamePlayer player, InputStream characters) {
 
     try {
 
@@ -69,6 +89,15 @@ public class FileHandler {
         boolean duration = false;
         boolean spool = false;
         boolean cooldown = false;
+        boolean charMotion = false;
+        boolean motionName = false;
+        boolean motionInput = false;
+        boolean motionWindow = false;
+        boolean motionCharge = false;
+        boolean charCancel = false;
+        boolean cancelFrom = false;
+        boolean cancelPhase = false;
+        boolean cancelInto = false;
 
         /**
          * Sets a specific boolean to true when a certain element starts.
@@ -127,6 +156,51 @@ public class FileHandler {
           if (qName.equalsIgnoreCase("KICK")) {
             charKick = true;
           }
+          if (qName.equalsIgnoreCase("MOTION")) {
+            charMotion = true;
+            mName = "";
+            mInput = "";
+            mWindow = 0;
+            mCharge = 0;
+          }
+          if (qName.equalsIgnoreCase("NAME")) {
+            motionName = true;
+          }
+          if (qName.equalsIgnoreCase("INPUT")) {
+            motionInput = true;
+          }
+          if (qName.equalsIgnoreCase("WINDOW")) {
+            motionWindow = true;
+          }
+          if (qName.equalsIgnoreCase("CHARGE")) {
+            motionCharge = true;
+          }
+          if (qName.equalsIgnoreCase("BOX") && (charJab || charKick)) {
+            double[] box = {Double.parseDouble(attributes.getValue("x")),
+                Double.parseDouble(attributes.getValue("y")),
+                Double.parseDouble(attributes.getValue("width")),
+                Double.parseDouble(attributes.getValue("height"))};
+            player.addFrameBox(charJab ? CancelGraph.JAB : CancelGraph.KICK,
+                "hit".equalsIgnoreCase(attributes.getValue("type")) ? FrameTable.HIT
+                    : FrameTable.HURT,
+                GamePlayer.toTicks(Double.parseDouble(attributes.getValue("from"))),
+                GamePlayer.toTicks(Double.parseDouble(attributes.getValue("to"))) - 1, box);
+          }
+          if (qName.equalsIgnoreCase("CANCEL")) {
+            charCancel = true;
+            cFrom = "";
+            cPhase = "";
+            cInto = "";
+          }
+          if (qName.equalsIgnoreCase("FROM")) {
+            cancelFrom = true;
+          }
+          if (qName.equalsIgnoreCase("PHASE")) {
+            cancelPhase = true;
+          }
+          if (qName.equalsIgnoreCase("INTO")) {
+            cancelInto = true;
+          }
         }
 
         /**
@@ -150,7 +224,8 @@ public class FileHandler {
           if (qName.equalsIgnoreCase("JAB")) {
             charJab = false;
             player.addHitbox(bX, bY, bWidth, bHeight);
-            player.setCycles(aSpool, aDuration, aCooldown, "jab");
+            player.setCycles(GamePlayer.toTicks(aSpool), GamePlayer.toTicks(aDuration),
+                GamePlayer.toTicks(aCooldown), "jab");
           }
           if (qName.equalsIgnoreCase("HEAD")) {
             boxHead = false;
@@ -192,8 +267,49 @@ public class FileHandler {
           if (qName.equalsIgnoreCase("KICK")) {
             charKick = false;
             player.addHitbox(bX, bY, bWidth, bHeight);
-            player.setCycles(aSpool, aDuration, aCooldown, "kick");
+            player.setCycles(GamePlayer.toTicks(aSpool), GamePlayer.toTicks(aDuration),
+                GamePlayer.toTicks(aCooldown), "kick");
+          }
+          if (qName.equalsIgnoreCase("MOTION")) {
+            charMotion = false;
+            player.addMotion(mName, mInput, GamePlayer.toTicks(mWindow),
+                GamePlayer.toTicks(mCharge));
+          }
+          if (qName.equalsIgnoreCase("NAME")) {
+            motionName = false;
+          }
+          if (qName.equalsIgnoreCase("INPUT")) {
+            motionInput = false;
+          }
+          if (qName.equalsIgnoreCase("WINDOW")) {
+            motionWindow = false;
           }
+          if (qName.equalsIgnoreCase("CHARGE")) {
+            motionCharge = false;
+          }
+          if (qName.equalsIgnoreCase("CANCEL")) {
+            charCancel = false;
+            player.addCancel(CancelGraph.indexOf(cFrom), CancelGraph.kindOf(cPhase),
+                CancelGraph.indexOf(cInto));
+          }
+          if (qName.equalsIgnoreCase("FROM")) {
+            cancelFrom = false;
+          }
+          if (qName.equalsIgnoreCase("PHASE")) {
+            cancelPhase = false;
+          }
+          if (qName.equalsIgnoreCase("INTO")) {
+            cancelInto = false;
+          }
+        }
+
+        /**
+         * Compiles the boxes of every frame once the whole character has been read.
+         *
+         * @throws SAXException is a specific exception for the SAX parser
+         */
+        public void endDocument() throws SAXException {
+          player.compileFrames();
         }
 
         /**
@@ -232,11 +348,40 @@ public class FileHandler {
           if (charHealth) {
             health = Integer.parseInt(new String(ch, start, length));
           }
+          if (charMotion) {
+            if (motionName) {
+              mName = new String(ch, start, length);
+            }
+            if (motionInput) {
+              mInput = new String(ch, start, length).trim();
+            }
+            if (motionWindow) {
+              mWindow = Double.parseDouble(new String(ch, start, length));
+            }
+            if (motionCharge) {
+              mCharge = Double.parseDouble(new String(ch, start, length));
+            }
+          }
+          if (charCancel) {
+            if (cancelFrom) {
+              cFrom = new String(ch, start, length);
+            }
+            if (cancelPhase) {
+              cPhase = new String(ch, start, length);
+            }
+            if (cancelInto) {
+              cInto = new String(ch, start, length);
+            }
+          }
         }
 
       };
 
-      saxParser.parse("charater.xml", handler);
+      if (characters == null) {
+        saxParser.parse("charater.xml", handler);
+      } else {
+        saxParser.parse(characters, handler);
+      }
 
     } catch (Exception e) {
       e.printStackTrace();
@@ -1,17 +1,23 @@
 package client;
 
+import client.screen.CreateScreen;
 import client.screen.EndScreen;
 import client.screen.JoinScreen;
 import client.screen.MainMenuScreen;
 import client.screen.NetworkPlayScreen;
 import client.screen.PlayScreen;
+import client.screen.ReplayScreen;
 import client.screen.Screen;
 import client.screen.SettingsScreen;
 import common.GameDefaults;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import server.ReplayPlayer;
 
 /**
  * Initializes the application and handles scene switching.
@@ -37,6 +43,10 @@ public class GameApplication extends Application {
    * Instance of <tt>JoinScreen</tt>.
    */
   public JoinScreen joinScreen;
+  /**
+   * Instance of <tt>CreateScreen</tt>.
+   */
+  public CreateScreen createScreen;
   /**
    * Instance of <tt>NetworkPlayScreen</tt>.
    */
@@ -49,6 +59,10 @@ public class GameApplication extends Application {
    * Instance of <tt>SettingsScreen</tt>.
    */
   public SettingsScreen settingsScreen;
+  /**
+   * Instance of <tt>ReplayScreen</tt>.
+   */
+  public ReplayScreen replayScreen;
 
   // Current active Screen
   private Screen activeScreen;
@@ -56,6 +70,8 @@ public class GameApplication extends Application {
 
   /**
    * The main function for the client in <tt>GameApplication</tt>. Launches the game.
+   * <p>
+   * Launching with <tt>--replay file</tt> opens a recorded match instead of the main menu.
    *
    * @param args Launch parameters
    */
@@ -81,11 +97,24 @@ public class GameApplication extends Application {
     playScreen = new PlayScreen(this);
     mainMenuScreen = new MainMenuScreen(this);
     joinScreen = new JoinScreen(this);
+    createScreen = new CreateScreen(this);
     networkPlayScreen = new NetworkPlayScreen(this);
     endScreen = new EndScreen(this);
     settingsScreen = new SettingsScreen(this);
+    replayScreen = new ReplayScreen(this);
     setActiveScreen(mainMenuScreen);
 
+    List<String> args = getParameters().getRaw();
+    int replayArg = args.indexOf("--replay");
+    if (replayArg >= 0 && replayArg + 1 < args.size()) {
+      try {
+        replayScreen.setReplay(new ReplayPlayer(Paths.get(args.get(replayArg + 1))));
+        setActiveScreen(replayScreen);
+      } catch (IOException e) {
+        System.err.println("Could not open replay: " + e.getMessage());
+      }
+    }
+
     // primaryStage is the stage provided by the javafx app instance
     stage.setOnCloseRequest(this::exit);
     stage.show();
@@ -116,6 +145,7 @@ public class GameApplication extends Application {
    */
   private void exit(WindowEvent windowEvent) {
     activeScreen.exit();
+    createScreen.stopHosting();
     Platform.exit();
   }
 }
@@ -1,21 +1,37 @@
 package client;
 
+import common.Connection;
 import common.GameDefaults;
 import common.GamePlayer;
 import common.GamePlayer.ACTION;
 import common.GameStage;
+import common.LatencyEstimator;
 import common.NetworkPacket;
+import common.SocketConnection;
+import common.StageSnapshot;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import javafx.geometry.Point2D;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import server.GameEngine;
+import server.GameServer;
 
 /**
  * Client that updates an internal game state based on packets received from a game server
+ * <p>
+ * If the connection drops during a match the client keeps trying to reconnect with its session
+ * token for {@link GameDefaults#RECONNECT_GRACE} seconds before giving up.
+ * <p>
+ * When the server runs in the same process, as when hosting a match, the client connects to it
+ * in memory instead of through a socket.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -29,9 +45,30 @@ public class GameClient implements Runnable {
   private GameStage gameStage;
   private GamePlayer player1;
   private GamePlayer player2;
-  private Socket clientSocket;
-  private InputStream inputStream;
+  private String address;
+  private int port;
+  private Connection clientSocket;
+  private DataInputStream inputStream;
   private OutputStream outputStream;
+  private Object sendLock;
+  private volatile int assignedPlayer;
+  private long sessionToken;
+  private volatile boolean closed;
+  private Runnable connectionLostListener;
+
+  private boolean rollback;
+  private int inputDelay;
+  private int maxRollback;
+  private RollbackSession rollbackSession;
+  private ClientPrediction prediction;
+  private GameEngine simulationEngine;
+  private volatile int heldMask;
+  // Input of the last frames sent, newest first, repeated in every input packet.
+  private int[] recentInputs;
+  private int recentCount;
+  private int recentFrame;
+  private InterpolationBuffer[] interpolation;
+  private LatencyEstimator latency;
 
   /**
    * Creates an instance of GameClient.
@@ -40,12 +77,76 @@ public class GameClient implements Runnable {
    * @throws IOException on any exception
    */
   public GameClient(String address, int port) throws IOException {
-    clientSocket = new Socket(address, port);
-    inputStream = clientSocket.getInputStream();
+    this(address, port, connect(address, port));
+  }
+
+  /**
+   * Creates an instance of GameClient on a connection that is already open.
+   * @param address address of server, used to reconnect
+   * @param port port of server, used to reconnect
+   * @param connection the connection to the server
+   * @throws IOException on any exception
+   */
+  GameClient(String address, int port, Connection connection) throws IOException {
+    this.address = address;
+    this.port = port;
+    sendLock = new Object();
+    clientSocket = connection;
+    inputStream = new DataInputStream(clientSocket.getInputStream());
     outputStream = clientSocket.getOutputStream();
     gameStage = new GameStage();
     player1 = gameStage.getPlayer1();
     player2 = gameStage.getPlayer2();
+
+    latency = new LatencyEstimator();
+    recentInputs = new int[GameDefaults.INPUT_REDUNDANCY];
+    interpolation = new InterpolationBuffer[gameStage.getPlayers().length];
+    for (int i = 0; i < interpolation.length; i++) {
+      interpolation[i] = new InterpolationBuffer(GameDefaults.INTERPOLATION_DELAY,
+          GameDefaults.MAX_EXTRAPOLATION);
+    }
+  }
+
+  /**
+   * Opens a connection to the server, in memory if the server runs in this process.
+   * @param address address of server
+   * @param port port of server
+   * @return the connection
+   * @throws IOException on any exception
+   */
+  private static Connection connect(String address, int port) throws IOException {
+    InetAddress host = InetAddress.getByName(address);
+    Connection local = connectLocal(host, port);
+    if (local != null) {
+      return local;
+    }
+
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(host, port),
+          (int) (GameDefaults.CONNECT_TIMEOUT * 1000));
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    return new SocketConnection(socket);
+  }
+
+  /**
+   * Opens an in memory connection if the server runs in this process and the address is one of
+   * this machine.
+   * @param host address of server
+   * @param port port of server
+   * @return the connection, or null if the server is elsewhere
+   * @throws IOException on any exception
+   */
+  static Connection connectLocal(InetAddress host, int port) throws IOException {
+    GameServer localServer = GameServer.getLocalServer(port);
+    if (localServer != null && (host.isLoopbackAddress() || host.isAnyLocalAddress()
+        || NetworkInterface.getByInetAddress(host) != null)) {
+      return localServer.connectLocal();
+    }
+    return null;
   }
 
   /**
@@ -67,13 +168,210 @@ public class GameClient implements Runnable {
     sendPacket(NetworkPacket.otherConnect("DefaultPlayer"));
   }
 
+  /**
+   * Joins the match and waits until the server assigns a player, which it does once the match
+   * starts. Called by {@link #run()} unless it has been called before.
+   * @throws IOException if the connection is closed before a player is assigned
+   */
+  public void handshake() throws IOException {
+    onConnect();
+    while (assignedPlayer == 0) {
+      if (!receivePacket()) {
+        throw new EOFException("Server closed the connection");
+      }
+    }
+  }
+
+  /**
+   * Answers whether the server has assigned a player to the client.
+   * @return true once the match has started
+   */
+  public boolean isJoined() {
+    return assignedPlayer != 0;
+  }
+
+  /**
+   * Closes the connection to the server without trying to reconnect.
+   */
+  public void close() {
+    closed = true;
+    sessionToken = 0;
+    try {
+      clientSocket.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Sets a listener that is told when the connection is lost and could not be resumed. It is
+   * called on the thread that runs the client, and not when the client is closed.
+   * @param listener the listener
+   */
+  public void setConnectionLostListener(Runnable listener) {
+    connectionLostListener = listener;
+  }
+
   /**
    * Sends a packet to server.
    * @param packet byte array representing packet
    * @throws IOException on any Exception
    */
   private void sendPacket(byte[] packet) throws IOException {
-    outputStream.write(packet);
+    synchronized (sendLock) {
+      outputStream.write(packet);
+    }
+  }
+
+  /**
+   * Tries to connect to the server again and resume the session until the grace window of the
+   * server has passed.
+   * @return true if the session was resumed
+   */
+  private boolean reconnect() {
+    if (sessionToken == 0) {
+      return false;
+    }
+
+    long deadline = System.nanoTime() + (long) (GameDefaults.RECONNECT_GRACE * 1e9);
+    while (System.nanoTime() < deadline) {
+      try {
+        Thread.sleep((long) (GameDefaults.RECONNECT_INTERVAL * 1000));
+        Connection socket = connect(address, port);
+
+        synchronized (sendLock) {
+          clientSocket = socket;
+          inputStream = new DataInputStream(socket.getInputStream());
+          outputStream = socket.getOutputStream();
+        }
+        int lastRemoteFrame = rollbackSession != null ? rollbackSession.getLastRemoteFrame() : -1;
+        sendPacket(NetworkPacket.reconnect(sessionToken, lastRemoteFrame));
+        System.err.println("Reconnected to server");
+        return true;
+      } catch (IOException e) {
+        System.err.println("Reconnect failed: " + e.getMessage());
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Makes the client simulate the match itself with rollback instead of showing the positions
+   * sent by the server. Must be called before the client is started.
+   * @param inputDelay frames local input is delayed by
+   * @param maxRollback frames that may be simulated ahead of the confirmed remote input
+   */
+  public void enableRollback(int inputDelay, int maxRollback) {
+    this.rollback = true;
+    this.inputDelay = inputDelay;
+    this.maxRollback = maxRollback;
+  }
+
+  /**
+   * Starts the local simulation once the server has told which player is local. With rollback
+   * the whole match is simulated, otherwise only the owned player is predicted.
+   */
+  private void startSimulation() {
+    simulationEngine = new GameEngine();
+    if (rollback) {
+      rollbackSession = new RollbackSession(gameStage, assignedPlayer - 1, inputDelay,
+          maxRollback, this::sendInput);
+      rollbackSession.setLocalInput(heldMask);
+      rollbackSession.attach(simulationEngine);
+    } else {
+      prediction = new ClientPrediction(gameStage, assignedPlayer - 1, this::sendInput);
+      prediction.setLocalInput(heldMask);
+      prediction.attach(simulationEngine);
+    }
+    new Thread(simulationEngine).start();
+  }
+
+  /**
+   * Sends the input of a frame to the server together with the input of the frames before it.
+   * Called once per frame, in frame order.
+   * @param frame the frame the input belongs to
+   * @param mask the action bitmask
+   */
+  private void sendInput(int frame, int mask) {
+    if (frame != recentFrame + 1) {
+      // Not following the last frame sent, as when resending, so the earlier input is unrelated.
+      recentCount = 0;
+    }
+    System.arraycopy(recentInputs, 0, recentInputs, 1, recentInputs.length - 1);
+    recentInputs[0] = mask;
+    recentCount = Math.min(recentCount + 1, recentInputs.length);
+    recentFrame = frame;
+
+    try {
+      sendPacket(NetworkPacket.input(frame, recentInputs, recentCount));
+    } catch (IOException e) {
+      // The connection is down, the server asks for missing frames when it is resumed.
+    }
+  }
+
+  /**
+   * Tells the local simulation which actions are held.
+   */
+  private void updateLocalInput() {
+    if (rollbackSession != null) {
+      rollbackSession.setLocalInput(heldMask);
+    }
+    if (prediction != null) {
+      prediction.setLocalInput(heldMask);
+    }
+  }
+
+  /**
+   * Gets the rollback session.
+   * @return the session, or null if rollback is not enabled or the match has not started
+   */
+  public RollbackSession getRollbackSession() {
+    return rollbackSession;
+  }
+
+  /**
+   * Gets the prediction of the owned player.
+   * @return the prediction, or null if rollback is enabled or the match has not started
+   */
+  public ClientPrediction getPrediction() {
+    return prediction;
+  }
+
+  /**
+   * Gets the latency estimates of the connection to the server.
+   * @return the estimates
+   */
+  public LatencyEstimator getLatency() {
+    return latency;
+  }
+
+  /**
+   * Gets the snapshot buffer of a player.
+   * @param playerNumber the player number, starting at 1
+   * @return the buffer
+   */
+  public InterpolationBuffer getInterpolationBuffer(int playerNumber) {
+    return interpolation[playerNumber - 1];
+  }
+
+  /**
+   * Moves the players that are not simulated locally to their interpolated positions. Called
+   * once per rendered frame.
+   * @param now the current time, from {@link System#nanoTime()}
+   */
+  public void interpolate(long now) {
+    if (rollback) {
+      return;
+    }
+
+    GamePlayer[] players = gameStage.getPlayers();
+    for (int i = 0; i < players.length; i++) {
+      if (prediction == null || i != assignedPlayer - 1) {
+        interpolation[i].apply(now, players[i]);
+      }
+    }
   }
 
   /**
@@ -96,16 +394,69 @@ public class GameClient implements Runnable {
         System.err.println("Unimplemented packet!");
         System.exit(-1);
         break;
+      case S_ASSIGN:
+        assignedPlayer = inputStream.read();
+        sessionToken = inputStream.readLong();
+        startSimulation();
+        break;
+      case S_RESUME:
+        // With rollback the state follows, local input the server did not get is dropped.
+        inputStream.read();
+        inputStream.readInt();
+        break;
+      case S_KEYFRAME:
+        StageSnapshot snapshot = new StageSnapshot(inputStream.readUnsignedByte());
+        byte[] state = new byte[snapshot.getByteSize()];
+        inputStream.readFully(state);
+        snapshot.read(ByteBuffer.wrap(state));
+        // With rollback the match is simulated locally and the local state is kept
+        if (prediction != null) {
+          prediction.resync(snapshot);
+        } else if (!rollback) {
+          snapshot.restore(gameStage);
+        }
+        break;
+      case S_STATE:
+        int stateFrame = inputStream.readInt();
+        int inputCount = inputStream.readUnsignedByte();
+        int[] localInputs = new int[inputCount];
+        for (int i = 0; i < inputCount; i++) {
+          localInputs[i] = inputStream.readUnsignedByte();
+        }
+        byte[] saved = new byte[inputStream.readInt()];
+        inputStream.readFully(saved);
+        if (rollbackSession != null) {
+          rollbackSession.load(stateFrame, saved, localInputs, inputCount);
+        }
+        break;
+      case S_INPUT:
+        int inputPlayer = inputStream.readUnsignedByte();
+        int frame = inputStream.readInt();
+        int mask = inputStream.readUnsignedByte();
+        if (rollbackSession != null) {
+          rollbackSession.addRemoteInput(inputPlayer - 1, frame, mask);
+        }
+        break;
+      case PING:
+        // Answer the server and measure the connection from this side as well.
+        long pingReceived = System.nanoTime();
+        long pingTime = inputStream.readLong();
+        sendPacket(NetworkPacket.pong(pingTime, pingReceived, System.nanoTime()));
+        sendPacket(NetworkPacket.ping(System.nanoTime()));
+        break;
+      case PONG:
+        long sent = inputStream.readLong();
+        long remoteReceived = inputStream.readLong();
+        long remoteSent = inputStream.readLong();
+        latency.addSample(sent, remoteReceived, remoteSent, System.nanoTime());
+        break;
       case S_SYNC_PLAYER:
         int playerNumber = inputStream.read();
-        byte data[] = new byte[Double.BYTES];
-        inputStream.read(data);
-        double x = ByteBuffer.wrap(data).getDouble();
-        inputStream.read(data);
-        double y = ByteBuffer.wrap(data).getDouble();
-        data = new byte[Integer.BYTES];
-        inputStream.read(data);
-        int hp = ByteBuffer.wrap(data).getInt();
+        double x = inputStream.readDouble();
+        double y = inputStream.readDouble();
+        double vx = inputStream.readDouble();
+        double vy = inputStream.readDouble();
+        int hp = inputStream.readInt();
         boolean faceRight;
 
         if (inputStream.read() == 0) {
@@ -113,6 +464,7 @@ public class GameClient implements Runnable {
         } else {
           faceRight = true;
         }
+        int ackFrame = inputStream.readInt();
 
         GamePlayer toUpdate = null;
 
@@ -122,10 +474,14 @@ public class GameClient implements Runnable {
         } else if (playerNumber == 2) {
           toUpdate = player2;
         }
-        if (toUpdate != null) {
-          toUpdate.setPosition(new Point2D(x, y));
-          toUpdate.setHP(hp);
-          toUpdate.setFaceRight(faceRight);
+        // With rollback the match is simulated locally
+        if (toUpdate != null && !rollback) {
+          if (prediction != null && playerNumber == assignedPlayer) {
+            prediction.reconcile(ackFrame, new Point2D(x, y), new Point2D(vx, vy), hp, faceRight);
+          } else {
+            interpolation[playerNumber - 1].add(System.nanoTime(), new Point2D(x, y),
+                new Point2D(vx, vy), hp, faceRight);
+          }
         }
     }
 
@@ -133,51 +489,53 @@ public class GameClient implements Runnable {
   }
 
   /**
-   * Handles key presses and sends actions based on key binds to server.
+   * Gets the action bound to a key.
+   * @param code the key
+   * @return the action or null if the key is not bound
+   */
+  private ACTION getAction(KeyCode code) {
+    if (code == GameDefaults.MOVE_LEFT) {
+      return ACTION.MOVE_LEFT;
+    } else if (code == GameDefaults.MOVE_RIGHT) {
+      return ACTION.MOVE_RIGHT;
+    } else if (code == GameDefaults.JUMP) {
+      return ACTION.JUMP;
+    } else if (code == GameDefaults.FALL) {
+      return ACTION.FALL;
+    } else if (code == GameDefaults.HIT) {
+      return ACTION.HIT;
+    } else if (code == GameDefaults.KICK) {
+      return ACTION.KICK;
+    }
+    return null;
+  }
+
+  /**
+   * Handles key presses, the held actions are sent to the server by the local simulation.
    * @param event the event to handle
    */
   public void onKeyPressed(KeyEvent event) {
-    try {
-      KeyCode code = event.getCode();
-
-      if (code == GameDefaults.MOVE_LEFT) {
-        sendPacket(NetworkPacket.actionStart(ACTION.MOVE_LEFT));
-      } else if (code == GameDefaults.MOVE_RIGHT) {
-        sendPacket(NetworkPacket.actionStart(ACTION.MOVE_RIGHT));
-      } else if (code == GameDefaults.JUMP) {
-        sendPacket(NetworkPacket.actionStart(ACTION.JUMP));
-      } else if (code == GameDefaults.FALL) {
-        sendPacket(NetworkPacket.actionStart(ACTION.FALL));
-      } else if (code == GameDefaults.HIT) {
-        sendPacket(NetworkPacket.actionStart(ACTION.HIT));
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
+    ACTION action = getAction(event.getCode());
+    if (action == null) {
+      return;
     }
+
+    heldMask |= 1 << action.ordinal();
+    updateLocalInput();
   }
 
   /**
-   * Handles key releases and sends 'action end' packtes to server.
+   * Handles key releases, the held actions are sent to the server by the local simulation.
    * @param event the event to handle
    */
   public void onKeyReleased(KeyEvent event) {
-    try {
-      KeyCode code = event.getCode();
-
-      if (code == GameDefaults.MOVE_LEFT) {
-        sendPacket(NetworkPacket.actionEnd(ACTION.MOVE_LEFT));
-      } else if (code == GameDefaults.MOVE_RIGHT) {
-        sendPacket(NetworkPacket.actionEnd(ACTION.MOVE_RIGHT));
-      } else if (code == GameDefaults.JUMP) {
-        sendPacket(NetworkPacket.actionEnd(ACTION.JUMP));
-      } else if (code == GameDefaults.FALL) {
-        sendPacket(NetworkPacket.actionEnd(ACTION.FALL));
-      } else if (code == GameDefaults.HIT) {
-        sendPacket(NetworkPacket.actionEnd(ACTION.HIT));
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
+    ACTION action = getAction(event.getCode());
+    if (action == null) {
+      return;
     }
+
+    heldMask &= ~(1 << action.ordinal());
+    updateLocalInput();
   }
 
   /**
@@ -187,16 +545,35 @@ public class GameClient implements Runnable {
   public void run() {
     try {
       if (clientSocket.isConnected()) {
-        onConnect();
+        if (!isJoined()) {
+          handshake();
+        }
 
-        while (clientSocket.isConnected()) {
-          if (!receivePacket()) {
-            break;
+        do {
+          try {
+            while (clientSocket.isConnected()) {
+              if (!receivePacket()) {
+                break;
+              }
+            }
+          } catch (IOException e) {
+            if (!closed) {
+              System.err.println("Connection interrupted: " + e.getMessage());
+            }
           }
-        }
+          clientSocket.close();
+        } while (!closed && reconnect());
 
+        if (simulationEngine != null) {
+          simulationEngine.stop = true;
+        }
+        if (closed) {
+          return;
+        }
         System.err.println("Connection lost");
-        System.exit(-1);
+        if (connectionLostListener != null) {
+          connectionLostListener.run();
+        }
       } else {
         System.err.println("Tried to start with client not connected to server!");
         System.exit(-1);
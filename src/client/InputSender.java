@@ -0,0 +1,22 @@
+package client;
+
+/**
+ * Receives local input that is to be sent to the server.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public interface InputSender {
+
+  /**
+   * Sends the local input of a frame.
+   *
+   * @param frame the frame the input belongs to
+   * @param mask the action bitmask
+   */
+  void sendInput(int frame, int mask);
+}
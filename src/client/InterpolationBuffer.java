@@ -0,0 +1,207 @@
+package client;
+
+import common.GamePlayer;
+import javafx.geometry.Point2D;
+
+/**
+ * A ring of time stamped server snapshots of one remote player.
+ * <p>
+ * The player is shown a fixed delay behind the newest snapshot so that there is normally a
+ * snapshot on each side of the render time to interpolate between. When snapshots arrive late
+ * and the render time passes the newest one, the player is extrapolated along its last velocity
+ * for at most {@code maxExtrapolation} and then held in place. Every such frame is counted as an
+ * underrun.
+ * <p>
+ * Only used when online matches run without rollback, see
+ * {@link common.GameDefaults#ROLLBACK_NETCODE}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class InterpolationBuffer {
+
+  // Number of snapshots kept, must be a power of two.
+  private static final int CAPACITY = 32;
+  private static final int CAPACITY_MASK = CAPACITY - 1;
+
+  private long[] times;
+  private double[] positionX;
+  private double[] positionY;
+  private double[] velocityX;
+  private double[] velocityY;
+  private int[] hp;
+  private boolean[] faceRight;
+  private int head;
+  private int count;
+
+  private long delay;
+  private long maxExtrapolation;
+
+  private int depth;
+  private int underruns;
+
+  /**
+   * Creates an instance of InterpolationBuffer.
+   *
+   * @param delay seconds the player is shown behind the newest snapshot
+   * @param maxExtrapolation seconds the player may be moved past the newest snapshot
+   */
+  public InterpolationBuffer(double delay, double maxExtrapolation) {
+    times = new long[CAPACITY];
+    positionX = new double[CAPACITY];
+    positionY = new double[CAPACITY];
+    velocityX = new double[CAPACITY];
+    velocityY = new double[CAPACITY];
+    hp = new int[CAPACITY];
+    faceRight = new boolean[CAPACITY];
+
+    setDelay(delay);
+    this.maxExtrapolation = (long) (maxExtrapolation * 1e9);
+  }
+
+  /**
+   * Adds a snapshot. Snapshots older than the newest one are ignored.
+   *
+   * @param time time the snapshot was received, from {@link System#nanoTime()}
+   * @param position the position of the player
+   * @param velocity the velocity of the player
+   * @param hp the hit points of the player
+   * @param faceRight the facing of the player
+   */
+  public synchronized void add(long time, Point2D position, Point2D velocity, int hp,
+      boolean faceRight) {
+    if (count > 0 && time < times[(head - 1) & CAPACITY_MASK]) {
+      return;
+    }
+
+    times[head] = time;
+    positionX[head] = position.getX();
+    positionY[head] = position.getY();
+    velocityX[head] = velocity.getX();
+    velocityY[head] = velocity.getY();
+    this.hp[head] = hp;
+    this.faceRight[head] = faceRight;
+
+    head = (head + 1) & CAPACITY_MASK;
+    if (count < CAPACITY) {
+      count++;
+    }
+  }
+
+  /**
+   * Moves {@param player} to where it was {@code delay} before {@param now}.
+   *
+   * @param now the current time, from {@link System#nanoTime()}
+   * @param player the player to update
+   * @return false if there are no snapshots yet
+   */
+  public synchronized boolean apply(long now, GamePlayer player) {
+    if (count == 0) {
+      return false;
+    }
+
+    long renderTime = now - delay;
+    int newest = (head - 1) & CAPACITY_MASK;
+
+    if (renderTime >= times[newest]) {
+      // Ran out of snapshots, continue along the last velocity for a while.
+      double ahead = Math.min(renderTime - times[newest], maxExtrapolation) / 1e9;
+      depth = 0;
+      underruns++;
+      set(player, newest, newest, 0, ahead);
+      return true;
+    }
+
+    // Walk back from the newest snapshot to the one at or before the render time.
+    int newer = newest;
+    int found = 1;
+    while (found < count && times[(newer - 1) & CAPACITY_MASK] > renderTime) {
+      newer = (newer - 1) & CAPACITY_MASK;
+      found++;
+    }
+    depth = found;
+
+    if (found == count) {
+      // Render time is before the oldest snapshot.
+      set(player, newer, newer, 0, 0);
+      return true;
+    }
+
+    int older = (newer - 1) & CAPACITY_MASK;
+    double t = (double) (renderTime - times[older]) / (times[newer] - times[older]);
+    set(player, older, newer, t, 0);
+    return true;
+  }
+
+  /**
+   * Sets the state of {@param player} between two snapshots.
+   *
+   * @param player the player to update
+   * @param a index of the older snapshot
+   * @param b index of the newer snapshot
+   * @param t share of the way from {@param a} to {@param b}
+   * @param ahead seconds to extrapolate past {@param b}
+   */
+  private void set(GamePlayer player, int a, int b, double t, double ahead) {
+    double vx = velocityX[a] + (velocityX[b] - velocityX[a]) * t;
+    double vy = velocityY[a] + (velocityY[b] - velocityY[a]) * t;
+    double x = positionX[a] + (positionX[b] - positionX[a]) * t + vx * ahead;
+    double y = positionY[a] + (positionY[b] - positionY[a]) * t + vy * ahead;
+
+    int nearest = t < 0.5 ? a : b;
+    player.setPosition(new Point2D(x, y));
+    player.setVelocity(new Point2D(vx, vy));
+    player.setHP(hp[nearest]);
+    player.setFaceRight(faceRight[nearest]);
+  }
+
+  /**
+   * Sets the delay behind the newest snapshot.
+   *
+   * @param delay the delay in seconds
+   */
+  public synchronized void setDelay(double delay) {
+    this.delay = (long) (delay * 1e9);
+  }
+
+  /**
+   * Gets the delay behind the newest snapshot.
+   *
+   * @return the delay in seconds
+   */
+  public synchronized double getDelay() {
+    return delay / 1e9;
+  }
+
+  /**
+   * Gets the number of snapshots that were at or ahead of the render time at the last
+   * {@link #apply(long, GamePlayer)}.
+   *
+   * @return the buffer depth
+   */
+  public synchronized int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Gets the number of rendered frames that had no snapshot ahead of the render time.
+   *
+   * @return number of underruns
+   */
+  public synchronized int getUnderruns() {
+    return underruns;
+  }
+
+  /**
+   * Gets the number of snapshots held.
+   *
+   * @return number of snapshots
+   */
+  public synchronized int size() {
+    return count;
+  }
+}
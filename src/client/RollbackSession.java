@@ -0,0 +1,342 @@
+package client;
+
+import common.GameStage;
+import common.StateArena;
+import javafx.scene.input.KeyEvent;
+import server.GameController;
+import server.GameEngine;
+import server.PlayerController;
+import server.StageController;
+
+/**
+ * Simulates an online match locally with rollback.
+ * <p>
+ * The local player's input is scheduled {@code inputDelay} frames ahead and every frame is
+ * simulated immediately, using the last confirmed input of remote players as a prediction for
+ * frames they have not sent yet. Before each frame the state of the stage, its controller and the
+ * players' controllers is saved in a ring of snapshots, kept off the heap in a
+ * {@link StateArena}. When a remote
+ * input arrives that differs from what was predicted, the stage is restored to the snapshot of
+ * that frame and all frames up to the current one are simulated again with the corrected input.
+ * The session never runs further than {@code maxRollback} frames ahead of the oldest unconfirmed
+ * remote input, which bounds the work of one rollback.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class RollbackSession implements GameController {
+
+  // Number of frames kept in the input and snapshot rings, must be a power of two.
+  private static final int HISTORY = 64;
+  private static final int HISTORY_MASK = HISTORY - 1;
+
+  private GameStage stage;
+  private GameEngine engine;
+  private PlayerController[] controllers;
+  private int playerCount;
+  private int localPlayer;
+  private int inputDelay;
+  private int maxRollback;
+  private double frameTime;
+  private double accumulator;
+
+  // Per player and frame, the input that was used or will be used.
+  private int[][] inputs;
+  private int[] lastConfirmedFrame;
+
+  private StateArena.Part[] parts;
+  private StateArena snapshots;
+
+  // Written by the JavaFX thread.
+  private volatile int localMask;
+
+  private int frame;
+  private int firstIncorrectFrame;
+  private int rollbacks;
+  private int rollbackFrames;
+  private InputSender sender;
+
+  /**
+   * Creates an instance of RollbackSession.
+   *
+   * @param stage the stage to simulate on
+   * @param localPlayer index of the player controlled locally
+   * @param inputDelay frames the local input is delayed by
+   * @param maxRollback frames that may be simulated ahead of the confirmed remote input
+   * @param sender receives the local input that is to be sent to the other players
+   */
+  public RollbackSession(GameStage stage, int localPlayer, int inputDelay, int maxRollback,
+      InputSender sender) {
+    if (inputDelay + maxRollback >= HISTORY) {
+      throw new IllegalArgumentException("Input delay and rollback exceed the input history");
+    }
+
+    this.stage = stage;
+    this.localPlayer = localPlayer;
+    this.inputDelay = inputDelay;
+    this.maxRollback = maxRollback;
+    this.sender = sender;
+    frameTime = 1d / GameEngine.DEFAULT_TPS;
+    playerCount = stage.getPlayers().length;
+
+    // Same controller order as the server
+    engine = new GameEngine();
+    StageController stageController = new StageController(stage);
+    stageController.attach(engine);
+    controllers = new PlayerController[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      controllers[i] = stageController.getPlayerController(i);
+    }
+
+    inputs = new int[playerCount][HISTORY];
+    lastConfirmedFrame = new int[playerCount];
+    parts = new StateArena.Part[playerCount + 1];
+    parts[0] = stageController;
+    System.arraycopy(controllers, 0, parts, 1, playerCount);
+    snapshots = new StateArena(playerCount, HISTORY, parts);
+
+    // Frames before the input delay has passed have no input from anyone.
+    for (int p = 0; p < playerCount; p++) {
+      lastConfirmedFrame[p] = inputDelay - 1;
+    }
+    firstIncorrectFrame = -1;
+  }
+
+  /**
+   * Advances the session by as many frames as fit in {@param delta}.
+   *
+   * @param delta the time difference between this and the previous tick
+   */
+  @Override
+  public synchronized void update(double delta) {
+    accumulator += delta;
+    while (accumulator >= frameTime) {
+      if (!advanceFrame()) {
+        // Too far ahead of the remote players, wait for their input.
+        accumulator = 0;
+        break;
+      }
+      accumulator -= frameTime;
+    }
+  }
+
+  /**
+   * Sets the local input for the frame {@code inputDelay} frames ahead and simulates one frame.
+   *
+   * @return false if the frame could not be simulated because remote input is missing
+   */
+  private boolean advanceFrame() {
+    if (firstIncorrectFrame >= 0) {
+      rollback();
+    }
+
+    for (int p = 0; p < playerCount; p++) {
+      if (p != localPlayer && frame - lastConfirmedFrame[p] > maxRollback) {
+        return false;
+      }
+    }
+
+    // After a reconnect the server may already have decided the input of the next frames.
+    int inputFrame = frame + inputDelay;
+    if (inputFrame > lastConfirmedFrame[localPlayer]) {
+      int mask = localMask;
+      inputs[localPlayer][inputFrame & HISTORY_MASK] = mask;
+      lastConfirmedFrame[localPlayer] = inputFrame;
+      sender.sendInput(inputFrame, mask);
+    }
+
+    simulate();
+    return true;
+  }
+
+  /**
+   * Restores the snapshot of the first mispredicted frame and simulates up to the current frame.
+   */
+  private void rollback() {
+    int target = frame;
+    int from = firstIncorrectFrame;
+    firstIncorrectFrame = -1;
+
+    snapshots.restore(stage, from & HISTORY_MASK);
+
+    frame = from;
+    while (frame < target) {
+      simulate();
+    }
+    rollbacks++;
+    rollbackFrames += target - from;
+  }
+
+  /**
+   * Saves the state, applies confirmed or predicted input and simulates the current frame.
+   */
+  private void simulate() {
+    int slot = frame & HISTORY_MASK;
+
+    snapshots.save(stage, slot);
+    for (int p = 0; p < playerCount; p++) {
+      if (frame > lastConfirmedFrame[p]) {
+        // Predict that the remote player keeps holding what they last sent.
+        inputs[p][slot] = inputs[p][lastConfirmedFrame[p] & HISTORY_MASK];
+      }
+      controllers[p].queueActionMask(inputs[p][slot]);
+    }
+
+    engine.tick(frameTime);
+    frame++;
+  }
+
+  /**
+   * Adds a confirmed input of a remote player. Inputs must arrive in frame order per player.
+   *
+   * @param player index of the remote player
+   * @param inputFrame the frame the input belongs to
+   * @param mask the action bitmask
+   */
+  public synchronized void addRemoteInput(int player, int inputFrame, int mask) {
+    if (player == localPlayer || player < 0 || player >= playerCount
+        || inputFrame <= lastConfirmedFrame[player] || inputFrame - frame >= HISTORY) {
+      return;
+    }
+
+    // Frames skipped by the sender are filled with its last input.
+    int previous = inputs[player][lastConfirmedFrame[player] & HISTORY_MASK];
+    for (int f = lastConfirmedFrame[player] + 1; f <= inputFrame; f++) {
+      int slot = f & HISTORY_MASK;
+      int value = f == inputFrame ? mask : previous;
+
+      if (f < frame && inputs[player][slot] != value
+          && (firstIncorrectFrame < 0 || f < firstIncorrectFrame)) {
+        firstIncorrectFrame = f;
+      }
+      inputs[player][slot] = value;
+    }
+    lastConfirmedFrame[player] = inputFrame;
+  }
+
+  /**
+   * Continues the match from a state saved by the server, used when the connection was lost and
+   * the match went on without the local player. The server's input of the local player from
+   * {@param stateFrame} on replaces what was held here, the input of the remote players is
+   * expected to follow from {@param stateFrame} on.
+   *
+   * @param stateFrame the next frame to simulate from the state
+   * @param state the state saved in a region of an arena made by {@link #createArena(int)}
+   * @param localInputs the local player's input from {@param stateFrame} on
+   * @param count the number of frames of local input, less than the input history
+   */
+  public synchronized void load(int stateFrame, byte[] state, int[] localInputs, int count) {
+    int slot = stateFrame & HISTORY_MASK;
+    snapshots.putRegion(slot, state);
+    snapshots.restore(stage, slot);
+    frame = stateFrame;
+    firstIncorrectFrame = -1;
+    accumulator = 0;
+
+    // Remote players are predicted to keep holding what they held before the state.
+    int previous = (stateFrame - 1) & HISTORY_MASK;
+    for (int p = 0; p < playerCount; p++) {
+      inputs[p][previous] = controllers[p].getActionMask();
+      lastConfirmedFrame[p] = stateFrame - 1;
+    }
+    for (int i = 0; i < count; i++) {
+      inputs[localPlayer][(stateFrame + i) & HISTORY_MASK] = localInputs[i];
+    }
+    lastConfirmedFrame[localPlayer] = stateFrame + count - 1;
+  }
+
+  /**
+   * Gets the last frame for which the input of every remote player is known.
+   *
+   * @return the frame number
+   */
+  public synchronized int getLastRemoteFrame() {
+    int last = Integer.MAX_VALUE;
+    for (int p = 0; p < playerCount; p++) {
+      if (p != localPlayer) {
+        last = Math.min(last, lastConfirmedFrame[p]);
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Creates an arena that saves the same state as the snapshots of this session.
+   *
+   * @param regionCount the number of states that can be held
+   * @return the arena
+   */
+  StateArena createArena(int regionCount) {
+    return new StateArena(playerCount, regionCount, parts);
+  }
+
+  /**
+   * Sets the actions currently held by the local player.
+   *
+   * @param mask the action bitmask
+   */
+  public void setLocalInput(int mask) {
+    localMask = mask;
+  }
+
+  /**
+   * Gets the next frame to be simulated.
+   *
+   * @return the frame number
+   */
+  public synchronized int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Gets the number of rollbacks performed.
+   *
+   * @return number of rollbacks
+   */
+  public synchronized int getRollbacks() {
+    return rollbacks;
+  }
+
+  /**
+   * Gets the total number of frames simulated again because of rollbacks.
+   *
+   * @return number of frames
+   */
+  public synchronized int getRollbackFrames() {
+    return rollbackFrames;
+  }
+
+  /**
+   * Attaches this session to an engine, which then drives it in real time.
+   *
+   * @param engine the engine to attach this controller to
+   */
+  @Override
+  public void attach(GameEngine engine) {
+    engine.addController(this);
+  }
+
+  /**
+   * Does nothing, input is given through {@link #setLocalInput(int)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyPressed(KeyEvent event) {
+
+  }
+
+  /**
+   * Does nothing, input is given through {@link #setLocalInput(int)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyReleased(KeyEvent event) {
+
+  }
+}
@@ -1,7 +1,12 @@
 package client.screen;
 
+import client.ClientConnector;
 import client.GameApplication;
+import client.GameClient;
+import common.GameDefaults;
 import java.io.IOException;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.Scene;
@@ -13,10 +18,13 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.GridPane;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
-import server.GameServer;
+import server.ServerHost;
 
 /**
  * Screen used to host online games.
+ * <p>
+ * The server runs in the background and the host joins it as soon as it accepts connections. The
+ * match is entered when a second player joins, leaving the screen before that stops the server.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -25,16 +33,20 @@ import server.GameServer;
  * @author Karl Ängermark (karlang)
  * @version 2017-02-28
  */
-public class CreateScreen implements Screen {
+public class CreateScreen implements Screen, ServerHost.Listener, ClientConnector.Listener {
 
   private GridPane layout;
   private TextField portField;
   private Button createButton;
   private Label createLabel;
+  private Label statusLabel;
   private Stage stage;
   private Scene scene;
   private Group root;
   private GameApplication owner;
+  private ServerHost host;
+  private ClientConnector connector;
+  private boolean joining;
 
   /**
    * Creates an instance of the <tt>CreateScreen</tt>.
@@ -57,12 +69,14 @@ public class CreateScreen implements Screen {
     scene = new Scene(root);
     createLabel = new Label("Host a game!");
     createLabel.setFont(Font.font(72));
-    createButton = new Button("Connect");
+    createButton = new Button("Host");
     portField = new TextField();
     portField.setText("8822");
+    statusLabel = new Label();
     layout = new GridPane();
     layout.addRow(0, createLabel);
     layout.addRow(1, portField, createButton);
+    layout.addRow(2, statusLabel);
     layout.setAlignment(Pos.CENTER);
 
     // Enables exiting to main menu
@@ -75,29 +89,133 @@ public class CreateScreen implements Screen {
     stage.widthProperty().addListener(l -> layout.setPrefWidth(stage.getWidth()));
     stage.heightProperty().addListener(l -> layout.setPrefHeight(stage.getHeight()));
 
+    createButton.setOnAction(this::onCreateButton);
+
     root.getChildren().add(layout);
 
+    joining = false;
     stage.setScene(scene);
   }
 
   /**
-   * Exits the game.
+   * Stops the server unless the host is joining it.
    */
   @Override
   public void exit() {
+    if (!joining) {
+      stopHosting();
+    }
+  }
 
+  /**
+   * Stops the hosted server, if any.
+   */
+  public void stopHosting() {
+    if (connector != null) {
+      connector.cancel();
+      connector = null;
+    }
+    if (host != null) {
+      host.stop();
+      host = null;
+    }
   }
 
   /**
-   * Creates a game server.
+   * Starts a game server in the background.
+   *
+   * @param event an ActionEvent from a button click
    */
-  void onCreateButton() {
+  void onCreateButton(ActionEvent event) {
+    int port;
     try {
-      GameServer server = new GameServer(Integer.parseInt(portField.getText()));
-    } catch (IOException e) {
-      System.err.println("Could not create server!");
+      port = Integer.parseInt(portField.getText());
+    } catch (NumberFormatException e) {
+      statusLabel.setText("Invalid port");
+      return;
     }
 
+    stopHosting();
+    createButton.setDisable(true);
+    host = new ServerHost(this);
+    host.start(port);
+  }
+
+  /**
+   * Shows the progress of the server.
+   *
+   * @param message the description
+   */
+  @Override
+  public void onProgress(String message) {
+    Platform.runLater(() -> statusLabel.setText(message));
+  }
+
+  /**
+   * Joins the server as soon as it accepts connections, in memory since it runs in this process.
+   *
+   * @param port the port the server accepts connections on
+   */
+  @Override
+  public void onReady(int port) {
+    Platform.runLater(() -> {
+      if (host == null) {
+        return;
+      }
+      connector = new ClientConnector(this, GameDefaults.CONNECT_TIMEOUT);
+      connector.connect("localhost", port);
+    });
+  }
+
+  /**
+   * Enters the match once a second player has joined.
+   *
+   * @param client the joined client
+   */
+  @Override
+  public void onConnected(GameClient client) {
+    Platform.runLater(() -> {
+      if (connector == null) {
+        // Stopped while this was on its way
+        client.close();
+        return;
+      }
+      connector = null;
+      joining = true;
+      owner.networkPlayScreen.setClient(client);
+      owner.setActiveScreen(owner.networkPlayScreen);
+    });
+  }
+
+  /**
+   * Shows why the host could not join its own server.
+   *
+   * @param exception the reason
+   */
+  @Override
+  public void onConnectFailed(IOException exception) {
+    Platform.runLater(() -> {
+      if (connector == null) {
+        return;
+      }
+      connector = null;
+      statusLabel.setText("Could not join server: " + exception.getMessage());
+      stopHosting();
+      createButton.setDisable(false);
+    });
+  }
+
+  /**
+   * Shows why the server could not be created.
+   *
+   * @param exception the reason
+   */
+  @Override
+  public void onFailed(IOException exception) {
+    Platform.runLater(() -> {
+      statusLabel.setText("Could not create server: " + exception.getMessage());
+      createButton.setDisable(false);
+    });
   }
 
   /**
@@ -1,14 +1,18 @@
 package client.screen;
 
+import client.ClientConnector;
 import client.GameApplication;
 import client.GameClient;
+import common.GameDefaults;
 import java.io.IOException;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -17,7 +21,11 @@ import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
 /**
- * TODO: Add description
+ * Screen used to join online games.
+ * <p>
+ * The connection is made in the background while the screen keeps running, the match is entered
+ * once the server has assigned a player. Pressing the button again or leaving the screen cancels
+ * the connection.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -26,17 +34,20 @@ import javafx.stage.Stage;
  * @author Karl Ängermark (karlang)
  * @version 2017-02-28
  */
-public class JoinScreen implements Screen {
+public class JoinScreen implements Screen, ClientConnector.Listener {
 
   private GridPane layout;
   private TextField ipAddressField;
   private TextField portField;
   private Button connectButton;
   private Label connectLabel;
+  private Label statusLabel;
+  private ProgressIndicator progressIndicator;
   private Stage stage;
   private Scene scene;
   private Group root;
   private GameApplication owner;
+  private ClientConnector connector;
 
   /**
    * Creates an instance of the <tt>JoinScreen</tt>.
@@ -66,9 +77,13 @@ public class JoinScreen implements Screen {
     portField = new TextField();
     portField.setPromptText("Port");
     portField.setText("8022");
+    statusLabel = new Label();
+    progressIndicator = new ProgressIndicator();
+    progressIndicator.setVisible(false);
     layout = new GridPane();
     layout.addRow(0, connectLabel);
     layout.addRow(1, ipAddressField, portField, connectButton);
+    layout.addRow(2, statusLabel, progressIndicator);
     layout.setAlignment(Pos.CENTER);
 
     // Enables exiting to main menu
@@ -89,26 +104,109 @@ public class JoinScreen implements Screen {
   }
 
   /**
-   * Exits the Screen.
+   * Exits the Screen, cancelling a connection in progress.
    */
   @Override
   public void exit() {
-
+    cancelConnecting();
   }
 
   /**
-   * Connects to a network.
+   * Starts connecting to the server in the background, or cancels if already connecting.
    *
    * @param event an ActionEvent from a button click.
    */
   void onConnectButton(ActionEvent event) {
+    if (connector != null) {
+      cancelConnecting();
+      statusLabel.setText("Cancelled");
+      return;
+    }
+
+    int port;
     try {
-      owner.networkPlayScreen.setClient(
-          new GameClient(ipAddressField.getText(), Integer.parseInt(portField.getText())));
-      owner.setActiveScreen(owner.networkPlayScreen);
-    } catch (IOException e) {
-      e.printStackTrace();
+      port = Integer.parseInt(portField.getText());
+    } catch (NumberFormatException e) {
+      statusLabel.setText("Invalid port");
+      return;
+    }
+
+    connector = new ClientConnector(this, GameDefaults.CONNECT_TIMEOUT);
+    setConnecting(true);
+    connector.connect(ipAddressField.getText(), port);
+  }
+
+  /**
+   * Cancels the connection in progress, if any.
+   */
+  private void cancelConnecting() {
+    if (connector != null) {
+      connector.cancel();
+      connector = null;
     }
+    setConnecting(false);
+  }
+
+  /**
+   * Shows whether a connection is in progress.
+   *
+   * @param connecting true while connecting
+   */
+  private void setConnecting(boolean connecting) {
+    if (connectButton == null) {
+      return;
+    }
+    connectButton.setText(connecting ? "Cancel" : "Connect");
+    ipAddressField.setDisable(connecting);
+    portField.setDisable(connecting);
+    progressIndicator.setVisible(connecting);
+  }
+
+  /**
+   * Shows the progress of the connection.
+   *
+   * @param message the description
+   */
+  @Override
+  public void onProgress(String message) {
+    Platform.runLater(() -> statusLabel.setText(message));
+  }
+
+  /**
+   * Enters the match once the server has assigned a player.
+   *
+   * @param client the joined client
+   */
+  @Override
+  public void onConnected(GameClient client) {
+    Platform.runLater(() -> {
+      if (connector == null) {
+        // Cancelled while this was on its way
+        client.close();
+        return;
+      }
+      connector = null;
+      setConnecting(false);
+      owner.networkPlayScreen.setClient(client);
+      owner.setActiveScreen(owner.networkPlayScreen);
+    });
+  }
+
+  /**
+   * Shows why the connection failed.
+   *
+   * @param exception the reason
+   */
+  @Override
+  public void onConnectFailed(IOException exception) {
+    Platform.runLater(() -> {
+      if (connector == null) {
+        return;
+      }
+      connector = null;
+      setConnecting(false);
+      statusLabel.setText("Could not connect: " + exception.getMessage());
+    });
   }
 
   /**
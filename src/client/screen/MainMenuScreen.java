@@ -29,6 +29,7 @@ public class MainMenuScreen implements Screen {
   private Button localGameButton;
   private Button settingsButton;
   private Button joinButton;
+  private Button hostButton;
   private Button exitButton;
   private Label title;
   private GameApplication owner;
@@ -44,6 +45,7 @@ public class MainMenuScreen implements Screen {
 
     localGameButton = new Button(GameDefaults.LOCAL_GAME_BUTTON_TEXT);
     joinButton = new Button(GameDefaults.JOIN_GAME_BUTTON_TEXT);
+    hostButton = new Button(GameDefaults.HOST_GAME_BUTTON_TEXT);
     settingsButton = new Button(GameDefaults.SETTINGS_BUTTON_TEXT);
     exitButton = new Button(GameDefaults.EXIT_BUTTON_TEXT);
 
@@ -51,11 +53,13 @@ public class MainMenuScreen implements Screen {
     title.setFont(Font.font(GameDefaults.BIG_FONT_SIZE));
 
     layout = new GridPane();
-    layout.addColumn(0, title, localGameButton, joinButton, settingsButton, exitButton);
+    layout.addColumn(0, title, localGameButton, joinButton, hostButton, settingsButton,
+        exitButton);
 
     localGameButton.setOnAction(this::onLocalGameButton);
     exitButton.setOnAction(this::onExitButton);
     joinButton.setOnAction(this::onJoinGameButton);
+    hostButton.setOnAction(this::onHostGameButton);
     settingsButton.setOnAction(this::onSettingsButton);
 
     layout.setAlignment(Pos.CENTER);
@@ -106,6 +110,15 @@ public class MainMenuScreen implements Screen {
     owner.setActiveScreen(owner.joinScreen);
   }
 
+  /**
+   * Sets the active screen to the CreateScreen.
+   *
+   * @param event an ActionEvent from a button click
+   */
+  void onHostGameButton(ActionEvent event) {
+    owner.setActiveScreen(owner.createScreen);
+  }
+
   /**
    * Sets the Active to the SettingsScreen.
    *
@@ -7,6 +7,7 @@ import client.HealthRenderer;
 import client.PlayerRenderer;
 import client.StageRenderer;
 import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
@@ -50,12 +51,14 @@ public class NetworkPlayScreen extends AnimationTimer implements Screen {
   }
 
   /**
-   * Renders the game.
+   * Renders the game, with remote players interpolated between server snapshots.
    *
-   * @param l
+   * @param l time stamp of the current frame in nanoseconds
    */
   @Override
   public void handle(long l) {
+    client.interpolate(l);
+
     canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
 
     stageRenderer.render(canvas);
@@ -106,16 +109,22 @@ public class NetworkPlayScreen extends AnimationTimer implements Screen {
     //Start animation timer aka renderer
     this.start();
 
+    // Back to the main menu if the connection to the server is lost for good
+    client.setConnectionLostListener(
+        () -> Platform.runLater(() -> owner.setActiveScreen(owner.mainMenuScreen)));
     clientThread = new Thread(client);
     clientThread.start();
   }
 
   /**
-   * Does nothing.
+   * Stops rendering and closes the connection to the server.
    */
   @Override
   public void exit() {
-
+    this.stop();
+    if (client != null) {
+      client.close();
+    }
   }
 
   /**
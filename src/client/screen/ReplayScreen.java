@@ -0,0 +1,180 @@
+package client.screen;
+
+import client.GameApplication;
+import client.GameRenderer;
+import client.HealthRenderer;
+import client.PlayerRenderer;
+import client.StageRenderer;
+import common.GamePlayer;
+import javafx.animation.AnimationTimer;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.input.KeyEvent;
+import javafx.stage.Stage;
+import server.ReplayPlayer;
+
+/**
+ * The Screen used to watch recorded matches.
+ * <p>
+ * Space pauses, left and right skip five seconds, up and down double or halve the speed and R
+ * reverses the playback direction.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ReplayScreen extends AnimationTimer implements Screen {
+
+  private Canvas canvas;
+  private Group root;
+  private Scene scene;
+  private Stage stage;
+  private GameApplication owner;
+
+  private GameRenderer stageRenderer;
+  private GameRenderer[] playerRenderers;
+  private HealthRenderer player1HealthBar;
+  private HealthRenderer player2HealthBar;
+
+  private ReplayPlayer replay;
+  private long lastFrame;
+  private double pausedSpeed;
+
+  /**
+   * Creates an instance of ReplayScreen
+   * @param gameApplication the owner application
+   */
+  public ReplayScreen(GameApplication gameApplication) {
+    this.owner = gameApplication;
+
+    canvas = new Canvas();
+  }
+
+  /**
+   * Advances the replay by the time since the last frame and renders it.
+   *
+   * @param now time stamp of the current frame in nanoseconds
+   */
+  @Override
+  public void handle(long now) {
+    if (lastFrame != 0) {
+      replay.advance((now - lastFrame) / 1e9);
+    }
+    lastFrame = now;
+
+    canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+    stageRenderer.render(canvas);
+    player1HealthBar.render(canvas);
+    player2HealthBar.render(canvas);
+
+    for (GameRenderer renderer : playerRenderers) {
+      renderer.render(canvas);
+    }
+  }
+
+  /**
+   * Initializes the screen by creating instances of the renderers etc.
+   *
+   * @param stage
+   */
+  @Override
+  public void enter(Stage stage) {
+    if (replay == null) {
+      System.err.println("Replay was not set before entering screen");
+      owner.setActiveScreen(owner.mainMenuScreen);
+      return;
+    }
+    this.stage = stage;
+
+    stageRenderer = new StageRenderer(replay.getGameStage());
+    GamePlayer[] players = replay.getGameStage().getPlayers();
+    playerRenderers = new GameRenderer[players.length];
+    for (int i = 0; i < players.length; i++) {
+      playerRenderers[i] = new PlayerRenderer(players[i]);
+    }
+    player1HealthBar = new HealthRenderer(replay.getGameStage().getPlayer1(), true);
+    player2HealthBar = new HealthRenderer(replay.getGameStage().getPlayer2(), false);
+
+    // The root element in the javafx gui stack, all sub-elements attach to this
+    root = new Group();
+    canvas = new Canvas(stage.getWidth(), stage.getHeight());  // The render target
+
+    root.getChildren().add(canvas);
+
+    // The scene where the root and all its children are displayed
+    scene = new Scene(root);
+    scene.setOnKeyPressed(this::onKeyPressed);
+
+    //Lambda linking the scene's dimensions with the canvas
+    scene.widthProperty().addListener(l -> canvas.setWidth(scene.getWidth()));
+    scene.heightProperty().addListener(l -> canvas.setHeight(scene.getHeight()));
+
+    stage.setScene(scene);
+
+    lastFrame = 0;
+    this.start();
+  }
+
+  /**
+   * Stops rendering.
+   */
+  @Override
+  public void exit() {
+    this.stop();
+  }
+
+  /**
+   * Sets the replay to watch.
+   *
+   * @param replay the replay
+   */
+  public void setReplay(ReplayPlayer replay) {
+    this.replay = replay;
+  }
+
+  /**
+   * Handles playback controls, ESC returns to the main menu.
+   *
+   * @param event a KeyEvent
+   */
+  private void onKeyPressed(KeyEvent event) {
+    int skip = 5 * replay.getTickRate();
+
+    switch (event.getCode()) {
+      case SPACE:
+        if (replay.getSpeed() == 0) {
+          replay.setSpeed(pausedSpeed);
+        } else {
+          pausedSpeed = replay.getSpeed();
+          replay.setSpeed(0);
+        }
+        break;
+      case LEFT:
+        replay.seek(replay.getTick() - skip);
+        break;
+      case RIGHT:
+        replay.seek(replay.getTick() + skip);
+        break;
+      case UP:
+        replay.setSpeed(replay.getSpeed() * 2);
+        break;
+      case DOWN:
+        replay.setSpeed(replay.getSpeed() / 2);
+        break;
+      case R:
+        replay.setSpeed(-replay.getSpeed());
+        break;
+      case F11:
+        stage.setFullScreen(!stage.isFullScreen());
+        break;
+      case ESCAPE:
+        owner.setActiveScreen(owner.mainMenuScreen);
+        break;
+    }
+  }
+}
@@ -1,9 +1,18 @@
 package common;
 
-import java.util.HashMap;
-
 /**
  * Class that describes the cycles of an action spool up, active, cool down, inactive.
+ * <p>
+ * The phases and their durations are kept in a {@link MoveDefinition} shared by every cycle of
+ * the same move, an instance only holds the current phase and the ticks left of it. All timing
+ * is counted in whole ticks, so a move lasts the same number of ticks on every machine.
+ * <p>
+ * Once bound to a {@link TimingWheel} the cycle enters its next phase by itself when the current
+ * one runs out, instead of counting down every tick. A phase entered during a tick, or restored
+ * between two, with {@code n} ticks left ends on the {@code n}th advance of the wheel from then.
+ * <p>
+ * The phase and ticks left are kept in arrays of their own until the cycle is attached to the
+ * columns of a {@link PlayerStore}.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -14,56 +23,85 @@ import java.util.HashMap;
  */
 public class ActionCycle {
 
-  private HashMap<CYCLE, Double> times;
-  private HashMap<CYCLE, CYCLE> next;
-  private double time;
-  private CYCLE cycle;
+  private MoveDefinition move;
+  private int[] phases;
+  // Ticks left while not scheduled on a wheel.
+  private int[] ticks;
+  private int index;
+  private TimingWheel wheel;
+  private TimingWheel.Timer timer;
+  // Last tick of the phase while scheduled, before the current one if it had no ticks left.
+  private long lastTick;
 
   /**
    * Creates an instance of ActionCycle.
    *
-   * @param spoolUpTime time spent on spool phase
-   * @param activeTime time spent on active phase
-   * @param coolDownTime time spent on cool down phase
+   * @param spoolUpTicks ticks spent on spool phase
+   * @param activeTicks ticks spent on active phase
+   * @param coolDownTicks ticks spent on cool down phase
    */
-  public ActionCycle(double spoolUpTime, double activeTime, double coolDownTime) {
-    times = new HashMap<>();
-    next = new HashMap<>();
-
-    times.put(CYCLE.SPOOL_UP, spoolUpTime);
-    times.put(CYCLE.ACTIVE, activeTime);
-    times.put(CYCLE.COOL_DOWN, coolDownTime);
-    times.put(CYCLE.INACTIVE, 0d);
+  public ActionCycle(int spoolUpTicks, int activeTicks, int coolDownTicks) {
+    this(MoveDefinition.standard(spoolUpTicks, activeTicks, coolDownTicks));
+  }
 
-    next.put(CYCLE.SPOOL_UP, CYCLE.ACTIVE);
-    next.put(CYCLE.ACTIVE, CYCLE.COOL_DOWN);
-    next.put(CYCLE.COOL_DOWN, CYCLE.INACTIVE);
+  /**
+   * Creates an inactive instance of ActionCycle for a move.
+   *
+   * @param move the phases of the move
+   */
+  public ActionCycle(MoveDefinition move) {
+    this.move = move;
+    phases = new int[]{move.getPhaseCount()};
+    ticks = new int[1];
+    timer = new TimingWheel.Timer(() -> enterPhase(phases[index] + 1));
+  }
 
-    cycle = CYCLE.INACTIVE;
+  /**
+   * Keeps the phase and ticks left of this cycle in entry {@param index} of the given columns
+   * from now on, moving the current ones over.
+   * @param phases the column of phases
+   * @param ticks the column of ticks left
+   * @param index the entry of this cycle
+   */
+  public void attach(int[] phases, int[] ticks, int index) {
+    phases[index] = this.phases[this.index];
+    ticks[index] = this.ticks[this.index];
+    this.phases = phases;
+    this.ticks = ticks;
+    this.index = index;
   }
 
   /**
-   * Advances the cycle if time left minus {@param delta} less or equal zero cycle enters next
-   * stage.
-   * @return true if next stage false if not
+   * Lets a timing wheel end the phases of this cycle from now on, moving the current phase over
+   * from the wheel it was bound to before.
+   * @param wheel the wheel, advanced once at the end of every tick
    */
-  public boolean update(double delta) {
-    if (!cycle.equals(CYCLE.INACTIVE)) {
-      time -= delta;
-      if (time <= 0) {
-        enterCycle(next.get(cycle));
-      }
+  public void bind(TimingWheel wheel) {
+    if (wheel == this.wheel) {
+      return;
+    }
+    int left = getTicksLeft();
+    if (this.wheel != null) {
+      this.wheel.cancel(timer);
     }
-    return false;
+    this.wheel = wheel;
+    restore(phases[index], left);
   }
 
   /**
-   * Enters into a cycle phase
+   * Enters the first phase of a kind
    * @param cycle phase to enter
    */
   public void enterCycle(CYCLE cycle) {
-    this.cycle = cycle;
-    time = times.get(cycle);
+    enterPhase(move.getFirstPhase(cycle));
+  }
+
+  /**
+   * Enters a phase by index.
+   * @param phase index of the phase, the phase count for inactive
+   */
+  public void enterPhase(int phase) {
+    restore(phase, move.getDuration(phase));
   }
 
   /**
@@ -71,7 +109,7 @@ public class ActionCycle {
    * @return true if active phase else false
    */
   public boolean isActive() {
-    return cycle == CYCLE.ACTIVE;
+    return move.getKind(phases[index]) == CYCLE.ACTIVE;
   }
 
   /**
@@ -79,7 +117,7 @@ public class ActionCycle {
    * @return true if cool down phase else false
    */
   public boolean isOnCoolDown() {
-    return cycle == CYCLE.COOL_DOWN;
+    return move.getKind(phases[index]) == CYCLE.COOL_DOWN;
   }
 
   /**
@@ -87,7 +125,7 @@ public class ActionCycle {
    * @return true if spool-up phase else false
    */
   public boolean isSpoolingUp() {
-    return cycle == CYCLE.SPOOL_UP;
+    return move.getKind(phases[index]) == CYCLE.SPOOL_UP;
   }
 
   /**
@@ -95,7 +133,89 @@ public class ActionCycle {
    * @return true if ready for next phase else false
    */
   public boolean isReady() {
-    return cycle == CYCLE.INACTIVE;
+    return phases[index] == move.getPhaseCount();
+  }
+
+  /**
+   * Gets the kind of the current phase.
+   * @return the current phase kind
+   */
+  public CYCLE getCycle() {
+    return move.getKind(phases[index]);
+  }
+
+  /**
+   * Gets the index of the current phase.
+   * @return index of the phase, the phase count of the move when inactive
+   */
+  public int getPhase() {
+    return phases[index];
+  }
+
+  /**
+   * Gets the phases of the move.
+   * @return the move definition
+   */
+  public MoveDefinition getMove() {
+    return move;
+  }
+
+  /**
+   * Gets the ticks left of the current phase.
+   * @return ticks left
+   */
+  public int getTicksLeft() {
+    if (timer.isScheduled()) {
+      return (int) (lastTick - wheel.getTick() + 1);
+    }
+    return ticks[index];
+  }
+
+  /**
+   * Gets the tick of the move the cycle is on, counted within the current phase so that it
+   * always falls in a tick of that phase.
+   * @return ticks from the start of the move, the length of the move when inactive
+   */
+  public int getMoveTick() {
+    int phase = phases[index];
+    int duration = move.getDuration(phase);
+    int into = Math.max(0, Math.min(duration - 1, duration - getTicksLeft()));
+    return move.getStart(phase) + into;
+  }
+
+  /**
+   * Restores a phase and the ticks left of it, used when loading saved states.
+   * @param phase index of the phase to restore
+   * @param ticks ticks left of the phase
+   */
+  public void restore(int phase, int ticks) {
+    phases[index] = phase;
+    this.ticks[index] = ticks;
+    if (wheel == null) {
+      return;
+    }
+    if (phase == move.getPhaseCount()) {
+      wheel.cancel(timer);
+    } else {
+      lastTick = wheel.getTick() + ticks - 1;
+      wheel.schedule(timer, lastTick);
+    }
+  }
+
+  /**
+   * Writes the ticks left of the current phase to the column of ticks, where they are only kept
+   * up to date while not bound to a timing wheel, so that copying the columns saves the cycle.
+   */
+  public void save() {
+    ticks[index] = getTicksLeft();
+  }
+
+  /**
+   * Restores the phase and ticks left held in the columns, after they have been overwritten by
+   * a saved copy.
+   */
+  public void restore() {
+    restore(phases[index], ticks[index]);
   }
 
   /**
@@ -0,0 +1,149 @@
+package common;
+
+import common.ActionCycle.CYCLE;
+
+/**
+ * Which moves a player may start depending on the phase each of its actions is in.
+ * <p>
+ * Every phase of every action has a bitset of the moves it lets start, bit {@code m} being move
+ * {@code m}. A move may start when its bit is set for the current phase of all actions, so
+ * checking a move is a single AND of the sets of the current phases. By default an action lets
+ * every move start while inactive and none otherwise, except being stunned which only blocks
+ * moves while active. Cancels declared in the character file add moves to the sets of a phase,
+ * starting such a move ends the action that was cancelled.
+ * <p>
+ * Cancels are declared per kind of phase and compiled into sets per phase index of the
+ * {@link MoveDefinition} of each action, so moves with several phases of one kind get the same
+ * set for each. The compiled sets are kept by the definition, which is shared, so players with
+ * the same moves and cancels share them as well.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class CancelGraph {
+
+  /**
+   * Index of the punch.
+   */
+  public static final int JAB = 0;
+  /**
+   * Index of the kick.
+   */
+  public static final int KICK = 1;
+  /**
+   * Index of the stun, which is an action but not a move that can be started.
+   */
+  public static final int STUN = 2;
+  /**
+   * Number of moves that can be started.
+   */
+  public static final int MOVES = 2;
+
+  private static final String[] NAMES = {"jab", "kick", "stun"};
+  private static final int ALL = (1 << MOVES) - 1;
+
+  // Moves each kind of phase lets start, as declared, per action.
+  private int[][] declared;
+  // Moves each phase lets start, per action, shared with the definition of the move.
+  private int[][] compiled;
+
+  /**
+   * Creates an instance of CancelGraph with the default sets.
+   */
+  public CancelGraph() {
+    int kinds = CYCLE.values().length;
+    declared = new int[NAMES.length][kinds];
+    for (int action = 0; action < NAMES.length; action++) {
+      declared[action][CYCLE.INACTIVE.ordinal()] = ALL;
+    }
+    declared[STUN][CYCLE.SPOOL_UP.ordinal()] = ALL;
+    declared[STUN][CYCLE.COOL_DOWN.ordinal()] = ALL;
+    compiled = new int[NAMES.length][];
+  }
+
+  /**
+   * Gets the index of an action by name.
+   *
+   * @param name {@code jab}, {@code kick} or {@code stun}
+   * @return the index
+   */
+  public static int indexOf(String name) {
+    for (int i = 0; i < NAMES.length; i++) {
+      if (NAMES[i].equalsIgnoreCase(name.trim())) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown move " + name);
+  }
+
+  /**
+   * Gets the kind of phase from the name used in the character file.
+   *
+   * @param name {@code spool}, {@code active}, {@code cooldown} or {@code inactive}
+   * @return the kind
+   */
+  public static CYCLE kindOf(String name) {
+    switch (name.trim().toLowerCase()) {
+      case "spool":
+        return CYCLE.SPOOL_UP;
+      case "active":
+        return CYCLE.ACTIVE;
+      case "cooldown":
+        return CYCLE.COOL_DOWN;
+      case "inactive":
+        return CYCLE.INACTIVE;
+      default:
+        throw new IllegalArgumentException("Unknown phase " + name);
+    }
+  }
+
+  /**
+   * Lets a move start during every phase of a kind of an action. Takes effect once the action
+   * is compiled.
+   *
+   * @param from index of the action that is cancelled
+   * @param kind the kind of phase that may be cancelled
+   * @param into index of the move that may start
+   */
+  public void addCancel(int from, CYCLE kind, int into) {
+    if (into >= MOVES) {
+      throw new IllegalArgumentException("Cannot cancel into " + NAMES[into]);
+    }
+    declared[from][kind.ordinal()] |= 1 << into;
+  }
+
+  /**
+   * Compiles the sets of every phase of an action.
+   *
+   * @param action index of the action
+   * @param move the phases of the action
+   */
+  public void compile(int action, MoveDefinition move) {
+    compiled[action] = move.getCancelSets(declared[action]);
+  }
+
+  /**
+   * Gets the moves a phase of an action lets start.
+   *
+   * @param action index of the action
+   * @param phase index of the phase, the phase count for inactive
+   * @return the bitset of moves
+   */
+  public int getAllowed(int action, int phase) {
+    return compiled[action][phase];
+  }
+
+  /**
+   * Gets the name of an action.
+   *
+   * @param action index of the action
+   * @return the name
+   */
+  public static String getName(int action) {
+    return NAMES[action];
+  }
+}
@@ -0,0 +1,58 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A two-way stream of packets between a client and a server.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public interface Connection {
+
+  /**
+   * Gets the stream packets are read from.
+   *
+   * @return the input stream
+   * @throws IOException if the connection is broken
+   */
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * Gets the stream packets are written to. A packet array must not be changed after it has been
+   * written, since it may be handed over without copying.
+   *
+   * @return the output stream
+   * @throws IOException if the connection is broken
+   */
+  OutputStream getOutputStream() throws IOException;
+
+  /**
+   * Sets how long a read may block before it fails with a
+   * {@link java.net.SocketTimeoutException}.
+   *
+   * @param millis the timeout in milliseconds, 0 for none
+   * @throws IOException if the connection is broken
+   */
+  void setReadTimeout(int millis) throws IOException;
+
+  /**
+   * Answers whether the connection has been established and not closed.
+   *
+   * @return true if connected
+   */
+  boolean isConnected();
+
+  /**
+   * Closes the connection, blocked reads on both ends return end of stream.
+   *
+   * @throws IOException on any exception
+   */
+  void close() throws IOException;
+}
@@ -0,0 +1,84 @@
+package common;
+
+/**
+ * Fixed-point numbers with {@link #BITS} fractional bits, used by the fixed-point physics of a
+ * {@link PlayerStore}.
+ * <p>
+ * Positions and velocities in fixed-point are whole numbers of {@code 1 / ONE} of a unit, which
+ * a double holds exactly, so the columns of the store keep their doubles and only the physics
+ * steps them as integers. Every step is then the same integer arithmetic on every machine, and
+ * the state can be compared by hashing a few integers.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class FixedPoint {
+
+  /**
+   * Number of fractional bits.
+   */
+  public static final int BITS = 16;
+  /**
+   * One unit in fixed-point.
+   */
+  public static final long ONE = 1L << BITS;
+
+  /**
+   * Converts a number to the nearest fixed-point number.
+   *
+   * @param value the number
+   * @return the fixed-point number
+   */
+  public static long toFixed(double value) {
+    return Math.round(value * ONE);
+  }
+
+  /**
+   * Converts a fixed-point number to a double, which holds it exactly.
+   *
+   * @param value the fixed-point number
+   * @return the number
+   */
+  public static double toDouble(long value) {
+    return (double) value / ONE;
+  }
+
+  /**
+   * Gets the number of ticks per second of a tick length, which the fixed-point physics divides
+   * by instead of multiplying by the length.
+   *
+   * @param delta seconds per tick
+   * @return ticks per second
+   */
+  public static long toRate(double delta) {
+    return Math.round(1 / delta);
+  }
+
+  /**
+   * Hashes the position, velocity, hit points, flags and action phases of every player of a
+   * store, with positions and velocities in fixed-point. Equal states give equal hashes on every
+   * machine.
+   *
+   * @param store the store
+   * @return the hash
+   */
+  public static long hash(PlayerStore store) {
+    long hash = 17;
+    for (int i = 0; i < store.size(); i++) {
+      hash = hash * 31 + toFixed(store.getX()[i]);
+      hash = hash * 31 + toFixed(store.getY()[i]);
+      hash = hash * 31 + toFixed(store.getVelocityX()[i]);
+      hash = hash * 31 + toFixed(store.getVelocityY()[i]);
+      hash = hash * 31 + store.getHP()[i];
+      hash = hash * 31 + store.getFlags()[i];
+    }
+    for (int i = 0; i < store.size() * PlayerStore.CYCLES; i++) {
+      hash = hash * 31 + store.getPhases()[i];
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,159 @@
+package common;
+
+import java.util.List;
+
+/**
+ * The hurtboxes and hitboxes of a character for every tick of every move, compiled once when the
+ * character is loaded.
+ * <p>
+ * Frame 0 is the idle pose, the frames of each move follow one per tick. The boxes of all frames
+ * are kept in one array as x, y, width and height relative to the position of the player, and
+ * once more mirrored for a player facing left, so finding the boxes of the current frame is a
+ * lookup of its range in the array.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class FrameTable {
+
+  /**
+   * Kind of box that can be hit.
+   */
+  public static final int HURT = 0;
+  /**
+   * Kind of box that hits.
+   */
+  public static final int HIT = 1;
+
+  private int[] moveFirst;
+  private int[] moveLength;
+  private int[] frameMove;
+  // First box of each kind of each frame, followed by the end of the last.
+  private int[] boxStart;
+  private double[] right;
+  private double[] left;
+  private int[] maxBoxes;
+
+  /**
+   * Creates an instance of FrameTable.
+   *
+   * @param width width of the player, which boxes are mirrored within
+   * @param moveLength the number of frames of each move
+   * @param boxes the boxes of each kind of each frame, {@code boxes.get(frame * 2 + kind)}, as
+   *     x, y, width and height relative to the position of a player facing right
+   */
+  public FrameTable(double width, int[] moveLength, List<List<double[]>> boxes) {
+    this.moveLength = moveLength.clone();
+    moveFirst = new int[moveLength.length];
+    int frames = 1;
+    for (int move = 0; move < moveLength.length; move++) {
+      moveFirst[move] = frames;
+      frames += moveLength[move];
+    }
+    if (boxes.size() != frames * 2) {
+      throw new IllegalArgumentException("Boxes for " + boxes.size() / 2 + " of " + frames
+          + " frames");
+    }
+
+    frameMove = new int[frames];
+    frameMove[0] = -1;
+    for (int move = 0; move < moveLength.length; move++) {
+      for (int i = 0; i < moveLength[move]; i++) {
+        frameMove[moveFirst[move] + i] = move;
+      }
+    }
+
+    boxStart = new int[boxes.size() + 1];
+    maxBoxes = new int[2];
+    for (int i = 0; i < boxes.size(); i++) {
+      boxStart[i + 1] = boxStart[i] + boxes.get(i).size();
+      maxBoxes[i % 2] = Math.max(maxBoxes[i % 2], boxes.get(i).size());
+    }
+
+    right = new double[boxStart[boxes.size()] * 4];
+    left = new double[right.length];
+    int offset = 0;
+    for (List<double[]> list : boxes) {
+      for (double[] box : list) {
+        right[offset] = box[0];
+        left[offset] = width - box[0] - box[2];
+        for (int i = 1; i < 4; i++) {
+          right[offset + i] = box[i];
+          left[offset + i] = box[i];
+        }
+        offset += 4;
+      }
+    }
+  }
+
+  /**
+   * Gets the frame of a move a number of ticks after it started.
+   *
+   * @param move index of the move
+   * @param tick ticks since the move started
+   * @return the frame, the last one of the move for later ticks
+   */
+  public int getFrame(int move, int tick) {
+    if (moveLength[move] == 0) {
+      return 0;
+    }
+    return moveFirst[move] + Math.min(tick, moveLength[move] - 1);
+  }
+
+  /**
+   * Gets the move a frame belongs to.
+   *
+   * @param frame the frame
+   * @return index of the move, or -1 for the idle pose
+   */
+  public int getMove(int frame) {
+    return frameMove[frame];
+  }
+
+  /**
+   * Gets the index of the first box of a kind in a frame.
+   *
+   * @param frame the frame
+   * @param kind {@link #HURT} or {@link #HIT}
+   * @return index of the box in {@link #getBoxes(boolean)}, in boxes rather than values
+   */
+  public int getFirstBox(int frame, int kind) {
+    return boxStart[frame * 2 + kind];
+  }
+
+  /**
+   * Gets the index after the last box of a kind in a frame.
+   *
+   * @param frame the frame
+   * @param kind {@link #HURT} or {@link #HIT}
+   * @return index of the box in {@link #getBoxes(boolean)}, in boxes rather than values
+   */
+  public int getEndBox(int frame, int kind) {
+    return boxStart[frame * 2 + kind + 1];
+  }
+
+  /**
+   * Gets the boxes of every frame as x, y, width and height relative to the position of the
+   * player. The array is shared and must not be changed.
+   *
+   * @param faceRight whether the player faces right
+   * @return four values per box
+   */
+  public double[] getBoxes(boolean faceRight) {
+    return faceRight ? right : left;
+  }
+
+  /**
+   * Gets the most boxes of a kind any frame has.
+   *
+   * @param kind {@link #HURT} or {@link #HIT}
+   * @return the number of boxes
+   */
+  public int getMaxBoxes(int kind) {
+    return maxBoxes[kind];
+  }
+}
@@ -19,6 +19,56 @@ public class GameDefaults {
    * Port to use for network connections
    */
   public static final int SERVER_PORT = 8822;
+  /**
+   * Whether online matches are simulated locally with rollback instead of waiting for the server,
+   * turned off with {@code -Dnetcode.rollback=false}. Clients and server must agree.
+   */
+  public static final boolean ROLLBACK_NETCODE =
+      Boolean.parseBoolean(System.getProperty("netcode.rollback", "true"));
+  /**
+   * Frames local input is delayed by in online matches with rollback
+   */
+  public static final int INPUT_DELAY = 2;
+  /**
+   * Frames that may be simulated on predicted input in online matches with rollback
+   */
+  public static final int MAX_ROLLBACK = 8;
+  /**
+   * Number of frames of input repeated in every input packet
+   */
+  public static final int INPUT_REDUNDANCY = 4;
+  /**
+   * Seconds remote players are shown behind the newest server snapshot
+   */
+  public static final double INTERPOLATION_DELAY = 0.1;
+  /**
+   * Seconds remote players may be extrapolated when server snapshots are late
+   */
+  public static final double MAX_EXTRAPOLATION = 0.05;
+  /**
+   * Whether stages step their physics in fixed-point, which lockstep peers need to agree on
+   */
+  public static final boolean FIXED_POINT_PHYSICS = false;
+  /**
+   * Most seconds the server rewinds hurtboxes by to check attacks from lagging players
+   */
+  public static final double MAX_LAG_COMPENSATION = 0.2;
+  /**
+   * Seconds an attempt to connect to a server may take before it is given up
+   */
+  public static final double CONNECT_TIMEOUT = 5;
+  /**
+   * Seconds a disconnected player keeps their place in an online match
+   */
+  public static final double RECONNECT_GRACE = 10;
+  /**
+   * Seconds between attempts to reconnect to the server after the connection drops
+   */
+  public static final double RECONNECT_INTERVAL = 0.25;
+  /**
+   * Seconds between pings sent by the server to measure latency
+   */
+  public static final double PING_INTERVAL = 0.5;
   /**
    * Global font size for large GUI Text
    */
@@ -40,6 +90,10 @@ public class GameDefaults {
    * <tt>MainMenuScreen</tt> GUI Button Text
    */
   public static final String JOIN_GAME_BUTTON_TEXT = "Join";
+  /**
+   * <tt>MainMenuScreen</tt> GUI Button Text
+   */
+  public static final String HOST_GAME_BUTTON_TEXT = "Host";
   /**
    * <tt>MainMenuScreen</tt> GUI Button Text
    */
@@ -69,11 +123,10 @@ public class GameDefaults {
    * Network bindings used in <tt>GameClient</tt>
    */
   public static final KeyCode HIT = KeyCode.E;
-
-  // If this is implemented, both punch and kick will work over network.
-  //  Currently only punch works.
-  //public static final KeyCode HIT_KICK = KeyCode.Q;
-  //public static final KeyCode HIT_PUNCH = KeyCode.E;
+  /**
+   * Network bindings used in <tt>GameClient</tt>
+   */
+  public static final KeyCode KICK = KeyCode.Q;
 
   /**
    * Background color for the game. Used in implementations of <tt>GameRenderer</tt>
@@ -91,6 +144,13 @@ public class GameDefaults {
    * Used in <tt>GameStage</tt>
    */
   public static final Color PLAYER_2_COLOR = Color.web("268bd2");
+  /**
+   * Colors of the players by number, repeated for stages with more players. Used in
+   * <tt>GameStage</tt>
+   */
+  public static final Color[] PLAYER_COLORS = {PLAYER_1_COLOR, PLAYER_2_COLOR,
+      Color.web("b58900"), Color.web("6c71c4"), Color.web("2aa198"), Color.web("dc322f"),
+      Color.web("93a1a1"), Color.web("586e75")};
   /**
    * Color of a stunned player. Used in <tt>PlayerRenderer</tt>
    */
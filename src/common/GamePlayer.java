@@ -1,12 +1,19 @@
 package common;
 
+import common.ActionCycle.CYCLE;
 import java.util.ArrayList;
+import java.util.List;
 import javafx.geometry.Point2D;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import server.GameEngine;
 
 /**
  * The model/state for players. Handles only data
+ * <p>
+ * The state that changes during a match, such as position, velocity, hit points and the phases
+ * of the actions, is kept in a slot of a {@link PlayerStore} which the player is a view of. A
+ * player starts out with a store of its own and is moved into the store of the stage it joins.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -21,6 +28,7 @@ public class GamePlayer {
   private static double DEFAULT_WIDTH = 1;
   private static double DEFAULT_HEIGHT = 2;
   private static Point2D DEFAULT_POSITION = new Point2D(0, 0);
+  private static double STUN_TIME = 0.5;
 
   /**
    * Describes whether a player is being stunned getting stunned or recovering from stun.
@@ -36,14 +44,13 @@ public class GamePlayer {
   public ActionCycle stateKicking;
   private ArrayList<Rectangle> hurtBoxes;
   private ArrayList<Rectangle> hitBoxes;
-  private Point2D position;
-  private Point2D velocity;
-  private int maxHP;
-  private int HP;
-  private double width;
-  private double height;
-  private boolean onGround;
-  private boolean faceRight;
+  private MotionMatcher motions;
+  private CancelGraph cancels;
+  // Declared frame boxes as move, kind, first tick, last tick, x, y, width, height.
+  private ArrayList<double[]> frameBoxes;
+  private FrameTable frames;
+  private PlayerStore store;
+  private int slot;
   private Color color;
 
   /**
@@ -54,14 +61,18 @@ public class GamePlayer {
    * @param HP player hit points
    */
   private GamePlayer(Point2D position, Point2D velocity, int maxHP, int HP) {
-    this.position = position;
-    this.velocity = velocity;
-    this.maxHP = maxHP;
-    this.HP = HP;
+    store = new PlayerStore(1);
+    setPosition(position);
+    setVelocity(velocity);
+    store.getMaxHP()[slot] = maxHP;
+    setHP(HP);
 
     this.hurtBoxes = new ArrayList<>();
     this.hitBoxes = new ArrayList<>();
-    faceRight = true;
+    this.motions = new MotionMatcher();
+    this.cancels = new CancelGraph();
+    this.frameBoxes = new ArrayList<>();
+    setFaceRight(true);
   }
 
   /**
@@ -93,7 +104,36 @@ public class GamePlayer {
    * @return maximum player hp
    */
   public int getMaxHP() {
-    return maxHP;
+    return store.getMaxHP()[slot];
+  }
+
+  /**
+   * Moves the state of the player into a slot of another store, which the player is a view of
+   * from then on.
+   * @param store the store
+   * @param slot the slot in {@param store}
+   */
+  public void moveTo(PlayerStore store, int slot) {
+    store.copy(this.store, this.slot, slot);
+    this.store = store;
+    this.slot = slot;
+    attachCycles();
+  }
+
+  /**
+   * Gets the store the state of the player is kept in.
+   * @return the store
+   */
+  public PlayerStore getStore() {
+    return store;
+  }
+
+  /**
+   * Gets the slot of the player in its store.
+   * @return the slot
+   */
+  public int getSlot() {
+    return slot;
   }
 
   /**
@@ -101,7 +141,7 @@ public class GamePlayer {
    * @return player position
    */
   public Point2D getPosition() {
-    return position;
+    return new Point2D(store.getX()[slot], store.getY()[slot]);
   }
 
   /**
@@ -109,8 +149,8 @@ public class GamePlayer {
    * @param position the new position
    */
   public void setPosition(Point2D position) {
-    this.position = position;
-
+    store.getX()[slot] = position.getX();
+    store.getY()[slot] = position.getY();
   }
 
   /**
@@ -122,6 +162,7 @@ public class GamePlayer {
    */
   public void addHurtbox(double x, double y, double boxwidth, double boxheight) {
     hurtBoxes.add(new Rectangle(x, y, boxwidth, boxheight));
+    frames = null;
     System.out
         .println("Hurtbox: x:" + x + " y:" + y + " width:" + boxwidth + " height:" + boxheight);
   }
@@ -135,16 +176,47 @@ public class GamePlayer {
    */
   public void addHitbox(double x, double y, double boxwidth, double boxheight) {
     hitBoxes.add(new Rectangle(x, y, boxwidth, boxheight));
+    frames = null;
     System.out
         .println("Hitbox: x: " + x + " y:" + y + " width:" + boxwidth + " height:" + boxheight);
   }
 
+  /**
+   * Converts a time from the character data to whole ticks, which all timing of the simulation
+   * is counted in so that it does not depend on rounding.
+   * @param seconds the time in seconds
+   * @return the nearest number of ticks
+   */
+  public static int toTicks(double seconds) {
+    return (int) Math.round(seconds * GameEngine.DEFAULT_TPS);
+  }
+
+  /**
+   * Adds a motion input, such as a quarter circle followed by a punch.
+   * @param name name of the motion
+   * @param input the input in numpad notation as seen when facing right, see
+   *     {@link MotionMatcher}
+   * @param window most ticks from the second input of the motion to the last
+   * @param charge least ticks the first direction has to be held, 0 for none
+   */
+  public void addMotion(String name, String input, int window, int charge) {
+    motions.addMotion(name, input, window, charge);
+  }
+
+  /**
+   * Gets the motion inputs of the character.
+   * @return the compiled motions
+   */
+  public MotionMatcher getMotions() {
+    return motions;
+  }
+
   /**
    * Sets player health.
    * @param health value to set player health to
    */
   public void setHealth(int health) {
-    maxHP = health;
+    store.getMaxHP()[slot] = health;
     System.out.println("Character health: " + health);
   }
 
@@ -154,20 +226,22 @@ public class GamePlayer {
    * @param w the new width of player
    */
   public void setCharsize(double h, double w) {
-    height = h;
-    width = w;
+    store.getHeight()[slot] = h;
+    store.getWidth()[slot] = w;
+    frames = null;
     System.out.println("Character size: height" + h + "width" + w);
   }
 
   /**
    * Sets either stateStunned, stateKicking and statePunching based on contents of {@param type}.
-   * @param spool
-   * @param duration
-   * @param cooldown
+   * @param spool ticks spent on spool phase
+   * @param duration ticks spent on active phase
+   * @param cooldown ticks spent on cool down phase
    * @param type
    */
-  public void setCycles(double spool, double duration, double cooldown, String type) {
-    stateStunned = new ActionCycle(0, 0.5, 0);
+  public void setCycles(int spool, int duration, int cooldown, String type) {
+    stateStunned = new ActionCycle(0, toTicks(STUN_TIME), 0);
+    frames = null;
     if (type == "kick") {
       stateKicking = new ActionCycle(spool, duration, cooldown);
       System.out.println("Action Cycle Kick" + spool + " " + duration + " " + cooldown);
@@ -176,6 +250,106 @@ public class GamePlayer {
       statePunching = new ActionCycle(spool, duration, cooldown);
       System.out.println("Action Cycle Jab" + spool + " " + duration + " " + cooldown);
     }
+    attachCycles();
+    compileCancels();
+  }
+
+  /**
+   * Keeps the phases of the actions that have been set in the cycle columns of the store.
+   */
+  private void attachCycles() {
+    for (int action = 0; action < PlayerStore.CYCLES; action++) {
+      if (getCycle(action) != null) {
+        getCycle(action).attach(store.getPhases(), store.getTicks(),
+            slot * PlayerStore.CYCLES + action);
+      }
+    }
+  }
+
+  /**
+   * Brings the cycle columns of the store up to date, so that they can be copied to save the
+   * actions of the player.
+   */
+  public void saveCycles() {
+    for (int action = 0; action < PlayerStore.CYCLES; action++) {
+      getCycle(action).save();
+    }
+  }
+
+  /**
+   * Restores the actions of the player from the cycle columns of the store, after they have
+   * been overwritten by a saved copy.
+   */
+  public void restoreCycles() {
+    for (int action = 0; action < PlayerStore.CYCLES; action++) {
+      getCycle(action).restore();
+    }
+  }
+
+  /**
+   * Lets a move cancel every phase of a kind of an action, see {@link CancelGraph}.
+   * @param from index of the action that is cancelled
+   * @param kind the kind of phase that may be cancelled
+   * @param into index of the move that may start
+   */
+  public void addCancel(int from, CYCLE kind, int into) {
+    cancels.addCancel(from, kind, into);
+    compileCancels();
+  }
+
+  /**
+   * Compiles the cancel sets of the actions that have been set.
+   */
+  private void compileCancels() {
+    for (int action = 0; action < CancelGraph.MOVES + 1; action++) {
+      if (getCycle(action) != null) {
+        cancels.compile(action, getCycle(action).getMove());
+      }
+    }
+  }
+
+  /**
+   * Gets an action by its index in {@link CancelGraph}.
+   * @param action index of the action
+   * @return the action cycle
+   */
+  public ActionCycle getCycle(int action) {
+    switch (action) {
+      case CancelGraph.JAB:
+        return statePunching;
+      case CancelGraph.KICK:
+        return stateKicking;
+      default:
+        return stateStunned;
+    }
+  }
+
+  /**
+   * Gets the moves that may start in the current phase of every action.
+   * @return bitset of the moves, bit {@code m} for move {@code m} in {@link CancelGraph}
+   */
+  public int getStartableMoves() {
+    return cancels.getAllowed(CancelGraph.JAB, statePunching.getPhase())
+        & cancels.getAllowed(CancelGraph.KICK, stateKicking.getPhase())
+        & cancels.getAllowed(CancelGraph.STUN, stateStunned.getPhase());
+  }
+
+  /**
+   * Starts a move if the current phases let it, ending the moves it cancels.
+   * @param move index of the move in {@link CancelGraph}
+   * @return true if the move started
+   */
+  public boolean startMove(int move) {
+    if ((getStartableMoves() & 1 << move) == 0) {
+      return false;
+    }
+    for (int other = 0; other < CancelGraph.MOVES; other++) {
+      if (other != move) {
+        getCycle(other).enterCycle(CYCLE.INACTIVE);
+      }
+    }
+    getCycle(move).enterCycle(CYCLE.SPOOL_UP);
+    return true;
   }
 
   /**
@@ -183,7 +357,7 @@ public class GamePlayer {
    * @return player velocity
    */
   public Point2D getVelocity() {
-    return velocity;
+    return new Point2D(store.getVelocityX()[slot], store.getVelocityY()[slot]);
   }
 
   /**
@@ -191,7 +365,8 @@ public class GamePlayer {
    * @param velocity value to set velocity to
    */
   public void setVelocity(Point2D velocity) {
-    this.velocity = velocity;
+    store.getVelocityX()[slot] = velocity.getX();
+    store.getVelocityY()[slot] = velocity.getY();
   }
 
   /**
@@ -199,7 +374,7 @@ public class GamePlayer {
    * @return height of player
    */
   public double getHeight() {
-    return height;
+    return store.getHeight()[slot];
   }
 
   /**
@@ -207,7 +382,7 @@ public class GamePlayer {
    * @return width of player
    */
   public double getWidth() {
-    return width;
+    return store.getWidth()[slot];
   }
 
   /**
@@ -215,7 +390,8 @@ public class GamePlayer {
    * @param delta the delta-v to accelerate player by
    */
   public void accelerate(Point2D delta) {
-    velocity = velocity.add(delta);
+    store.getVelocityX()[slot] += delta.getX();
+    store.getVelocityY()[slot] += delta.getY();
   }
 
   /**
@@ -223,7 +399,7 @@ public class GamePlayer {
    * @return true if player is on ground and false if not
    */
   public boolean isOnGround() {
-    return onGround;
+    return (store.getFlags()[slot] & PlayerStore.ON_GROUND) != 0;
   }
 
   /**
@@ -231,56 +407,183 @@ public class GamePlayer {
    * @param onGround true if on ground else false
    */
   public void setOnGround(boolean onGround) {
-    this.onGround = onGround;
+    setFlag(PlayerStore.ON_GROUND, onGround);
+  }
+
+  /**
+   * Adds a box to ticks {@param first} to {@param last} of a move, replacing the boxes made from
+   * the hitbox of the move. Coordinates are relative to the position of the player facing right.
+   * @param move index of the move in {@link CancelGraph}
+   * @param kind {@link FrameTable#HURT} or {@link FrameTable#HIT}
+   * @param first first tick of the move with the box
+   * @param last last tick of the move with the box
+   * @param box x, y, width and height of the box
+   */
+  public void addFrameBox(int move, int kind, int first, int last, double[] box) {
+    frameBoxes.add(new double[]{move, kind, first, last, box[0], box[1], box[2], box[3]});
+    frames = null;
   }
 
   /**
-   * Gets an ArrayList of globally positioned Rectangles representing the player's hurtboxes.
-   * @return
+   * Compiles the boxes of every tick of every move into the frame table. The hurtboxes of the
+   * character are in every frame. A move without boxes of its own reaches out towards its
+   * hitbox while spooling up, has the hitbox while active and pulls back while cooling down,
+   * the limb being a hurtbox.
    */
-  public ArrayList<Rectangle> getHurtBoxes() {
-    ArrayList<Rectangle> rectangles = new ArrayList<>();
+  public void compileFrames() {
+    double width = getWidth();
+    int[] lengths = new int[CancelGraph.MOVES];
+    int frameCount = 1;
+    for (int move = 0; move < lengths.length; move++) {
+      lengths[move] = getCycle(move) == null ? 0 : getCycle(move).getMove().getLength();
+      frameCount += lengths[move];
+    }
 
-    for (Rectangle hurtBox : hurtBoxes) {
-      if (faceRight) {
-        rectangles.add(new Rectangle(
-            hurtBox.getX() + width / 2 - hurtBox.getWidth() / 2 + getPosition().getX(),
-            hurtBox.getY() + getPosition().getY() + hurtBox.getY(), hurtBox.getWidth(),
-            hurtBox.getHeight()));
-      } else {
-        rectangles.add(new Rectangle(
-            -hurtBox.getX() + width / 2 - hurtBox.getWidth() / 2 + getPosition().getX(),
-            hurtBox.getY() + getPosition().getY() + hurtBox.getY(), hurtBox.getWidth(),
-            hurtBox.getHeight()));
+    List<List<double[]>> boxes = new ArrayList<>(frameCount * 2);
+    for (int i = 0; i < frameCount * 2; i++) {
+      boxes.add(new ArrayList<>());
+    }
+    for (int frame = 0; frame < frameCount; frame++) {
+      for (Rectangle hurtBox : hurtBoxes) {
+        boxes.get(frame * 2 + FrameTable.HURT).add(new double[]{
+            hurtBox.getX() + width / 2 - hurtBox.getWidth() / 2, hurtBox.getY() * 2,
+            hurtBox.getWidth(), hurtBox.getHeight()});
       }
     }
 
-    return rectangles;
+    int first = 1;
+    for (int move = 0; move < lengths.length; first += lengths[move], move++) {
+      boolean declared = false;
+      for (double[] box : frameBoxes) {
+        if ((int) box[0] != move) {
+          continue;
+        }
+        declared = true;
+        for (int tick = (int) box[2]; tick <= Math.min((int) box[3], lengths[move] - 1); tick++) {
+          boxes.get((first + tick) * 2 + (int) box[1]).add(new double[]{box[4], box[5], box[6],
+              box[7]});
+        }
+      }
+      if (!declared && move < hitBoxes.size() && lengths[move] > 0) {
+        addReach(boxes, first, getCycle(move).getMove(), hitBoxes.get(move));
+      }
+    }
+
+    frames = new FrameTable(width, lengths, boxes);
+  }
+
+  /**
+   * Adds the boxes of a move made from its hitbox to the frames of the move.
+   * @param boxes the boxes of each kind of each frame
+   * @param first the first frame of the move
+   * @param move the phases of the move
+   * @param hitBox the hitbox of the move
+   */
+  private void addReach(List<List<double[]>> boxes, int first, MoveDefinition move,
+      Rectangle hitBox) {
+    double width = getWidth();
+    double hitX = hitBox.getX() + width - hitBox.getWidth() / 2;
+    double hitY = hitBox.getY() * 2;
+    double limbX = width / 2;
+
+    for (int phase = 0; phase < move.getPhaseCount(); phase++) {
+      int duration = move.getDuration(phase);
+      for (int tick = 0; tick < duration; tick++) {
+        int frame = first + move.getStart(phase) + tick;
+        double reach;
+        switch (move.getKind(phase)) {
+          case SPOOL_UP:
+            reach = (hitX + hitBox.getWidth() - limbX) * (tick + 1) / (duration + 1);
+            break;
+          case ACTIVE:
+            reach = hitX - limbX;
+            boxes.get(frame * 2 + FrameTable.HIT).add(new double[]{hitX, hitY,
+                hitBox.getWidth(), hitBox.getHeight()});
+            break;
+          default:
+            reach = (hitX + hitBox.getWidth() - limbX) * (duration - tick) / (duration + 1);
+            break;
+        }
+        if (reach > 0) {
+          boxes.get(frame * 2 + FrameTable.HURT).add(new double[]{limbX, hitY, reach,
+              hitBox.getHeight()});
+        }
+      }
+    }
   }
 
   /**
-   * Gets a specific hitbox.
-   * @param hitbox index of hitbox to get
-   * @return the hitbox
+   * Gets the boxes of every tick of every move.
+   * @return the frame table
    */
-  public Rectangle getHitBox(int hitbox) {
-    ArrayList<Rectangle> rectangles = new ArrayList<>();
+  public FrameTable getFrames() {
+    if (frames == null) {
+      compileFrames();
+    }
+    return frames;
+  }
 
-    for (Rectangle hitBox : hitBoxes) {
-      if (faceRight) {
-        rectangles.add(
-            new Rectangle(hitBox.getX() + width - hitBox.getWidth() / 2 + getPosition().getX(),
-                hitBox.getY() + getPosition().getY() + hitBox.getY(), hitBox.getWidth(),
-                hitBox.getHeight()));
-      } else {
-        rectangles
-            .add(new Rectangle(-hitBox.getX() - hitBox.getWidth() / 2 + getPosition().getX(),
-                hitBox.getY() + getPosition().getY() + hitBox.getY(), hitBox.getWidth(),
-                hitBox.getHeight()));
+  /**
+   * Gets the frame the player is in, the tick of the move in progress or the idle pose.
+   * @return the frame in {@link #getFrames()}
+   */
+  public int getFrame() {
+    FrameTable table = getFrames();
+    for (int move = 0; move < CancelGraph.MOVES; move++) {
+      ActionCycle cycle = getCycle(move);
+      if (!cycle.isReady()) {
+        return table.getFrame(move, cycle.getMoveTick());
       }
     }
+    return 0;
+  }
+
+  /**
+   * Writes the globally positioned bounds of at most {@param max} boxes of a kind in the
+   * current frame to {@param bounds} as minX, minY, maxX, maxY starting at {@param offset}.
+   * @param kind {@link FrameTable#HURT} or {@link FrameTable#HIT}
+   * @param bounds the target array
+   * @param offset index of the first value to write
+   * @param max the most boxes to write
+   * @return the number of boxes written
+   */
+  public int getBoxBounds(int kind, double[] bounds, int offset, int max) {
+    FrameTable table = getFrames();
+    int frame = getFrame();
+    double[] boxes = table.getBoxes(isFaceRight());
+    int first = table.getFirstBox(frame, kind);
+    int count = Math.min(table.getEndBox(frame, kind) - first, max);
+
+    for (int i = first * 4; i < (first + count) * 4; i += 4) {
+      double x = boxes[i] + store.getX()[slot];
+      double y = boxes[i + 1] + store.getY()[slot];
+      bounds[offset++] = x;
+      bounds[offset++] = y;
+      bounds[offset++] = x + boxes[i + 2];
+      bounds[offset++] = y + boxes[i + 3];
+    }
 
-    return rectangles.get(hitbox);
+    return count;
+  }
+
+  /**
+   * Writes the globally positioned bounds of the hurtboxes of the current frame, see
+   * {@link #getBoxBounds(int, double[], int, int)}.
+   * @param bounds the target array
+   * @param offset index of the first value to write
+   * @param max the most hurtboxes to write
+   * @return the number of hurtboxes written
+   */
+  public int getHurtBoxBounds(double[] bounds, int offset, int max) {
+    return getBoxBounds(FrameTable.HURT, bounds, offset, max);
+  }
+
+  /**
+   * Gets the most hurtboxes any frame has.
+   * @return the number of hurtboxes
+   */
+  public int getHurtBoxCount() {
+    return getFrames().getMaxBoxes(FrameTable.HURT);
   }
 
   /**
@@ -299,12 +602,28 @@ public class GamePlayer {
     this.color = color;
   }
 
+  /**
+   * Gets the team of the player, which players on other teams can hit.
+   * @return the team
+   */
+  public int getTeam() {
+    return store.getTeam()[slot];
+  }
+
+  /**
+   * Sets the team of the player.
+   * @param team the team
+   */
+  public void setTeam(int team) {
+    store.getTeam()[slot] = team;
+  }
+
   /**
    * Gets player hit points.
    * @return player hit points
    */
   public int getHP() {
-    return HP;
+    return store.getHP()[slot];
   }
 
   /**
@@ -312,7 +631,7 @@ public class GamePlayer {
    * @param HP value to set hitpoints to
    */
   public void setHP(int HP) {
-    this.HP = HP;
+    store.getHP()[slot] = HP;
   }
 
   /**
@@ -320,7 +639,7 @@ public class GamePlayer {
    * @return true if true and false if false
    */
   public boolean isFaceRight() {
-    return faceRight;
+    return (store.getFlags()[slot] & PlayerStore.FACE_RIGHT) != 0;
   }
 
   /**
@@ -328,7 +647,20 @@ public class GamePlayer {
    * @param faceRight true if player is to be considered facing right and false for left.
    */
   public void setFaceRight(boolean faceRight) {
-    this.faceRight = faceRight;
+    setFlag(PlayerStore.FACE_RIGHT, faceRight);
+  }
+
+  /**
+   * Sets or clears a flag of the player in its store.
+   * @param flag the flag
+   * @param set true to set the flag
+   */
+  private void setFlag(int flag, boolean set) {
+    if (set) {
+      store.getFlags()[slot] |= flag;
+    } else {
+      store.getFlags()[slot] &= ~flag;
+    }
   }
 
   /**
@@ -1,10 +1,17 @@
 package common;
 
 import client.FileHandler;
+import java.io.ByteArrayInputStream;
 import javafx.geometry.Point2D;
 
 /**
  * Model class for GameStage
+ * <p>
+ * A stage holds any number of players, numbered from 1 in the order of {@link #getPlayers()}.
+ * Each player is on a team and only hits players on other teams, by default every player is on
+ * a team of its own. The state of the players is kept in one {@link PlayerStore}, player
+ * {@code n} in slot {@code n - 1}.
+ *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
  * @author Erik Källberg (kalerik)
@@ -18,11 +25,9 @@ public class GameStage {
   private static Point2D DEFAULT_PLAYER_2_SPAWN = new Point2D(13.5, 3);
   private static double DEFAULT_GROUND_Y = 6;
 
-  private Point2D player1Spawn;
-  private Point2D player2Spawn;
-
-  private GamePlayer player1;
-  private GamePlayer player2;
+  private Point2D[] spawns;
+  private GamePlayer[] players;
+  private PlayerStore store;
 
   private double width = 16;
   private double height = 9;
@@ -39,29 +44,104 @@ public class GameStage {
    * @param gly ground level y
    */
   public GameStage(Point2D p1s, Point2D p2s, GamePlayer p1, GamePlayer p2, double gly) {
-    player1Spawn = p1s;
-    player2Spawn = p2s;
-    player1 = p1;
-    player2 = p2;
-    groundLevelY = gly;
-    FileHandler.importCharacters(p1);
-    FileHandler.importCharacters(p2);
-    player1.setColor(GameDefaults.PLAYER_1_COLOR);
-    player2.setColor(GameDefaults.PLAYER_2_COLOR);
+    this(new Point2D[]{p1s, p2s}, new GamePlayer[]{p1, p2}, gly, null);
+  }
 
-    player1.setPosition(player1Spawn);
-    player2.setPosition(player2Spawn);
+  /**
+   * Creates an instance of GameStage with characters read from {@param characters}.
+   *
+   * @param spawns spawn position of each player
+   * @param players the players
+   * @param gly ground level y
+   * @param characters character XML data, or null to read the character file
+   */
+  private GameStage(Point2D[] spawns, GamePlayer[] players, double gly, byte[] characters) {
+    this.spawns = spawns;
+    this.players = players;
+    groundLevelY = gly;
+    store = new PlayerStore(players.length);
+    for (int i = 0; i < players.length; i++) {
+      players[i].moveTo(store, i);
+      if (characters == null) {
+        FileHandler.importCharacters(players[i]);
+      } else {
+        FileHandler.importCharacters(players[i], new ByteArrayInputStream(characters));
+      }
+      players[i].setColor(GameDefaults.PLAYER_COLORS[i % GameDefaults.PLAYER_COLORS.length]);
+      players[i].setTeam(i);
+      players[i].setPosition(spawns[i]);
+    }
+    store.setFixedPoint(GameDefaults.FIXED_POINT_PHYSICS);
   }
 
   /**
    * Creates an instance of GameStage.
    */
   public GameStage() {
-    this(DEFAULT_PLAYER_1_SPAWN
-        , DEFAULT_PLAYER_2_SPAWN
-        , new GamePlayer()
-        , new GamePlayer()
-        , DEFAULT_GROUND_Y);
+    this(2);
+  }
+
+  /**
+   * Creates an instance of GameStage with {@param playerCount} players spread evenly between
+   * the spawn positions of player 1 and player 2.
+   *
+   * @param playerCount the number of players, at least 2
+   */
+  public GameStage(int playerCount) {
+    this(playerCount, null);
+  }
+
+  /**
+   * Creates an instance of GameStage using the given character definitions, such as the ones
+   * stored in a replay.
+   *
+   * @param characters character XML data
+   */
+  public GameStage(byte[] characters) {
+    this(2, characters);
+  }
+
+  /**
+   * Creates an instance of GameStage with {@param playerCount} players using the given character
+   * definitions.
+   *
+   * @param playerCount the number of players, at least 2
+   * @param characters character XML data, or null to read the character file
+   */
+  public GameStage(int playerCount, byte[] characters) {
+    this(spawns(playerCount), newPlayers(playerCount), DEFAULT_GROUND_Y, characters);
+  }
+
+  /**
+   * Spreads spawn positions evenly from the spawn of player 1 to the spawn of player 2.
+   *
+   * @param playerCount the number of players
+   * @return the spawn positions
+   */
+  private static Point2D[] spawns(int playerCount) {
+    if (playerCount < 2) {
+      throw new IllegalArgumentException("A stage needs at least 2 players");
+    }
+    Point2D[] spawns = new Point2D[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      spawns[i] = DEFAULT_PLAYER_1_SPAWN.interpolate(DEFAULT_PLAYER_2_SPAWN,
+          (double) i / (playerCount - 1));
+    }
+    return spawns;
+  }
+
+  /**
+   * Creates players with all defaults.
+   *
+   * @param playerCount the number of players
+   * @return the players
+   */
+  private static GamePlayer[] newPlayers(int playerCount) {
+    GamePlayer[] players = new GamePlayer[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      players[i] = new GamePlayer();
+    }
+    return players;
   }
 
   /**
@@ -69,17 +149,33 @@ public class GameStage {
    * air.
    */
   public void reset() {
-    player1.setPosition(player1Spawn);
-    player2.setPosition(player2Spawn);
-
-    player1.setHP(player2.getMaxHP());
-    player2.setHP(player2.getMaxHP());
+    for (int i = 0; i < players.length; i++) {
+      players[i].setPosition(spawns[i]);
+      players[i].setHP(players[i].getMaxHP());
+      players[i].setVelocity(new Point2D(0, 0));
+      players[i].setOnGround(false);
+    }
+  }
 
-    player1.setVelocity(new Point2D(0, 0));
-    player2.setVelocity(new Point2D(0, 0));
+  /**
+   * Sets whether the players are stepped with fixed-point physics, see {@link FixedPoint}. Every
+   * simulation of a match has to use the same setting for their results to agree.
+   *
+   * @param fixedPoint true for fixed-point physics
+   */
+  public void setFixedPoint(boolean fixedPoint) {
+    store.setFixedPoint(fixedPoint);
+  }
 
-    player1.setOnGround(false);
-    player2.setOnGround(false);
+  /**
+   * Puts the players on teams of {@param teamSize} in the order they are numbered.
+   *
+   * @param teamSize players per team, 1 for every player on its own
+   */
+  public void setTeamSize(int teamSize) {
+    for (int i = 0; i < players.length; i++) {
+      players[i].setTeam(i / teamSize);
+    }
   }
 
   /**
@@ -87,7 +183,7 @@ public class GameStage {
    * @return player 1
    */
   public GamePlayer getPlayer1() {
-    return player1;
+    return players[0];
   }
 
   /**
@@ -95,7 +191,24 @@ public class GameStage {
    * @return player 2
    */
   public GamePlayer getPlayer2() {
-    return player2;
+    return players[1];
+  }
+
+  /**
+   * Gets all players in the order they are numbered. The array is shared and must not be
+   * changed.
+   * @return array of players
+   */
+  public GamePlayer[] getPlayers() {
+    return players;
+  }
+
+  /**
+   * Gets the store the state of the players is kept in.
+   * @return the store
+   */
+  public PlayerStore getStore() {
+    return store;
   }
 
   /**
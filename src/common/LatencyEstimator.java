@@ -0,0 +1,121 @@
+package common;
+
+/**
+ * Keeps filtered estimates of the round trip time, jitter and clock offset of one connection from
+ * ping and pong exchanges.
+ * <p>
+ * Each exchange gives four monotonic time stamps, the local send time of the ping, the remote
+ * receive and transmit times and the local receive time of the pong. The round trip time is the
+ * time on the local clock minus the time the remote side held the ping, and the clock offset
+ * assumes the two directions take equally long. Both are smoothed with exponential moving
+ * averages, and the jitter is the smoothed deviation of the round trip time. Exchanges that took
+ * much longer than usual were most likely queued in one direction only, so they do not affect the
+ * clock offset.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class LatencyEstimator {
+
+  // Gains of the moving averages.
+  private static final double RTT_GAIN = 1d / 8;
+  private static final double JITTER_GAIN = 1d / 4;
+  private static final double OFFSET_GAIN = 1d / 8;
+  // Exchanges slower than the average by this many jitters are left out of the offset.
+  private static final double OFFSET_OUTLIER = 2;
+
+  private double roundTripTime;
+  private double jitter;
+  private double clockOffset;
+  private int samples;
+
+  /**
+   * Adds the time stamps of a finished exchange, all from {@link System#nanoTime()} on their
+   * respective side.
+   *
+   * @param sent local time the ping was sent
+   * @param remoteReceived remote time the ping was received
+   * @param remoteSent remote time the pong was sent
+   * @param received local time the pong was received
+   */
+  public synchronized void addSample(long sent, long remoteReceived, long remoteSent,
+      long received) {
+    double rtt = Math.max(0, (received - sent) - (remoteSent - remoteReceived)) / 1e9;
+    double offset = ((remoteReceived - sent) + (remoteSent - received)) / 2e9;
+
+    if (samples == 0) {
+      roundTripTime = rtt;
+      jitter = rtt / 2;
+      clockOffset = offset;
+    } else {
+      boolean outlier = rtt > roundTripTime + OFFSET_OUTLIER * jitter;
+      jitter += (Math.abs(rtt - roundTripTime) - jitter) * JITTER_GAIN;
+      roundTripTime += (rtt - roundTripTime) * RTT_GAIN;
+      if (!outlier) {
+        clockOffset += (offset - clockOffset) * OFFSET_GAIN;
+      }
+    }
+    samples++;
+  }
+
+  /**
+   * Gets the smoothed round trip time.
+   *
+   * @return the round trip time in seconds
+   */
+  public synchronized double getRoundTripTime() {
+    return roundTripTime;
+  }
+
+  /**
+   * Gets the smoothed deviation of the round trip time.
+   *
+   * @return the jitter in seconds
+   */
+  public synchronized double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Gets how far the remote clock is ahead of the local clock.
+   *
+   * @return the clock offset in seconds
+   */
+  public synchronized double getClockOffset() {
+    return clockOffset;
+  }
+
+  /**
+   * Converts a local time stamp to the remote clock.
+   *
+   * @param localTime a time from {@link System#nanoTime()}
+   * @return the same moment on the remote clock
+   */
+  public synchronized long toRemoteTime(long localTime) {
+    return localTime + (long) (clockOffset * 1e9);
+  }
+
+  /**
+   * Gets the number of exchanges the estimates are based on.
+   *
+   * @return number of exchanges
+   */
+  public synchronized int getSampleCount() {
+    return samples;
+  }
+
+  /**
+   * Describes the estimates in milliseconds, suitable for logging.
+   *
+   * @return the estimates
+   */
+  @Override
+  public synchronized String toString() {
+    return String.format("rtt=%.1fms jitter=%.1fms offset=%.1fms samples=%d",
+        roundTripTime * 1e3, jitter * 1e3, clockOffset * 1e3, samples);
+  }
+}
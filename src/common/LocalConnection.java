@@ -0,0 +1,190 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One end of a connection between a client and a server in the same process.
+ * <p>
+ * Each direction is a {@link PacketRing}, so a written packet array reaches the other end by
+ * reference without being serialised again or passing through the operating system. Writes of
+ * part of an array or of single bytes are copied into a new array first.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class LocalConnection implements Connection {
+
+  // Packets that fit in each direction before writers wait.
+  private static final int CAPACITY = 1024;
+
+  private PacketRing incoming;
+  private PacketRing outgoing;
+  private InputStream inputStream;
+  private OutputStream outputStream;
+  private volatile int readTimeout;
+
+  /**
+   * Creates one end of a connection.
+   *
+   * @param incoming the ring this end reads from
+   * @param outgoing the ring this end writes to
+   */
+  private LocalConnection(PacketRing incoming, PacketRing outgoing) {
+    this.incoming = incoming;
+    this.outgoing = outgoing;
+    inputStream = new RingInputStream();
+    outputStream = new RingOutputStream();
+  }
+
+  /**
+   * Creates both ends of a connection.
+   *
+   * @return the two ends, what is written to one is read from the other
+   */
+  public static LocalConnection[] createPair() {
+    PacketRing a = new PacketRing(CAPACITY);
+    PacketRing b = new PacketRing(CAPACITY);
+    return new LocalConnection[]{new LocalConnection(a, b), new LocalConnection(b, a)};
+  }
+
+  /**
+   * Gets the stream packets from the other end are read from.
+   *
+   * @return the input stream
+   */
+  @Override
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  /**
+   * Gets the stream packets to the other end are written to.
+   *
+   * @return the output stream
+   */
+  @Override
+  public OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  /**
+   * Sets how long a read may block.
+   *
+   * @param millis the timeout in milliseconds, 0 for none
+   */
+  @Override
+  public void setReadTimeout(int millis) {
+    readTimeout = millis;
+  }
+
+  /**
+   * Answers whether neither end has closed the connection.
+   *
+   * @return true if connected
+   */
+  @Override
+  public boolean isConnected() {
+    return !incoming.isClosed() && !outgoing.isClosed();
+  }
+
+  /**
+   * Closes both directions.
+   */
+  @Override
+  public void close() {
+    incoming.close();
+    outgoing.close();
+  }
+
+  /**
+   * Reads the packets of the incoming ring as one stream of bytes.
+   */
+  private class RingInputStream extends InputStream {
+
+    private byte[] packet;
+    private int position;
+
+    /**
+     * Makes sure there are unread bytes in the current packet.
+     *
+     * @return false at the end of the stream
+     * @throws IOException if the read timed out
+     */
+    private boolean fill() throws IOException {
+      while (packet == null || position == packet.length) {
+        packet = incoming.take(readTimeout);
+        position = 0;
+        if (packet == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return packet[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+
+      int count = Math.min(len, packet.length - position);
+      System.arraycopy(packet, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return packet == null ? 0 : packet.length - position;
+    }
+  }
+
+  /**
+   * Writes packets to the outgoing ring.
+   */
+  private class RingOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      outgoing.put(new byte[]{(byte) b});
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+      outgoing.put(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (off == 0 && len == b.length) {
+        outgoing.put(b);
+      } else {
+        byte[] copy = new byte[len];
+        System.arraycopy(b, off, copy, 0, len);
+        outgoing.put(copy);
+      }
+    }
+
+    @Override
+    public void close() {
+      outgoing.close();
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Recognises motion inputs, such as a quarter circle followed by a punch, in a stream of input
+ * symbols.
+ * <p>
+ * Motions are written in numpad notation for a player facing right, 1 to 9 being the directions
+ * as on a numeric keypad with 5 as neutral, followed by {@code P} for punch and {@code K} for
+ * kick, so a quarter circle forward punch is {@code 236P}. Neutral is never an input, so letting
+ * go of every direction between two others does not break a motion. Every motion is also added
+ * mirrored for a player facing left. All motions are compiled into one deterministic automaton,
+ * feeding a symbol is a single table lookup and the motions completed by it are the bits of
+ * {@link #getMatches(int)}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class MotionMatcher {
+
+  /**
+   * Number of input symbols, the nine directions followed by punch and kick.
+   */
+  public static final int ALPHABET = 11;
+  /**
+   * Symbol of a punch press.
+   */
+  public static final int PUNCH = 9;
+  /**
+   * Symbol of a kick press.
+   */
+  public static final int KICK = 10;
+  /**
+   * Most motions that can be added.
+   */
+  public static final int MAX_MOTIONS = 32;
+
+  private ArrayList<String> names;
+  private ArrayList<int[]> inputs;
+  private int[] windows;
+  private int[] charges;
+  private int maxLength;
+
+  // Compiled automaton, rebuilt when a motion is added.
+  private int[] transitions;
+  private long[] matches;
+
+  /**
+   * Creates an instance of MotionMatcher without any motions.
+   */
+  public MotionMatcher() {
+    names = new ArrayList<>();
+    inputs = new ArrayList<>();
+    windows = new int[MAX_MOTIONS];
+    charges = new int[MAX_MOTIONS];
+    compile();
+  }
+
+  /**
+   * Adds a motion.
+   *
+   * @param name name of the motion
+   * @param input the symbols in numpad notation, as seen when facing right
+   * @param window most ticks from the second symbol to the last
+   * @param charge least ticks the first direction has to be held, 0 for none
+   */
+  public void addMotion(String name, String input, int window, int charge) {
+    if (names.size() == MAX_MOTIONS) {
+      throw new IllegalStateException("Too many motions");
+    }
+
+    int[] symbols = new int[input.length()];
+    for (int i = 0; i < symbols.length; i++) {
+      symbols[i] = toSymbol(input.charAt(i));
+    }
+
+    windows[names.size()] = window;
+    charges[names.size()] = charge;
+    names.add(name);
+    inputs.add(symbols);
+    maxLength = Math.max(maxLength, symbols.length);
+    compile();
+  }
+
+  /**
+   * Converts a character of numpad notation to a symbol.
+   *
+   * @param c the character
+   * @return the symbol
+   */
+  private static int toSymbol(char c) {
+    if (c >= '1' && c <= '9' && c != '5') {
+      return c - '1';
+    } else if (c == 'P' || c == 'p') {
+      return PUNCH;
+    } else if (c == 'K' || c == 'k') {
+      return KICK;
+    }
+    throw new IllegalArgumentException("Unknown motion input " + c);
+  }
+
+  /**
+   * Mirrors a symbol horizontally.
+   *
+   * @param symbol the symbol as seen when facing right
+   * @return the symbol as seen when facing left
+   */
+  private static int mirror(int symbol) {
+    if (symbol >= PUNCH) {
+      return symbol;
+    }
+    // Columns are 0 to 2 within each row of the keypad.
+    return symbol - symbol % 3 + 2 - symbol % 3;
+  }
+
+  /**
+   * Gets the symbol of the direction held in an action bitmask.
+   *
+   * @param mask the action bitmask
+   * @return the direction symbol, 4 being neutral
+   */
+  public static int getDirection(int mask) {
+    int direction = 4;
+    if ((mask & (1 << GamePlayer.ACTION.MOVE_LEFT.ordinal())) != 0) {
+      direction--;
+    }
+    if ((mask & (1 << GamePlayer.ACTION.MOVE_RIGHT.ordinal())) != 0) {
+      direction++;
+    }
+    if ((mask & (1 << GamePlayer.ACTION.JUMP.ordinal())) != 0) {
+      direction += 3;
+    }
+    if ((mask & (1 << GamePlayer.ACTION.FALL.ordinal())) != 0) {
+      direction -= 3;
+    }
+    return direction;
+  }
+
+  /**
+   * Builds the automaton from the motions as they are written and mirrored. Pattern
+   * {@code 2 * m} is motion {@code m} facing right and {@code 2 * m + 1} facing left.
+   */
+  private void compile() {
+    // Trie of all patterns, state 0 is the root.
+    ArrayList<int[]> trie = new ArrayList<>();
+    ArrayList<Long> output = new ArrayList<>();
+    trie.add(newState());
+    output.add(0L);
+
+    for (int m = 0; m < inputs.size(); m++) {
+      for (int side = 0; side < 2; side++) {
+        int state = 0;
+        for (int symbol : inputs.get(m)) {
+          int s = side == 0 ? symbol : mirror(symbol);
+          if (trie.get(state)[s] < 0) {
+            trie.get(state)[s] = trie.size();
+            trie.add(newState());
+            output.add(0L);
+          }
+          state = trie.get(state)[s];
+        }
+        output.set(state, output.get(state) | 1L << (2 * m + side));
+      }
+    }
+
+    // Breadth first, completing missing transitions through the failure link of each state.
+    int stateCount = trie.size();
+    transitions = new int[stateCount * ALPHABET];
+    matches = new long[stateCount];
+    int[] failure = new int[stateCount];
+    int[] queue = new int[stateCount];
+    int head = 0;
+    int tail = 0;
+
+    for (int s = 0; s < ALPHABET; s++) {
+      int child = trie.get(0)[s];
+      if (child < 0) {
+        transitions[s] = 0;
+      } else {
+        transitions[s] = child;
+        failure[child] = 0;
+        queue[tail++] = child;
+      }
+    }
+    matches[0] = output.get(0);
+
+    while (head < tail) {
+      int state = queue[head++];
+      matches[state] = output.get(state) | matches[failure[state]];
+      for (int s = 0; s < ALPHABET; s++) {
+        int child = trie.get(state)[s];
+        int fallback = transitions[failure[state] * ALPHABET + s];
+        if (child < 0) {
+          transitions[state * ALPHABET + s] = fallback;
+        } else {
+          transitions[state * ALPHABET + s] = child;
+          failure[child] = fallback;
+          queue[tail++] = child;
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a trie state without transitions.
+   *
+   * @return the transitions, -1 for none
+   */
+  private static int[] newState() {
+    int[] state = new int[ALPHABET];
+    Arrays.fill(state, -1);
+    return state;
+  }
+
+  /**
+   * Gets the state after feeding a symbol.
+   *
+   * @param state the current state, 0 initially
+   * @param symbol the symbol
+   * @return the next state
+   */
+  public int next(int state, int symbol) {
+    return transitions[state * ALPHABET + symbol];
+  }
+
+  /**
+   * Gets the patterns completed when a state is entered. Bit {@code 2 * m} is set for motion
+   * {@code m} facing right and bit {@code 2 * m + 1} for it facing left.
+   *
+   * @param state the state
+   * @return the bitmask of completed patterns
+   */
+  public long getMatches(int state) {
+    return matches[state];
+  }
+
+  /**
+   * Gets the number of motions.
+   *
+   * @return the number of motions
+   */
+  public int getMotionCount() {
+    return names.size();
+  }
+
+  /**
+   * Gets the name of a motion.
+   *
+   * @param motion index of the motion
+   * @return the name
+   */
+  public String getName(int motion) {
+    return names.get(motion);
+  }
+
+  /**
+   * Gets the number of symbols of a motion.
+   *
+   * @param motion index of the motion
+   * @return the length
+   */
+  public int getLength(int motion) {
+    return inputs.get(motion).length;
+  }
+
+  /**
+   * Gets the most ticks from the second symbol of a motion to the last.
+   *
+   * @param motion index of the motion
+   * @return the window in ticks
+   */
+  public int getWindow(int motion) {
+    return windows[motion];
+  }
+
+  /**
+   * Gets the least ticks the first direction of a motion has to be held.
+   *
+   * @param motion index of the motion
+   * @return the charge in ticks, 0 for none
+   */
+  public int getCharge(int motion) {
+    return charges[motion];
+  }
+
+  /**
+   * Gets the number of symbols of the longest motion.
+   *
+   * @return the length
+   */
+  public int getMaxLength() {
+    return maxLength;
+  }
+}
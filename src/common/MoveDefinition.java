@@ -0,0 +1,155 @@
+package common;
+
+import common.ActionCycle.CYCLE;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The phases of a move and how long each lasts, shared by every {@link ActionCycle} of the move.
+ * <p>
+ * Phases are indexed from 0 and each leads to the next, the index after the last one is the
+ * inactive state. A move may have any number of phases, such as several active windows separated
+ * by recovery for a move that hits more than once. Instances never change.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class MoveDefinition {
+
+  private static final CYCLE[] STANDARD = {CYCLE.SPOOL_UP, CYCLE.ACTIVE, CYCLE.COOL_DOWN};
+  private static final HashMap<String, MoveDefinition> SHARED = new HashMap<>();
+
+  private CYCLE[] kinds;
+  private int[] durations;
+  // Tick of the move each phase starts on, the last one being the length of the move.
+  private int[] starts;
+  // Index of the first phase of each kind, the inactive index if the move has none.
+  private int[] firstPhase;
+  // Cancel sets of each phase, by the sets per kind of phase they were compiled from.
+  private HashMap<String, int[]> cancelSets;
+
+  /**
+   * Creates an instance of MoveDefinition.
+   *
+   * @param kinds the kind of each phase, not {@code INACTIVE}
+   * @param durations the duration of each phase in ticks
+   */
+  public MoveDefinition(CYCLE[] kinds, int[] durations) {
+    if (kinds.length != durations.length) {
+      throw new IllegalArgumentException("Every phase needs a duration");
+    }
+    this.kinds = Arrays.copyOf(kinds, kinds.length + 1);
+    this.kinds[kinds.length] = CYCLE.INACTIVE;
+    this.durations = Arrays.copyOf(durations, durations.length + 1);
+    starts = new int[kinds.length + 1];
+    for (int i = 0; i < kinds.length; i++) {
+      starts[i + 1] = starts[i] + durations[i];
+    }
+
+    firstPhase = new int[CYCLE.values().length];
+    Arrays.fill(firstPhase, kinds.length);
+    for (int i = kinds.length - 1; i >= 0; i--) {
+      firstPhase[kinds[i].ordinal()] = i;
+    }
+    cancelSets = new HashMap<>();
+  }
+
+  /**
+   * Gets the definition of a move with one spool up, one active and one cool down phase. Moves
+   * with the same durations share one definition.
+   *
+   * @param spoolUpTicks ticks spent on spool phase
+   * @param activeTicks ticks spent on active phase
+   * @param coolDownTicks ticks spent on cool down phase
+   * @return the definition
+   */
+  public static MoveDefinition standard(int spoolUpTicks, int activeTicks, int coolDownTicks) {
+    String key = spoolUpTicks + " " + activeTicks + " " + coolDownTicks;
+    synchronized (SHARED) {
+      return SHARED.computeIfAbsent(key, k -> new MoveDefinition(STANDARD,
+          new int[]{spoolUpTicks, activeTicks, coolDownTicks}));
+    }
+  }
+
+  /**
+   * Gets the number of phases, which is also the index of the inactive state.
+   *
+   * @return the number of phases
+   */
+  public int getPhaseCount() {
+    return kinds.length - 1;
+  }
+
+  /**
+   * Gets the kind of a phase.
+   *
+   * @param phase index of the phase
+   * @return the kind, {@code INACTIVE} for the index after the last phase
+   */
+  public CYCLE getKind(int phase) {
+    return kinds[phase];
+  }
+
+  /**
+   * Gets the duration of a phase.
+   *
+   * @param phase index of the phase
+   * @return the duration in ticks, 0 for the inactive state
+   */
+  public int getDuration(int phase) {
+    return durations[phase];
+  }
+
+  /**
+   * Gets the tick of the move a phase starts on.
+   *
+   * @param phase index of the phase
+   * @return ticks from the start of the move, the length of the move for the inactive state
+   */
+  public int getStart(int phase) {
+    return starts[phase];
+  }
+
+  /**
+   * Gets the number of ticks of all phases together.
+   *
+   * @return the length in ticks
+   */
+  public int getLength() {
+    return starts[starts.length - 1];
+  }
+
+  /**
+   * Gets the moves each phase lets start, see {@link CancelGraph}. The sets are compiled once
+   * and shared by every player whose action has this move and the same cancels.
+   *
+   * @param byKind the bitset of moves each kind of phase lets start, by ordinal of the kind
+   * @return the bitset of moves of each phase, the inactive state last, not to be changed
+   */
+  public int[] getCancelSets(int[] byKind) {
+    String key = Arrays.toString(byKind);
+    synchronized (cancelSets) {
+      return cancelSets.computeIfAbsent(key, k -> {
+        int[] sets = new int[kinds.length];
+        for (int phase = 0; phase < sets.length; phase++) {
+          sets[phase] = byKind[kinds[phase].ordinal()];
+        }
+        return sets;
+      });
+    }
+  }
+
+  /**
+   * Gets the first phase of a kind.
+   *
+   * @param kind the kind
+   * @return index of the phase, the inactive index if there is none
+   */
+  public int getFirstPhase(CYCLE kind) {
+    return firstPhase[kind.ordinal()];
+  }
+}
@@ -48,8 +48,15 @@ public class NetworkPacket {
     return data;
   }
 
-  public static byte[] sync(GamePlayer player, int playerNumber) {
-    ByteBuffer buffer = ByteBuffer.allocate(23);
+  /**
+   * Creates a 'sync' packet with the state of a player.
+   * @param player the player
+   * @param playerNumber the number of the player
+   * @param ackFrame the last frame of input received from the player, or -1 for none
+   * @return packet as byte array
+   */
+  public static byte[] sync(GamePlayer player, int playerNumber, int ackFrame) {
+    ByteBuffer buffer = ByteBuffer.allocate(43);
     byte data[];
 
     buffer.put((byte) TYPE.S_SYNC_PLAYER.ordinal());
@@ -57,12 +64,15 @@ public class NetworkPacket {
 
     buffer.putDouble(player.getPosition().getX());
     buffer.putDouble(player.getPosition().getY());
+    buffer.putDouble(player.getVelocity().getX());
+    buffer.putDouble(player.getVelocity().getY());
     buffer.putInt(player.getHP());
     if (player.isFaceRight()) {
       buffer.put((byte) 1);
     } else {
       buffer.put((byte) 0);
     }
+    buffer.putInt(ackFrame);
 
     data = buffer.array();
 
@@ -93,6 +103,150 @@ public class NetworkPacket {
     return data;
   }
 
+  /**
+   * Creates an 'assign' packet that tells a client which player it controls and the token it can
+   * resume the session with if the connection drops.
+   * @param playerNumber the player number, starting at 1
+   * @param sessionToken the session token
+   * @return packet as byte array
+   */
+  public static byte[] assign(int playerNumber, long sessionToken) {
+    ByteBuffer buffer = ByteBuffer.allocate(10);
+    buffer.put((byte) TYPE.S_ASSIGN.ordinal());
+    buffer.put((byte) playerNumber);
+    buffer.putLong(sessionToken);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'reconnect' packet, the first packet a client sends on a new connection to take
+   * back its player.
+   * @param sessionToken the token received in the 'assign' packet
+   * @param lastRemoteFrame the last frame of other players' input the client has, or -1
+   * @return packet as byte array
+   */
+  public static byte[] reconnect(long sessionToken, int lastRemoteFrame) {
+    ByteBuffer buffer = ByteBuffer.allocate(13);
+    buffer.put((byte) TYPE.C_RESUME.ordinal());
+    buffer.putLong(sessionToken);
+    buffer.putInt(lastRemoteFrame);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'resume' packet that tells a reconnected client its player and the last frame of
+   * its input the server has, so that it can send the frames after it again.
+   * @param playerNumber the player number, starting at 1
+   * @param ackFrame the last frame of input received from the player, or -1 for none
+   * @return packet as byte array
+   */
+  public static byte[] resume(int playerNumber, int ackFrame) {
+    ByteBuffer buffer = ByteBuffer.allocate(6);
+    buffer.put((byte) TYPE.S_RESUME.ordinal());
+    buffer.put((byte) playerNumber);
+    buffer.putInt(ackFrame);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'keyframe' packet with the full state of every player on the stage.
+   * @param snapshot the state to send
+   * @return packet as byte array
+   */
+  public static byte[] keyframe(StageSnapshot snapshot) {
+    ByteBuffer buffer = ByteBuffer.allocate(2 + snapshot.getByteSize());
+    buffer.put((byte) TYPE.S_KEYFRAME.ordinal());
+    buffer.put((byte) snapshot.getPlayerCount());
+    snapshot.write(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'state' packet that hands a reconnected client using rollback the saved state of
+   * the match, with the input the server has of its own player from the frame of the state on.
+   * @param frame the next frame to simulate from the state
+   * @param masks bitmasks of the player's held actions, oldest frame first
+   * @param count number of frames of input, at most {@code 255}
+   * @param state the state saved in a {@link StateArena} region
+   * @return packet as byte array
+   */
+  public static byte[] state(int frame, int[] masks, int count, byte[] state) {
+    ByteBuffer buffer = ByteBuffer.allocate(10 + count + state.length);
+    buffer.put((byte) TYPE.S_STATE.ordinal());
+    buffer.putInt(frame);
+    buffer.put((byte) count);
+    for (int i = 0; i < count; i++) {
+      buffer.put((byte) masks[i]);
+    }
+    buffer.putInt(state.length);
+    buffer.put(state);
+    return buffer.array();
+  }
+
+  /**
+   * Creates an 'input' packet that tells the server which actions a player holds in a frame and
+   * the frames before it. The earlier frames are repeated so that a lost packet is covered by the
+   * next one, the server ignores frames it has already applied.
+   * @param frame the newest frame, which is also the sequence number of the packet
+   * @param masks bitmasks of held actions, one bit per action ordinal, newest frame first
+   * @param count number of frames to include from {@param masks}
+   * @return packet as byte array
+   */
+  public static byte[] input(int frame, int[] masks, int count) {
+    ByteBuffer buffer = ByteBuffer.allocate(6 + count);
+    buffer.put((byte) TYPE.C_INPUT.ordinal());
+    buffer.putInt(frame);
+    buffer.put((byte) count);
+    for (int i = 0; i < count; i++) {
+      buffer.put((byte) masks[i]);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'remote input' packet that forwards the input of another player to a client.
+   * @param playerNumber the player the input belongs to
+   * @param frame the frame the input belongs to
+   * @param mask bitmask of held actions, one bit per action ordinal
+   * @return packet as byte array
+   */
+  public static byte[] remoteInput(int playerNumber, int frame, int mask) {
+    ByteBuffer buffer = ByteBuffer.allocate(7);
+    buffer.put((byte) TYPE.S_INPUT.ordinal());
+    buffer.put((byte) playerNumber);
+    buffer.putInt(frame);
+    buffer.put((byte) mask);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'ping' packet that asks the other side to answer with a 'pong'.
+   * @param time the send time, from {@link System#nanoTime()}
+   * @return packet as byte array
+   */
+  public static byte[] ping(long time) {
+    ByteBuffer buffer = ByteBuffer.allocate(9);
+    buffer.put((byte) TYPE.PING.ordinal());
+    buffer.putLong(time);
+    return buffer.array();
+  }
+
+  /**
+   * Creates a 'pong' packet that answers a 'ping'.
+   * @param pingTime the send time carried by the ping
+   * @param receiveTime the time the ping was received, from {@link System#nanoTime()}
+   * @param sendTime the time this pong is sent, from {@link System#nanoTime()}
+   * @return packet as byte array
+   */
+  public static byte[] pong(long pingTime, long receiveTime, long sendTime) {
+    ByteBuffer buffer = ByteBuffer.allocate(25);
+    buffer.put((byte) TYPE.PONG.ordinal());
+    buffer.putLong(pingTime);
+    buffer.putLong(receiveTime);
+    buffer.putLong(sendTime);
+    return buffer.array();
+  }
+
   /**
    * Packet type
    */
@@ -104,6 +258,14 @@ public class NetworkPacket {
     C_ACTION_START,
     C_ACTION_END,
     C_CLIENT_JOIN,
+    C_INPUT,
+    S_INPUT,
+    PING,
+    PONG,
+    C_RESUME,
+    S_RESUME,
+    S_KEYFRAME,
+    S_STATE,
     ERROR
   }
 }
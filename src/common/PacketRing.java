@@ -0,0 +1,135 @@
+package common;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free queue of packets from one producer thread to one consumer thread. Packets
+ * are handed over by reference, nothing is copied.
+ * <p>
+ * The producer only writes {@code tail} and the consumer only writes {@code head}, both are
+ * volatile so a slot written before {@code tail} is advanced is visible to the consumer once it
+ * sees the new {@code tail}. A consumer that finds the ring empty parks until the producer
+ * unparks it, a producer that finds it full parks briefly and tries again. Several producer
+ * threads may share a ring as long as they never write at the same time.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class PacketRing {
+
+  // Nanoseconds a producer waits for room in a full ring before trying again.
+  private static final long FULL_WAIT = 50_000;
+
+  private byte[][] slots;
+  private int mask;
+  private volatile long head;
+  private volatile long tail;
+  private volatile boolean closed;
+  private volatile Thread waitingConsumer;
+
+  /**
+   * Creates an instance of PacketRing.
+   *
+   * @param capacity the number of packets that fit, must be a power of two
+   */
+  public PacketRing(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two");
+    }
+    slots = new byte[capacity][];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Adds a packet, waiting while the ring is full.
+   *
+   * @param packet the packet, which must not be changed afterwards
+   * @throws IOException if the ring has been closed
+   */
+  public void put(byte[] packet) throws IOException {
+    long t = tail;
+    while (t - head > mask) {
+      if (closed) {
+        throw new IOException("Connection closed");
+      }
+      LockSupport.parkNanos(FULL_WAIT);
+    }
+    if (closed) {
+      throw new IOException("Connection closed");
+    }
+
+    slots[(int) t & mask] = packet;
+    tail = t + 1;
+
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Takes the oldest packet, waiting while the ring is empty.
+   *
+   * @param timeoutMillis the longest time to wait in milliseconds, 0 to wait forever
+   * @return the packet, or null if the ring has been closed and is empty
+   * @throws SocketTimeoutException if no packet arrived in time
+   */
+  public byte[] take(int timeoutMillis) throws SocketTimeoutException {
+    long h = head;
+    long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+
+    while (h == tail) {
+      if (closed) {
+        return null;
+      }
+
+      // Announce the wait before checking again so that a put in between is not missed.
+      waitingConsumer = Thread.currentThread();
+      if (h == tail && !closed) {
+        if (timeoutMillis == 0) {
+          LockSupport.park(this);
+        } else {
+          long left = deadline - System.nanoTime();
+          if (left <= 0) {
+            waitingConsumer = null;
+            throw new SocketTimeoutException("Read timed out");
+          }
+          LockSupport.parkNanos(this, left);
+        }
+      }
+      waitingConsumer = null;
+    }
+
+    int slot = (int) h & mask;
+    byte[] packet = slots[slot];
+    slots[slot] = null;
+    head = h + 1;
+    return packet;
+  }
+
+  /**
+   * Closes the ring, waking a waiting consumer. Packets already added can still be taken.
+   */
+  public void close() {
+    closed = true;
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Answers whether the ring has been closed.
+   *
+   * @return true if closed
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+}
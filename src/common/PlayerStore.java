@@ -0,0 +1,251 @@
+package common;
+
+/**
+ * The changing state of a number of players kept in one primitive array per field, player by
+ * player in slots.
+ * <p>
+ * A {@link GamePlayer} is a view of one slot, so code that steps every player, such as the
+ * physics of the stage, can run as a loop over a few arrays instead of following the objects of
+ * each player. The actions of a player take {@link #CYCLES} entries of the cycle columns from
+ * {@code slot * CYCLES}, in the order of {@link CancelGraph}.
+ * <p>
+ * With fixed-point physics the positions and velocities are kept on the grid of
+ * {@link FixedPoint} and the physics steps them with integer arithmetic.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class PlayerStore {
+
+  /**
+   * Flag of a player standing on the ground.
+   */
+  public static final int ON_GROUND = 1;
+  /**
+   * Flag of a player facing right.
+   */
+  public static final int FACE_RIGHT = 2;
+  /**
+   * Number of action cycles of each player.
+   */
+  public static final int CYCLES = CancelGraph.MOVES + 1;
+
+  private int size;
+  private boolean fixedPoint;
+  private double[] x;
+  private double[] y;
+  private double[] velocityX;
+  private double[] velocityY;
+  private double[] width;
+  private double[] height;
+  private int[] HP;
+  private int[] maxHP;
+  private int[] flags;
+  private int[] team;
+  private int[] actions;
+  private int[] phases;
+  private int[] ticks;
+
+  /**
+   * Creates an instance of PlayerStore.
+   *
+   * @param size the number of slots
+   */
+  public PlayerStore(int size) {
+    this.size = size;
+    x = new double[size];
+    y = new double[size];
+    velocityX = new double[size];
+    velocityY = new double[size];
+    width = new double[size];
+    height = new double[size];
+    HP = new int[size];
+    maxHP = new int[size];
+    flags = new int[size];
+    team = new int[size];
+    actions = new int[size];
+    phases = new int[size * CYCLES];
+    ticks = new int[size * CYCLES];
+  }
+
+  /**
+   * Copies every field of a slot of another store into a slot of this one.
+   *
+   * @param source the store to copy from
+   * @param from slot in {@param source}
+   * @param to slot in this store
+   */
+  public void copy(PlayerStore source, int from, int to) {
+    x[to] = source.x[from];
+    y[to] = source.y[from];
+    velocityX[to] = source.velocityX[from];
+    velocityY[to] = source.velocityY[from];
+    width[to] = source.width[from];
+    height[to] = source.height[from];
+    HP[to] = source.HP[from];
+    maxHP[to] = source.maxHP[from];
+    flags[to] = source.flags[from];
+    team[to] = source.team[from];
+    actions[to] = source.actions[from];
+    System.arraycopy(source.phases, from * CYCLES, phases, to * CYCLES, CYCLES);
+    System.arraycopy(source.ticks, from * CYCLES, ticks, to * CYCLES, CYCLES);
+  }
+
+  /**
+   * Answers whether the physics steps the players in fixed-point.
+   *
+   * @return true for fixed-point physics
+   */
+  public boolean isFixedPoint() {
+    return fixedPoint;
+  }
+
+  /**
+   * Sets whether the physics steps the players in fixed-point, moving every position and
+   * velocity onto the fixed-point grid when turned on.
+   *
+   * @param fixedPoint true for fixed-point physics
+   */
+  public void setFixedPoint(boolean fixedPoint) {
+    this.fixedPoint = fixedPoint;
+    if (!fixedPoint) {
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      x[i] = FixedPoint.toDouble(FixedPoint.toFixed(x[i]));
+      y[i] = FixedPoint.toDouble(FixedPoint.toFixed(y[i]));
+      velocityX[i] = FixedPoint.toDouble(FixedPoint.toFixed(velocityX[i]));
+      velocityY[i] = FixedPoint.toDouble(FixedPoint.toFixed(velocityY[i]));
+    }
+  }
+
+  /**
+   * Gets the number of slots.
+   *
+   * @return the number of slots
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the x-coordinates of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getX() {
+    return x;
+  }
+
+  /**
+   * Gets the y-coordinates of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getY() {
+    return y;
+  }
+
+  /**
+   * Gets the x-velocities of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getVelocityX() {
+    return velocityX;
+  }
+
+  /**
+   * Gets the y-velocities of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getVelocityY() {
+    return velocityY;
+  }
+
+  /**
+   * Gets the widths of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the heights of the players.
+   *
+   * @return one value per slot
+   */
+  public double[] getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the hit points of the players.
+   *
+   * @return one value per slot
+   */
+  public int[] getHP() {
+    return HP;
+  }
+
+  /**
+   * Gets the maximum hit points of the players.
+   *
+   * @return one value per slot
+   */
+  public int[] getMaxHP() {
+    return maxHP;
+  }
+
+  /**
+   * Gets the flags of the players, {@link #ON_GROUND} and {@link #FACE_RIGHT}.
+   *
+   * @return one value per slot
+   */
+  public int[] getFlags() {
+    return flags;
+  }
+
+  /**
+   * Gets the teams of the players.
+   *
+   * @return one value per slot
+   */
+  public int[] getTeam() {
+    return team;
+  }
+
+  /**
+   * Gets the held actions of the players, written by their controllers.
+   *
+   * @return one bitmask per slot, one bit per {@code ACTION} ordinal
+   */
+  public int[] getActions() {
+    return actions;
+  }
+
+  /**
+   * Gets the index of the current phase of every action cycle.
+   *
+   * @return {@link #CYCLES} values per slot
+   */
+  public int[] getPhases() {
+    return phases;
+  }
+
+  /**
+   * Gets the ticks left of the current phase of every action cycle not bound to a timing wheel.
+   *
+   * @return {@link #CYCLES} values per slot
+   */
+  public int[] getTicks() {
+    return ticks;
+  }
+}
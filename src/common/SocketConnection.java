@@ -0,0 +1,83 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A connection over a TCP socket.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class SocketConnection implements Connection {
+
+  private Socket socket;
+
+  /**
+   * Creates an instance of SocketConnection.
+   *
+   * @param socket a connected socket
+   */
+  public SocketConnection(Socket socket) {
+    this.socket = socket;
+  }
+
+  /**
+   * Gets the input stream of the socket.
+   *
+   * @return the input stream
+   * @throws IOException if the socket is closed
+   */
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return socket.getInputStream();
+  }
+
+  /**
+   * Gets the output stream of the socket.
+   *
+   * @return the output stream
+   * @throws IOException if the socket is closed
+   */
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return socket.getOutputStream();
+  }
+
+  /**
+   * Sets the socket timeout.
+   *
+   * @param millis the timeout in milliseconds, 0 for none
+   * @throws IOException if the socket is closed
+   */
+  @Override
+  public void setReadTimeout(int millis) throws IOException {
+    socket.setSoTimeout(millis);
+  }
+
+  /**
+   * Answers whether the socket is connected and not closed.
+   *
+   * @return true if connected
+   */
+  @Override
+  public boolean isConnected() {
+    return socket.isConnected() && !socket.isClosed();
+  }
+
+  /**
+   * Closes the socket.
+   *
+   * @throws IOException on any exception
+   */
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
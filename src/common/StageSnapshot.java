@@ -0,0 +1,189 @@
+package common;
+
+import java.nio.ByteBuffer;
+import javafx.geometry.Point2D;
+
+/**
+ * A copy of the mutable simulation state of every player on a stage. Used for replay keyframes
+ * and other saved states. An instance can be captured into repeatedly without allocating.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class StageSnapshot {
+
+  /**
+   * Size in bytes of one player when written to a buffer.
+   */
+  public static final int PLAYER_BYTES = 4 * Double.BYTES + Integer.BYTES + 2
+      + 3 * (1 + Integer.BYTES);
+
+  private static final int STUNNED = 0;
+  private static final int PUNCHING = 1;
+  private static final int KICKING = 2;
+
+  private int playerCount;
+  private double[] positionX;
+  private double[] positionY;
+  private double[] velocityX;
+  private double[] velocityY;
+  private int[] hp;
+  private boolean[] onGround;
+  private boolean[] faceRight;
+  private byte[] phases;
+  private int[] cycleTicks;
+
+  /**
+   * Creates an empty snapshot with room for {@param playerCount} players.
+   *
+   * @param playerCount number of players
+   */
+  public StageSnapshot(int playerCount) {
+    this.playerCount = playerCount;
+    positionX = new double[playerCount];
+    positionY = new double[playerCount];
+    velocityX = new double[playerCount];
+    velocityY = new double[playerCount];
+    hp = new int[playerCount];
+    onGround = new boolean[playerCount];
+    faceRight = new boolean[playerCount];
+    phases = new byte[playerCount * 3];
+    cycleTicks = new int[playerCount * 3];
+  }
+
+  /**
+   * Creates a snapshot of the current state of {@param stage}.
+   *
+   * @param stage the stage to capture
+   * @return the snapshot
+   */
+  public static StageSnapshot capture(GameStage stage) {
+    StageSnapshot snapshot = new StageSnapshot(stage.getPlayers().length);
+    snapshot.captureFrom(stage);
+    return snapshot;
+  }
+
+  /**
+   * Overwrites this snapshot with the current state of {@param stage}.
+   *
+   * @param stage the stage to capture
+   */
+  public void captureFrom(GameStage stage) {
+    GamePlayer[] players = stage.getPlayers();
+
+    for (int i = 0; i < playerCount; i++) {
+      GamePlayer player = players[i];
+      // Read from the store, the position and velocity getters allocate.
+      PlayerStore store = player.getStore();
+      int slot = player.getSlot();
+      positionX[i] = store.getX()[slot];
+      positionY[i] = store.getY()[slot];
+      velocityX[i] = store.getVelocityX()[slot];
+      velocityY[i] = store.getVelocityY()[slot];
+      hp[i] = player.getHP();
+      onGround[i] = player.isOnGround();
+      faceRight[i] = player.isFaceRight();
+      captureCycle(i * 3 + STUNNED, player.stateStunned);
+      captureCycle(i * 3 + PUNCHING, player.statePunching);
+      captureCycle(i * 3 + KICKING, player.stateKicking);
+    }
+  }
+
+  /**
+   * Puts {@param stage} back into the state of this snapshot.
+   *
+   * @param stage the stage to restore
+   */
+  public void restore(GameStage stage) {
+    for (int i = 0; i < playerCount; i++) {
+      restorePlayer(stage, i);
+    }
+  }
+
+  /**
+   * Puts one player of {@param stage} back into the state of this snapshot.
+   *
+   * @param stage the stage to restore
+   * @param i index of the player
+   */
+  public void restorePlayer(GameStage stage, int i) {
+    GamePlayer player = stage.getPlayers()[i];
+    player.setPosition(new Point2D(positionX[i], positionY[i]));
+    player.setVelocity(new Point2D(velocityX[i], velocityY[i]));
+    player.setHP(hp[i]);
+    player.setOnGround(onGround[i]);
+    player.setFaceRight(faceRight[i]);
+    player.stateStunned.restore(phases[i * 3 + STUNNED], cycleTicks[i * 3 + STUNNED]);
+    player.statePunching.restore(phases[i * 3 + PUNCHING], cycleTicks[i * 3 + PUNCHING]);
+    player.stateKicking.restore(phases[i * 3 + KICKING], cycleTicks[i * 3 + KICKING]);
+  }
+
+  /**
+   * Writes this snapshot to {@param buffer}, {@link #PLAYER_BYTES} per player.
+   *
+   * @param buffer the target buffer
+   */
+  public void write(ByteBuffer buffer) {
+    for (int i = 0; i < playerCount; i++) {
+      buffer.putDouble(positionX[i]);
+      buffer.putDouble(positionY[i]);
+      buffer.putDouble(velocityX[i]);
+      buffer.putDouble(velocityY[i]);
+      buffer.putInt(hp[i]);
+      buffer.put((byte) (onGround[i] ? 1 : 0));
+      buffer.put((byte) (faceRight[i] ? 1 : 0));
+      for (int c = i * 3; c < i * 3 + 3; c++) {
+        buffer.put(phases[c]);
+        buffer.putInt(cycleTicks[c]);
+      }
+    }
+  }
+
+  /**
+   * Overwrites this snapshot with one read from {@param buffer}.
+   *
+   * @param buffer the source buffer
+   */
+  public void read(ByteBuffer buffer) {
+    for (int i = 0; i < playerCount; i++) {
+      positionX[i] = buffer.getDouble();
+      positionY[i] = buffer.getDouble();
+      velocityX[i] = buffer.getDouble();
+      velocityY[i] = buffer.getDouble();
+      hp[i] = buffer.getInt();
+      onGround[i] = buffer.get() != 0;
+      faceRight[i] = buffer.get() != 0;
+      for (int c = i * 3; c < i * 3 + 3; c++) {
+        phases[c] = buffer.get();
+        cycleTicks[c] = buffer.getInt();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of players in this snapshot.
+   *
+   * @return number of players
+   */
+  public int getPlayerCount() {
+    return playerCount;
+  }
+
+  /**
+   * Gets the size of this snapshot when written to a buffer.
+   *
+   * @return size in bytes
+   */
+  public int getByteSize() {
+    return playerCount * PLAYER_BYTES;
+  }
+
+  private void captureCycle(int index, ActionCycle cycle) {
+    phases[index] = (byte) cycle.getPhase();
+    cycleTicks[index] = cycle.getTicksLeft();
+  }
+}
@@ -0,0 +1,288 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Saved states of a stage kept outside the Java heap, in a fixed number of regions of one direct
+ * buffer.
+ * <p>
+ * A region holds the columns of the {@link PlayerStore} of the stage that change during a match
+ * with the same layout, first position and velocity and then hit points, flags and the phase
+ * and ticks left of every action cycle. Saving and restoring a state is a bulk copy of each
+ * column, {@code 64} bytes per player in all, and neither allocates.
+ * <p>
+ * State kept outside the store, such as the controllers' input histories, is saved after the
+ * players by the {@link Part}s given to the arena, each in a fixed number of bytes of every
+ * region.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class StateArena {
+
+  /**
+   * Size in bytes of one player in a region.
+   */
+  public static final int PLAYER_BYTES = 4 * Double.BYTES
+      + (2 + 2 * PlayerStore.CYCLES) * Integer.BYTES;
+
+  private int playerCount;
+  private int regionCount;
+  private Part[] parts;
+  private int regionBytes;
+  private ByteBuffer arena;
+  private DoubleBuffer doubles;
+  private IntBuffer ints;
+
+  /**
+   * State saved in every region of an arena along with the players of the stage.
+   */
+  public interface Part {
+
+    /**
+     * Gets the number of bytes the state takes in a region, a multiple of {@code 8}.
+     *
+     * @return size in bytes
+     */
+    int getSavedBytes();
+
+    /**
+     * Saves the state.
+     *
+     * @param arena the arena to save in
+     * @param offset byte offset of the state in the arena
+     */
+    void save(StateArena arena, int offset);
+
+    /**
+     * Puts the state back as it was saved.
+     *
+     * @param arena the arena to restore from
+     * @param offset byte offset of the state in the arena
+     */
+    void restore(StateArena arena, int offset);
+  }
+
+  /**
+   * Creates an instance of StateArena.
+   *
+   * @param playerCount the number of players of the stage
+   * @param regionCount the number of states that can be held
+   * @param parts state saved in every region after the players
+   */
+  public StateArena(int playerCount, int regionCount, Part... parts) {
+    this.playerCount = playerCount;
+    this.regionCount = regionCount;
+    this.parts = parts.clone();
+    regionBytes = playerCount * PLAYER_BYTES;
+    for (Part part : parts) {
+      if (part.getSavedBytes() % Double.BYTES != 0) {
+        throw new IllegalArgumentException("Saved state must be a multiple of 8 bytes");
+      }
+      regionBytes += part.getSavedBytes();
+    }
+    arena = ByteBuffer.allocateDirect(regionCount * regionBytes)
+        .order(ByteOrder.nativeOrder());
+    doubles = arena.asDoubleBuffer();
+    ints = arena.asIntBuffer();
+  }
+
+  /**
+   * Saves the state of the players of {@param stage} in a region.
+   *
+   * @param stage the stage to save
+   * @param region index of the region
+   */
+  public void save(GameStage stage, int region) {
+    for (GamePlayer player : stage.getPlayers()) {
+      player.saveCycles();
+    }
+
+    PlayerStore store = stage.getStore();
+    int n = playerCount;
+    int d = region * getRegionBytes() / Double.BYTES;
+    doubles.put(d, store.getX(), 0, n);
+    doubles.put(d + n, store.getY(), 0, n);
+    doubles.put(d + 2 * n, store.getVelocityX(), 0, n);
+    doubles.put(d + 3 * n, store.getVelocityY(), 0, n);
+
+    int i = (region * getRegionBytes() + 4 * n * Double.BYTES) / Integer.BYTES;
+    ints.put(i, store.getHP(), 0, n);
+    ints.put(i + n, store.getFlags(), 0, n);
+    ints.put(i + 2 * n, store.getPhases(), 0, n * PlayerStore.CYCLES);
+    ints.put(i + (2 + PlayerStore.CYCLES) * n, store.getTicks(), 0, n * PlayerStore.CYCLES);
+
+    int offset = region * getRegionBytes() + n * PLAYER_BYTES;
+    for (Part part : parts) {
+      part.save(this, offset);
+      offset += part.getSavedBytes();
+    }
+  }
+
+  /**
+   * Puts the players of {@param stage} back into the state saved in a region.
+   *
+   * @param stage the stage to restore
+   * @param region index of the region
+   */
+  public void restore(GameStage stage, int region) {
+    PlayerStore store = stage.getStore();
+    int n = playerCount;
+    int d = region * getRegionBytes() / Double.BYTES;
+    doubles.get(d, store.getX(), 0, n);
+    doubles.get(d + n, store.getY(), 0, n);
+    doubles.get(d + 2 * n, store.getVelocityX(), 0, n);
+    doubles.get(d + 3 * n, store.getVelocityY(), 0, n);
+
+    int i = (region * getRegionBytes() + 4 * n * Double.BYTES) / Integer.BYTES;
+    ints.get(i, store.getHP(), 0, n);
+    ints.get(i + n, store.getFlags(), 0, n);
+    ints.get(i + 2 * n, store.getPhases(), 0, n * PlayerStore.CYCLES);
+    ints.get(i + (2 + PlayerStore.CYCLES) * n, store.getTicks(), 0, n * PlayerStore.CYCLES);
+
+    for (GamePlayer player : stage.getPlayers()) {
+      player.restoreCycles();
+    }
+
+    int offset = region * getRegionBytes() + n * PLAYER_BYTES;
+    for (Part part : parts) {
+      part.restore(this, offset);
+      offset += part.getSavedBytes();
+    }
+  }
+
+  /**
+   * Copies ints into the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena, a multiple of {@code 4}
+   * @param source the ints to copy
+   * @param length the number of ints
+   */
+  public void putInts(int offset, int[] source, int length) {
+    ints.put(offset / Integer.BYTES, source, 0, length);
+  }
+
+  /**
+   * Copies ints out of the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena, a multiple of {@code 4}
+   * @param target the array to copy to
+   * @param length the number of ints
+   */
+  public void getInts(int offset, int[] target, int length) {
+    ints.get(offset / Integer.BYTES, target, 0, length);
+  }
+
+  /**
+   * Copies doubles into the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena, a multiple of {@code 8}
+   * @param source the doubles to copy
+   * @param length the number of doubles
+   */
+  public void putDoubles(int offset, double[] source, int length) {
+    doubles.put(offset / Double.BYTES, source, 0, length);
+  }
+
+  /**
+   * Copies doubles out of the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena, a multiple of {@code 8}
+   * @param target the array to copy to
+   * @param length the number of doubles
+   */
+  public void getDoubles(int offset, double[] target, int length) {
+    doubles.get(offset / Double.BYTES, target, 0, length);
+  }
+
+  /**
+   * Writes an int into the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena
+   * @param value the value
+   */
+  public void putInt(int offset, int value) {
+    arena.putInt(offset, value);
+  }
+
+  /**
+   * Reads an int from the arena, used by {@link Part}s.
+   *
+   * @param offset byte offset in the arena
+   * @return the value
+   */
+  public int getInt(int offset) {
+    return arena.getInt(offset);
+  }
+
+  /**
+   * Copies the state saved in one region to another.
+   *
+   * @param from index of the region to copy
+   * @param to index of the region to overwrite
+   */
+  public void copy(int from, int to) {
+    arena.put(to * getRegionBytes(), arena, from * getRegionBytes(), getRegionBytes());
+  }
+
+  /**
+   * Copies the bytes of a region out of the arena, to hand the state to an arena with the same
+   * layout in another process of the same byte order.
+   *
+   * @param region index of the region
+   * @param target the array to copy to, {@link #getRegionBytes()} long
+   */
+  public void getRegion(int region, byte[] target) {
+    arena.get(region * getRegionBytes(), target, 0, getRegionBytes());
+  }
+
+  /**
+   * Overwrites a region with bytes copied out of an arena with the same layout.
+   *
+   * @param region index of the region
+   * @param source the bytes of the region, {@link #getRegionBytes()} long
+   */
+  public void putRegion(int region, byte[] source) {
+    arena.put(region * getRegionBytes(), source, 0, getRegionBytes());
+  }
+
+  /**
+   * Checks whether a region holds the same bytes as a region of another arena with the same
+   * layout, used to find states that have diverged.
+   *
+   * @param region index of the region in this arena
+   * @param other the other arena
+   * @param otherRegion index of the region in {@param other}
+   * @return true if the saved states are equal
+   */
+  public boolean matches(int region, StateArena other, int otherRegion) {
+    return getRegionBytes() == other.getRegionBytes()
+        && arena.slice(region * getRegionBytes(), getRegionBytes())
+            .equals(other.arena.slice(otherRegion * getRegionBytes(), getRegionBytes()));
+  }
+
+  /**
+   * Gets the number of regions.
+   *
+   * @return the number of states that can be held
+   */
+  public int getRegionCount() {
+    return regionCount;
+  }
+
+  /**
+   * Gets the size of a region.
+   *
+   * @return size in bytes
+   */
+  public int getRegionBytes() {
+    return regionBytes;
+  }
+}
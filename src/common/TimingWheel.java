@@ -0,0 +1,251 @@
+package common;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed hierarchical timing wheel that fires timers a whole number of ticks from now.
+ * <p>
+ * Timers are kept in linked lists in the slots of four wheels of 256 slots each, the first wheel
+ * holding the timers due within the current 256 ticks and each following one 256 times as many.
+ * Scheduling and cancelling take constant time and a tick only looks at the slot that is due, so
+ * the cost of a tick does not grow with the number of timers waiting. Timers due later are moved
+ * down a wheel when the lower one has gone round once.
+ * <p>
+ * Only the thread that advances the wheel may schedule and cancel timers, other threads use
+ * {@link #submit(Timer, int)}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class TimingWheel {
+
+  private static final int LEVELS = 4;
+  private static final int SLOT_BITS = 8;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  // Sentinel of the list in each slot, wheel by wheel.
+  private Timer[] slots;
+  // Sentinel of the timers being fired, which may still be cancelled while others run.
+  private Timer firing;
+  private ConcurrentLinkedQueue<Timer> submitted;
+  private long now;
+  private int size;
+
+  /**
+   * Creates an instance of TimingWheel at tick 0.
+   */
+  public TimingWheel() {
+    slots = new Timer[LEVELS * SLOTS];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = sentinel();
+    }
+    firing = sentinel();
+    submitted = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Gets the current tick, the number of times the wheel has been advanced.
+   *
+   * @return the tick
+   */
+  public long getTick() {
+    return now;
+  }
+
+  /**
+   * Gets the number of scheduled timers, not counting submitted ones.
+   *
+   * @return the number of timers
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Schedules a timer to fire when the wheel is advanced past {@param deadline}. A timer that is
+   * already scheduled is moved, a deadline that has passed fires on the next advance.
+   *
+   * @param timer the timer
+   * @param deadline the tick to fire on
+   */
+  public void schedule(Timer timer, long deadline) {
+    cancel(timer);
+    timer.deadline = Math.max(deadline, now);
+    insert(timer);
+    size++;
+  }
+
+  /**
+   * Schedules a timer from any thread. It is scheduled on the next advance, {@param ticks} ticks
+   * after that advance.
+   *
+   * @param timer a timer that is not scheduled
+   * @param ticks the ticks from the next advance
+   */
+  public void submit(Timer timer, int ticks) {
+    timer.ticks = ticks;
+    submitted.add(timer);
+  }
+
+  /**
+   * Removes a timer from the wheel. Does nothing if it is not scheduled.
+   *
+   * @param timer the timer
+   */
+  public void cancel(Timer timer) {
+    if (timer.next == null) {
+      return;
+    }
+    unlink(timer);
+    size--;
+  }
+
+  /**
+   * Ends the current tick and fires the timers that were due on it.
+   */
+  public void advance() {
+    Timer timer;
+    while ((timer = submitted.poll()) != null) {
+      schedule(timer, now + timer.ticks);
+    }
+
+    // Take the due timers first so that those they schedule land in the next tick or later.
+    Timer due = slots[(int) now & SLOT_MASK];
+    if (due.next != due) {
+      firing.next = due.next;
+      firing.previous = due.previous;
+      firing.next.previous = firing;
+      firing.previous.next = firing;
+      due.next = due;
+      due.previous = due;
+    }
+
+    now++;
+    if ((now & SLOT_MASK) == 0) {
+      cascade(1);
+    }
+
+    while (firing.next != firing) {
+      timer = firing.next;
+      unlink(timer);
+      size--;
+      timer.action.run();
+    }
+  }
+
+  /**
+   * Moves the timers of the slot of a wheel that is now current down to the lower wheels, after
+   * doing the same for the wheel above if this one has gone round.
+   *
+   * @param level the wheel, 1 or above
+   */
+  private void cascade(int level) {
+    if (level >= LEVELS) {
+      return;
+    }
+    int slot = (int) (now >>> (level * SLOT_BITS)) & SLOT_MASK;
+    if (slot == 0) {
+      cascade(level + 1);
+    }
+
+    Timer head = slots[level * SLOTS + slot];
+    Timer timer = head.next;
+    head.next = head;
+    head.previous = head;
+    while (timer != head) {
+      Timer next = timer.next;
+      insert(timer);
+      timer = next;
+    }
+  }
+
+  /**
+   * Links a timer into the slot of its deadline, in the lowest wheel whose current round
+   * includes the deadline.
+   *
+   * @param timer the timer
+   */
+  private void insert(Timer timer) {
+    int level = 0;
+    while (level < LEVELS - 1
+        && timer.deadline >>> ((level + 1) * SLOT_BITS) != now >>> ((level + 1) * SLOT_BITS)) {
+      level++;
+    }
+    int slot = (int) (timer.deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+
+    Timer head = slots[level * SLOTS + slot];
+    timer.previous = head.previous;
+    timer.next = head;
+    head.previous.next = timer;
+    head.previous = timer;
+  }
+
+  /**
+   * Creates the empty list of a slot.
+   *
+   * @return the sentinel of the list
+   */
+  private static Timer sentinel() {
+    Timer sentinel = new Timer(null);
+    sentinel.next = sentinel;
+    sentinel.previous = sentinel;
+    return sentinel;
+  }
+
+  /**
+   * Unlinks a timer from the list it is in.
+   *
+   * @param timer the timer
+   */
+  private static void unlink(Timer timer) {
+    timer.previous.next = timer.next;
+    timer.next.previous = timer.previous;
+    timer.next = null;
+    timer.previous = null;
+  }
+
+  /**
+   * Something to be done on a tick, linked directly into the wheel so that scheduling does not
+   * allocate. A timer may be scheduled again any number of times.
+   */
+  public static class Timer {
+
+    private Runnable action;
+    private Timer next;
+    private Timer previous;
+    private long deadline;
+    private int ticks;
+
+    /**
+     * Creates an instance of Timer.
+     *
+     * @param action run on the thread advancing the wheel when the timer fires
+     */
+    public Timer(Runnable action) {
+      this.action = action;
+    }
+
+    /**
+     * Answers whether the timer is waiting to fire.
+     *
+     * @return true if scheduled
+     */
+    public boolean isScheduled() {
+      return next != null;
+    }
+
+    /**
+     * Gets the tick the timer fires on, only meaningful while it is scheduled.
+     *
+     * @return the deadline
+     */
+    public long getDeadline() {
+      return deadline;
+    }
+  }
+}
@@ -27,6 +27,21 @@ public interface GameController {
    */
   void attach(GameEngine engine);
 
+  /**
+   * Called when this controller has been added to {@param engine}, before its first update.
+   * Does nothing by default.
+   * @param engine the engine this controller was added to
+   */
+  default void onAdded(GameEngine engine) {
+  }
+
+  /**
+   * Called at the end of every tick, after every controller has been updated and the timers of
+   * the engine have fired. Does nothing by default.
+   */
+  default void onTickEnd() {
+  }
+
   /**
    * To be run when a key is pressed (deprecated)
    * @param event the event that has been fired
@@ -1,6 +1,7 @@
 package server;
 
-import java.util.HashSet;
+import common.TimingWheel;
+import java.util.LinkedHashSet;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,31 +34,48 @@ public class GameEngine implements Runnable {
   // Desired GameEngine tickrate, is initiated to DEFAULT_TPS.
   private int target_tps;
 
-  // Used for keyboard inputs.
-  private HashSet<GameController> controllers;
+  // Used for keyboard inputs. Updated in the order they were added so that ticks are reproducible.
+  private LinkedHashSet<GameController> controllers;
 
   // GameEngine state. Enabling sleeps the engine thread.
   private boolean pause;
 
+  // Timers of the match, advanced at the end of every tick.
+  private TimingWheel timers;
+
   /**
    * Creates a new instance of {@code GameEngine}.
    */
   public GameEngine() {
-    controllers = new HashSet<>();
+    controllers = new LinkedHashSet<>();
     target_tps = DEFAULT_TPS;
     stop = true;
     tps = 0;
     pause = false;
+    timers = new TimingWheel();
   }
 
   /**
-   * Adds a {@code controller} instance to the HashSet.
+   * Adds a {@code controller} instance to the LinkedHashSet.
    *
    * @param controller The controller to be added
-   * @return the {@code GameEngine} {@code controller} HashSet, with the {@code controller} added
+   * @return the {@code GameEngine} {@code controller} set, with the {@code controller} added
    */
   public boolean addController(GameController controller) {
-    return controllers.add(controller);
+    if (!controllers.add(controller)) {
+      return false;
+    }
+    controller.onAdded(this);
+    return true;
+  }
+
+  /**
+   * Gets the timing wheel of this engine, which fires timers at the end of a tick.
+   *
+   * @return the timing wheel
+   */
+  public TimingWheel getTimers() {
+    return timers;
   }
 
   /**
@@ -67,6 +85,8 @@ public class GameEngine implements Runnable {
    */
   public void tick(double delta) {
     controllers.forEach(c -> c.update(delta));
+    timers.advance();
+    controllers.forEach(GameController::onTickEnd);
   }
 
   /**
@@ -1,19 +1,55 @@
 package server;
 
+import common.GameDefaults;
 import common.GamePlayer;
 import common.GamePlayer.ACTION;
+import common.Connection;
 import common.GameStage;
+import common.LatencyEstimator;
+import common.LocalConnection;
 import common.NetworkPacket;
 import common.NetworkPacket.TYPE;
+import common.SocketConnection;
+import common.StageSnapshot;
+import common.StateArena;
+import common.TimingWheel;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
  * A game server
+ * <p>
+ * Every player gets a session token when the match starts. A player whose connection drops keeps
+ * their place for {@link GameDefaults#RECONNECT_GRACE} seconds with no actions held, and may take
+ * it back by connecting with the token. A reconnected client gets a keyframe of the stage and the
+ * input of the other players it missed before the normal stream continues. A player that does
+ * not come back in time forfeits and stands idle, and the match ends once fewer than two players
+ * are left.
+ * <p>
+ * Clients in the same process as the server connect through a {@link LocalConnection} instead of
+ * a socket, see {@link #getLocalServer(int)}.
+ * <p>
+ * With {@link GameDefaults#ROLLBACK_NETCODE} the server does not run the match in real time but
+ * simulates each frame once the input of every player for it has arrived, the same way the
+ * clients' {@link client.RollbackSession}s do, so the recording and the keyframes sent to
+ * reconnecting clients hold the frames the players saw. Attacks are not lag compensated then,
+ * since the clients do not rewind either.
+ * <p>
+ * Without rollback, servers in the same process may share a {@link MatchBatch} that ticks all
+ * their matches on one thread instead of each running its own engine, see
+ * {@link #main(String[])}.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -24,18 +60,44 @@ import java.util.HashSet;
  */
 public class GameServer {
 
+  // Frames of relayed input kept for clients that reconnect, must be a power of two.
+  private static final int RELAY_HISTORY = 1024;
+  private static final int RELAY_MASK = RELAY_HISTORY - 1;
+
+  // Servers running in this process, by port.
+  private static final ConcurrentHashMap<Integer, GameServer> LOCAL_SERVERS =
+      new ConcurrentHashMap<>();
+
   private GameStage gameStage;
-  private GamePlayer player1;
-  private GamePlayer player2;
   private StageController stageController;
-  private PlayerController player1Controller;
-  private PlayerController player2Controller;
   private GameEngine gameEngine;
+  private MatchBatch batch;
+  private MatchRecorder recorder;
+  private Thread recorderHook;
   private ServerSocket serverSocket;
-  private Socket client1;
-  private Socket client2;
+  private BlockingQueue<Connection> pendingConnections;
+  private AtomicReferenceArray<Connection> clients;
+  // Controller of each player, by slot.
+  private PlayerController[] controllers;
+  private long[] sessionTokens;
+  // Time each player lost its connection, from System.nanoTime(), valid while disconnected.
+  private long[] disconnectTimes;
+  private boolean[] disconnected;
+  // Input relayed from each player per frame, resent to clients that reconnect.
+  private int[][] relayedInputs;
+  private int[] relayedFrames;
   private Thread gameThread;
+  private Thread reconnectThread;
+  private volatile boolean running;
+  private Consumer<String> progressListener;
   private HashSet<Thread> clientThreads;
+  // Last frame of input received from each player, sent back so clients can reconcile.
+  private AtomicIntegerArray ackFrames;
+  private LatencyEstimator[] latency;
+  // Next frame to simulate with rollback.
+  private int frame;
+  // Holds the state handed to clients that reconnect with rollback.
+  private StateArena resumeState;
 
   /**
    * Creates an instance of GameServer
@@ -44,114 +106,646 @@ public class GameServer {
    * @throws IOException thrown if anything goes wrong with the sockets TODO: handle errors
    */
   public GameServer(int port) throws IOException {
+    this(port, null);
+  }
+
+  /**
+   * Creates an instance of GameServer whose match is ticked by a batch shared with other
+   * servers. With rollback the match is simulated by frame and the batch is not used.
+   *
+   * @param port target port to host the server on
+   * @param batch the batch to tick the match in, or null for an engine of its own
+   * @throws IOException thrown if anything goes wrong with the sockets
+   */
+  public GameServer(int port, MatchBatch batch) throws IOException {
+    this.batch = batch;
     serverSocket = new ServerSocket(port);
+    pendingConnections = new LinkedBlockingQueue<>();
 
     gameStage = new GameStage();
-    player1 = gameStage.getPlayer1();
-    player2 = gameStage.getPlayer2();
+    int playerCount = gameStage.getPlayers().length;
+    ackFrames = new AtomicIntegerArray(playerCount);
+    latency = new LatencyEstimator[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      ackFrames.set(i, -1);
+      latency[i] = new LatencyEstimator();
+    }
 
     stageController = new StageController(gameStage);
-    player1Controller = new PlayerController(player1);
-    player2Controller = new PlayerController(player2);
-
     gameEngine = new GameEngine();
-    gameEngine.addController(stageController);
-    gameEngine.addController(player1Controller);
-    gameEngine.addController(player2Controller);
+    stageController.attach(gameEngine);
+
+    clients = new AtomicReferenceArray<>(playerCount);
+    controllers = new PlayerController[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      controllers[i] = stageController.getPlayerController(i);
+    }
+    sessionTokens = new long[playerCount];
+    disconnectTimes = new long[playerCount];
+    disconnected = new boolean[playerCount];
+    relayedInputs = new int[playerCount][RELAY_HISTORY];
+    relayedFrames = new int[playerCount];
+    Arrays.fill(relayedFrames, -1);
+    if (GameDefaults.ROLLBACK_NETCODE) {
+      // Same parts in the same order as the clients' sessions.
+      StateArena.Part[] parts = new StateArena.Part[playerCount + 1];
+      parts[0] = stageController;
+      System.arraycopy(controllers, 0, parts, 1, playerCount);
+      resumeState = new StateArena(playerCount, 1, parts);
+    }
+
+    try {
+      recorder = MatchRecorder.create(gameStage, GameEngine.DEFAULT_TPS);
+      for (int i = 0; i < playerCount; i++) {
+        controllers[i].setRecorder(recorder, i);
+      }
+      recorder.attach(gameEngine);
+      // Ends the recording if the process exits without stopping the server.
+      recorderHook = new Thread(recorder::close);
+      Runtime.getRuntime().addShutdownHook(recorderHook);
+    } catch (IOException e) {
+      System.err.println("Could not start match recording");
+    }
 
     gameThread = new Thread(gameEngine);
+    LOCAL_SERVERS.put(serverSocket.getLocalPort(), this);
+    running = true;
+  }
+
+  /**
+   * Sets a listener that is told when players connect and the match starts. It is called on the
+   * thread that runs {@link #start()}.
+   *
+   * @param progressListener the listener, or null for none
+   */
+  public void setProgressListener(Consumer<String> progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Prints a progress message and passes it to the progress listener.
+   *
+   * @param message the message
+   */
+  private void progress(String message) {
+    System.out.println(message);
+    if (progressListener != null) {
+      progressListener.accept(message);
+    }
+  }
+
+  /**
+   * Gets the port the server accepts connections on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops the server. Clients are disconnected, the match and the recording end and
+   * {@link #start()} returns.
+   */
+  public void stop() {
+    running = false;
+    LOCAL_SERVERS.remove(serverSocket.getLocalPort(), this);
+    gameEngine.stop = true;
+    if (batch != null) {
+      batch.remove(gameEngine);
+    }
+
+    try {
+      serverSocket.close();
+      for (int i = 0; i < clients.length(); i++) {
+        Connection client = clients.getAndSet(i, null);
+        if (client != null) {
+          client.close();
+        }
+      }
+      for (Connection pending : pendingConnections) {
+        pending.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    if (reconnectThread != null) {
+      reconnectThread.interrupt();
+    }
+    if (recorder != null) {
+      recorder.close();
+      try {
+        Runtime.getRuntime().removeShutdownHook(recorderHook);
+      } catch (IllegalStateException e) {
+        // The process is already exiting and runs the hook, which does nothing now.
+      }
+    }
+  }
+
+  /**
+   * Gets a server running in this process.
+   *
+   * @param port the port of the server
+   * @return the server, or null if no server in this process uses the port
+   */
+  public static GameServer getLocalServer(int port) {
+    return LOCAL_SERVERS.get(port);
+  }
+
+  /**
+   * Connects a client in the same process to this server without a socket.
+   *
+   * @return the client's end of the connection
+   */
+  public Connection connectLocal() {
+    LocalConnection[] ends = LocalConnection.createPair();
+    pendingConnections.add(ends[1]);
+    return ends[0];
+  }
+
+  /**
+   * Accepts socket connections and queues them for the server.
+   */
+  private void acceptSockets() {
+    while (running) {
+      try {
+        pendingConnections.add(new SocketConnection(serverSocket.accept()));
+      } catch (IOException e) {
+        if (running) {
+          e.printStackTrace();
+        }
+      }
+    }
   }
 
   /**
-   * Entry point for running a server.
+   * Entry point for running a server, or one server per port given as arguments with all their
+   * matches ticked by one {@link MatchBatch}.
    *
-   * @param args totally ignored
+   * @param args ports to host matches on, 8022 if none
    * @throws IOException on any exception
    */
   public static void main(String[] args) throws IOException {
-    GameServer server = new GameServer(8022);
-    server.start();
+    if (args.length < 2) {
+      GameServer server = new GameServer(args.length > 0 ? Integer.parseInt(args[0]) : 8022);
+      server.start();
+      return;
+    }
+
+    MatchBatch batch = new MatchBatch();
+    new Thread(batch, "MatchBatch").start();
+    for (String port : args) {
+      GameServer server = new GameServer(Integer.parseInt(port), batch);
+      new Thread(server::start).start();
+    }
   }
 
   /**
-   * Sends a game-state synchronization packet to each player.
+   * Sends a game-state synchronization packet to each player. Not used with rollback, where the
+   * clients simulate the match themselves.
+   */
+  synchronized void syncClients() {
+    GamePlayer[] players = gameStage.getPlayers();
+    byte[][] syncs = new byte[players.length][];
+    for (int i = 0; i < players.length; i++) {
+      syncs[i] = NetworkPacket.sync(players[i], i + 1, ackFrames.get(i));
+    }
+    for (int playerNumber = 1; playerNumber <= players.length; playerNumber++) {
+      for (byte[] sync : syncs) {
+        send(playerNumber, sync);
+      }
+    }
+  }
+
+  /**
+   * Sends a packet to a client. Packets written from different threads are never interleaved.
    *
+   * @param client the client connection
+   * @param packet byte array representing packet
    * @throws IOException on any exception
    */
-  void syncClients() throws IOException {
-    OutputStream outputStream = client1.getOutputStream();
-    outputStream.write(NetworkPacket.sync(player1, 1));
-    outputStream.write(NetworkPacket.sync(player2, 2));
-    outputStream = client2.getOutputStream();
-    outputStream.write(NetworkPacket.sync(player1, 1));
-    outputStream.write(NetworkPacket.sync(player2, 2));
+  void send(Connection client, byte[] packet) throws IOException {
+    OutputStream outputStream = client.getOutputStream();
+    synchronized (outputStream) {
+      outputStream.write(packet);
+    }
   }
 
   /**
-   * Starting point for the server awaits two connections before starting the game engine
+   * Sends a packet to the client of a player. A client that can not be written to is treated as
+   * disconnected, and nothing is sent while a player is disconnected.
+   *
+   * @param playerNumber the number of the client's player
+   * @param packet byte array representing packet
+   */
+  void send(int playerNumber, byte[] packet) {
+    Connection client = clients.get(playerNumber - 1);
+    if (client == null) {
+      return;
+    }
+
+    try {
+      send(client, packet);
+    } catch (IOException e) {
+      disconnect(playerNumber, client);
+    }
+  }
+
+  /**
+   * Forwards the input of a player to the other clients so they can simulate the frame
+   * themselves.
+   *
+   * @param playerNumber the player the input belongs to
+   * @param frame the frame the input belongs to
+   * @param mask the action bitmask
+   */
+  synchronized void relayInput(int playerNumber, int frame, int mask) {
+    relayedInputs[playerNumber - 1][frame & RELAY_MASK] = mask;
+    relayedFrames[playerNumber - 1] = frame;
+    byte[] packet = NetworkPacket.remoteInput(playerNumber, frame, mask);
+    for (int other = 1; other <= clients.length(); other++) {
+      if (other != playerNumber) {
+        send(other, packet);
+      }
+    }
+  }
+
+  /**
+   * Sends a ping to each client.
+   */
+  void pingClients() {
+    for (int playerNumber = 1; playerNumber <= clients.length(); playerNumber++) {
+      send(playerNumber, NetworkPacket.ping(System.nanoTime()));
+    }
+  }
+
+  /**
+   * Marks a player as disconnected and releases all of its actions. Does nothing if the player
+   * has already reconnected on another connection.
+   *
+   * @param playerNumber the number of the client's player
+   * @param client the connection that was lost
+   */
+  synchronized void disconnect(int playerNumber, Connection client) {
+    if (!clients.compareAndSet(playerNumber - 1, client, null)) {
+      return;
+    }
+
+    int index = playerNumber - 1;
+    long time = System.nanoTime();
+    disconnected[index] = true;
+    disconnectTimes[index] = time;
+    // With rollback the engine does not run in real time, see expireSessions() and
+    // simulateConfirmedFrames().
+    if (!GameDefaults.ROLLBACK_NETCODE) {
+      gameEngine.getTimers().submit(new TimingWheel.Timer(() -> expireSession(index, time)),
+          (int) Math.ceil(GameDefaults.RECONNECT_GRACE * GameEngine.DEFAULT_TPS));
+      controllers[index].queueActionMask(0);
+    }
+    try {
+      client.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    System.out.println("Player " + playerNumber + " disconnected, waiting for reconnect");
+  }
+
+  /**
+   * Invalidates the session of a player that has not reconnected since {@param disconnectTime},
+   * run {@link GameDefaults#RECONNECT_GRACE} after the disconnect. The player forfeits and keeps
+   * standing idle.
+   *
+   * @param index index of the player
+   * @param disconnectTime when the player disconnected, from {@link System#nanoTime()}
+   */
+  private synchronized void expireSession(int index, long disconnectTime) {
+    if (disconnected[index] && disconnectTimes[index] == disconnectTime
+        && sessionTokens[index] != 0) {
+      sessionTokens[index] = 0;
+      System.out.println("Player " + (index + 1) + " did not reconnect in time");
+    }
+  }
+
+  /**
+   * Invalidates the sessions of players that have been disconnected for longer than
+   * {@link GameDefaults#RECONNECT_GRACE}, used with rollback, where the engine does not run in
+   * real time and can not time them.
+   */
+  synchronized void expireSessions() {
+    long grace = (long) (GameDefaults.RECONNECT_GRACE * 1e9);
+    long now = System.nanoTime();
+    for (int i = 0; i < disconnected.length; i++) {
+      if (disconnected[i] && now - disconnectTimes[i] > grace) {
+        expireSession(i, disconnectTimes[i]);
+      }
+    }
+  }
+
+  /**
+   * Checks whether fewer than two players still have a session, so there is no match left.
+   *
+   * @return true if the match is over
+   */
+  synchronized boolean isAbandoned() {
+    int left = 0;
+    for (long token : sessionTokens) {
+      if (token != 0) {
+        left++;
+      }
+    }
+    return left < 2;
+  }
+
+  /**
+   * Relays neutral input for disconnected players up to the newest frame of input from a
+   * connected player, so that the match goes on without them. Used with rollback, where the
+   * match waits for the input of every player.
+   */
+  private synchronized void fillDisconnectedInput() {
+    int newest = -1;
+    for (int p = 0; p < relayedFrames.length; p++) {
+      if (!disconnected[p]) {
+        newest = Math.max(newest, relayedFrames[p]);
+      }
+    }
+    for (int p = 0; p < relayedFrames.length; p++) {
+      while (disconnected[p] && relayedFrames[p] < newest) {
+        ackFrames.set(p, relayedFrames[p] + 1);
+        relayInput(p + 1, relayedFrames[p] + 1, 0);
+      }
+    }
+  }
+
+  /**
+   * Simulates the frames for which the input of every player has arrived, used with rollback.
+   * Frames before the input delay has passed have no input from anyone, and disconnected players
+   * hold nothing.
+   */
+  synchronized void simulateConfirmedFrames() {
+    fillDisconnectedInput();
+    int confirmed = Integer.MAX_VALUE;
+    for (int relayed : relayedFrames) {
+      confirmed = Math.min(confirmed, Math.max(relayed, GameDefaults.INPUT_DELAY - 1));
+    }
+
+    for (; frame <= confirmed; frame++) {
+      for (int p = 0; p < controllers.length; p++) {
+        controllers[p].queueActionMask(relayedInputs[p][frame & RELAY_MASK]);
+      }
+      gameEngine.tick(1d / GameEngine.DEFAULT_TPS);
+    }
+  }
+
+  /**
+   * Gives a player back to a client that has reconnected with its session token. The client is
+   * sent a keyframe of the stage and the input of the other players after
+   * {@param lastRemoteFrame}, then gets the normal stream. With rollback it is instead sent the
+   * saved state of the next frame to simulate and all input from that frame on, its own included
+   * since the match went on without it. A connection that is still open for the session is
+   * closed.
+   *
+   * @param client the new connection
+   * @param token the session token sent by the client
+   * @param lastRemoteFrame the last frame of other players' input the client has
+   * @return false if the token does not belong to any session
+   * @throws IOException on any exception
+   */
+  synchronized boolean resume(Connection client, long token, int lastRemoteFrame)
+      throws IOException {
+    if (GameDefaults.ROLLBACK_NETCODE) {
+      expireSessions();
+    }
+    for (int i = 0; i < sessionTokens.length; i++) {
+      if (token == 0 || sessionTokens[i] != token) {
+        continue;
+      }
+
+      int playerNumber = i + 1;
+      Connection old = clients.getAndSet(i, null);
+      if (old != null) {
+        old.close();
+      }
+
+      if (GameDefaults.ROLLBACK_NETCODE) {
+        resumeRollback(client, i);
+        lastRemoteFrame = frame - 1;
+      } else {
+        send(client, NetworkPacket.resume(playerNumber, ackFrames.get(i)));
+        send(client, NetworkPacket.keyframe(StageSnapshot.capture(gameStage)));
+      }
+      for (int p = 0; p < relayedFrames.length; p++) {
+        if (p == i) {
+          continue;
+        }
+        int from = Math.max(lastRemoteFrame + 1, relayedFrames[p] - RELAY_HISTORY + 1);
+        for (int frame = Math.max(0, from); frame <= relayedFrames[p]; frame++) {
+          int mask = relayedInputs[p][frame & RELAY_MASK];
+          send(client, NetworkPacket.remoteInput(p + 1, frame, mask));
+        }
+      }
+
+      clients.set(i, client);
+      disconnected[i] = false;
+      new Thread(new ClientListener(client, controllers[i], playerNumber)).start();
+      System.out.println("Player " + playerNumber + " reconnected");
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Sends a client that reconnects with rollback the state of the next frame to simulate and its
+   * own input from that frame on. The player's input is first caught up with the others and then
+   * decided for the input delay, so that the client goes on with input of its own right after.
+   *
+   * @param client the new connection
+   * @param index index of the player
+   * @throws IOException on any exception
+   */
+  private void resumeRollback(Connection client, int index) throws IOException {
+    simulateConfirmedFrames();
+    while (relayedFrames[index] < frame + GameDefaults.INPUT_DELAY - 1) {
+      ackFrames.set(index, relayedFrames[index] + 1);
+      relayInput(index + 1, relayedFrames[index] + 1, 0);
+    }
+
+    int count = relayedFrames[index] - frame + 1;
+    int[] masks = new int[count];
+    for (int f = 0; f < count; f++) {
+      masks[f] = relayedInputs[index][(frame + f) & RELAY_MASK];
+    }
+    byte[] state = new byte[resumeState.getRegionBytes()];
+    resumeState.save(gameStage, 0);
+    resumeState.getRegion(0, state);
+
+    send(client, NetworkPacket.resume(index + 1, ackFrames.get(index)));
+    send(client, NetworkPacket.state(frame, masks, count, state));
+  }
+
+  /**
+   * Accepts connections during the match and lets clients with a session token resume it.
+   */
+  private void acceptReconnects() {
+    while (running) {
+      try {
+        Connection client = pendingConnections.take();
+        DataInputStream inputStream = new DataInputStream(client.getInputStream());
+
+        // The first packet must be a resume, a slow or unknown client is turned away.
+        client.setReadTimeout(1000);
+        boolean resumed = false;
+        if (inputStream.read() == TYPE.C_RESUME.ordinal()) {
+          long token = inputStream.readLong();
+          int lastRemoteFrame = inputStream.readInt();
+          client.setReadTimeout(0);
+          resumed = resume(client, token, lastRemoteFrame);
+        }
+        if (!resumed) {
+          System.err.println("Rejected connection without a valid session");
+          client.close();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      } catch (InterruptedException e) {
+        // Stopped
+        return;
+      }
+    }
+  }
+
+  /**
+   * Gets the latency estimates of a client's connection, updated by every pong from it. Safe to
+   * read from any thread.
+   *
+   * @param playerNumber the number of the client's player
+   * @return the estimates
+   */
+  public LatencyEstimator getLatency(int playerNumber) {
+    return latency[playerNumber - 1];
+  }
+
+  /**
+   * Starting point for the server awaits one connection per player before starting the game
+   * engine. Runs until {@link #stop()} is called.
    */
   public void start() {
-    while (client1 == null || client2 == null) {
+    new Thread(this::acceptSockets).start();
+
+    int joined = 0;
+    while (joined < clients.length()) {
       try {
-        System.out.println("Waiting for new connection");
-        Socket client = serverSocket.accept();
-        System.out.println("New connection!");
-        if (client1 == null) {
-          client1 = client;
-        } else {
-          client2 = client;
+        progress("Waiting for new connection");
+        Connection client = pendingConnections.take();
+        if (!running) {
+          client.close();
+          return;
         }
+        clients.set(joined, client);
+        joined++;
+        progress("Player " + joined + " connected");
       } catch (IOException e) {
         e.printStackTrace();
+      } catch (InterruptedException e) {
+        if (!running) {
+          return;
+        }
       }
     }
 
-    Thread clientThread1 = new Thread(new ClientListener(client1, player1Controller));
-    Thread clientThread2 = new Thread(new ClientListener(client2, player2Controller));
+    SecureRandom random = new SecureRandom();
+    for (int i = 0; i < sessionTokens.length; i++) {
+      while (sessionTokens[i] == 0) {
+        sessionTokens[i] = random.nextLong();
+      }
+      send(i + 1, NetworkPacket.assign(i + 1, sessionTokens[i]));
+    }
 
-    clientThread1.start();
-    clientThread2.start();
-    gameThread.start();
+    if (!running) {
+      return;
+    }
+    for (int i = 0; i < clients.length(); i++) {
+      new Thread(new ClientListener(clients.get(i), controllers[i], i + 1)).start();
+    }
+    if (GameDefaults.ROLLBACK_NETCODE) {
+      // Simulated by frame as input arrives.
+    } else if (batch != null) {
+      batch.add(gameEngine, stageController);
+    } else {
+      gameThread.start();
+    }
+    reconnectThread = new Thread(this::acceptReconnects);
+    reconnectThread.start();
+    progress("Match started");
+
+    long pingInterval = (long) (GameDefaults.PING_INTERVAL * 1e9);
+    long nextPing = System.nanoTime();
 
-    while (true) {
+    while (running) {
       try {
-        syncClients();
+        if (GameDefaults.ROLLBACK_NETCODE) {
+          expireSessions();
+          simulateConfirmedFrames();
+        } else {
+          syncClients();
+        }
+        if (isAbandoned()) {
+          progress("Match over, no opponent left");
+          stop();
+          break;
+        }
+
+        long now = System.nanoTime();
+        if (now - nextPing >= 0) {
+          pingClients();
+          nextPing = now + pingInterval;
+        }
         Thread.sleep(16l);
-      } catch (InterruptedException | IOException e) {
-        e.printStackTrace();
+      } catch (InterruptedException e) {
+        if (running) {
+          e.printStackTrace();
+        }
       }
     }
   }
 
   /**
-   * Inner class for running socket threads for client communication
+   * Inner class for running threads for client communication
    */
   private class ClientListener implements Runnable {
 
-    private InputStream inputStream;
+    private DataInputStream inputStream;
     private PlayerController playerController;
-    private Socket socket;
+    private Connection socket;
+    private int playerNumber;
+    private byte[] inputs;
 
     /**
      * Creates an instance
      *
-     * @param socket clients socket
+     * @param socket clients connection
      * @param playerController player controller associated with this client's player
+     * @param playerNumber the number of this client's player
      */
-    public ClientListener(Socket socket, PlayerController playerController) {
+    public ClientListener(Connection socket, PlayerController playerController, int playerNumber) {
       this.socket = socket;
       this.playerController = playerController;
+      this.playerNumber = playerNumber;
+      inputs = new byte[255];
     }
 
     /**
-     * Reads a single byte from the socket to determine type, this must be the first byte in each
-     * packet.
+     * Reads a single byte from the connection to determine type, this must be the first byte in
+     * each packet.
      * @return the type of packet
      */
     public TYPE identifyPacket() throws IOException {
       int maybeType = inputStream.read();
 
-      if (maybeType < 0 || maybeType >= TYPE.values().length) {
+      if (maybeType < 0) {
+        throw new EOFException("Connection closed");
+      }
+      if (maybeType >= TYPE.values().length) {
         System.err.println("Received packet type is unknown");
         return TYPE.ERROR;
       }
@@ -167,12 +761,16 @@ public class GameServer {
     @Override
     public void run() {
       try {
-        inputStream = socket.getInputStream();
+        inputStream = new DataInputStream(socket.getInputStream());
         while (socket.isConnected()) {
           switch (identifyPacket()) {
             default:
               System.err.println("Unsupported packet");
               break;
+            case S_OTHER_CONNECT:
+              // Sent by clients when they join, the name is not used yet.
+              inputStream.skipBytes(inputStream.readUnsignedByte());
+              break;
             case C_ACTION_START:
               int actionStartInt = inputStream.read();
               if (actionStartInt < 0 || actionStartInt >= ACTION.values().length) {
@@ -191,12 +789,51 @@ public class GameServer {
                 playerController.actionEnd(action);
               }
               break;
+            case C_INPUT:
+              int frame = inputStream.readInt();
+              int count = inputStream.readUnsignedByte();
+              inputStream.readFully(inputs, 0, count);
+
+              // Oldest first, skipping frames that were already applied.
+              int last = ackFrames.get(playerNumber - 1);
+              for (int i = count - 1; i >= 0; i--) {
+                int inputFrame = frame - i;
+                if (inputFrame > last) {
+                  int mask = inputs[i] & 0xFF;
+                  if (!GameDefaults.ROLLBACK_NETCODE) {
+                    playerController.queueActionMask(mask);
+                  }
+                  ackFrames.set(playerNumber - 1, inputFrame);
+                  relayInput(playerNumber, inputFrame, mask);
+                }
+              }
+              if (GameDefaults.ROLLBACK_NETCODE) {
+                simulateConfirmedFrames();
+              }
+              break;
+            case PING:
+              long pingReceived = System.nanoTime();
+              long pingTime = inputStream.readLong();
+              send(playerNumber, NetworkPacket.pong(pingTime, pingReceived, System.nanoTime()));
+              break;
+            case PONG:
+              long sent = inputStream.readLong();
+              long remoteReceived = inputStream.readLong();
+              long remoteSent = inputStream.readLong();
+              LatencyEstimator estimate = latency[playerNumber - 1];
+              estimate.addSample(sent, remoteReceived, remoteSent, System.nanoTime());
+              // The client sees the other player half a round trip plus its interpolation late.
+              if (!GameDefaults.ROLLBACK_NETCODE) {
+                stageController.setLagCompensation(playerNumber - 1,
+                    estimate.getRoundTripTime() / 2 + GameDefaults.INTERPOLATION_DELAY);
+              }
+              break;
           }
         }
-        socket.close();
       } catch (IOException e) {
-        e.printStackTrace();
+        System.err.println("Lost connection to player " + playerNumber + ": " + e.getMessage());
       }
+      disconnect(playerNumber, socket);
     }
   }
 }
@@ -0,0 +1,160 @@
+package server;
+
+import common.GamePlayer;
+import common.StateArena;
+import java.util.Arrays;
+
+/**
+ * A ring of the world space hurtboxes of every player, one entry per tick, used to check attacks
+ * against where the defender was when the attacker saw them.
+ * <p>
+ * All boxes are kept in one flat array as minX, minY, maxX, maxY, so recording a tick and
+ * testing an overlap never allocate. The ring is saved along with the stage, so a restored state
+ * checks lag compensated attacks against the same boxes again.
+ * <p>
+ * Attacks are only lag compensated when the server runs online matches without rollback, see
+ * {@link common.GameDefaults#ROLLBACK_NETCODE}. Otherwise the ring is recorded but never checked.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class HurtboxHistory implements StateArena.Part {
+
+  private GamePlayer[] players;
+  private int capacity;
+  private int mask;
+  private int maxBoxes;
+
+  private int[] ticks;
+  private int[] counts;
+  private double[] bounds;
+  private int newestTick;
+
+  /**
+   * Creates an instance of HurtboxHistory.
+   *
+   * @param players the players to record
+   * @param capacity the number of ticks kept, rounded up to a power of two
+   */
+  public HurtboxHistory(GamePlayer[] players, int capacity) {
+    this.players = players;
+    this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    mask = this.capacity - 1;
+
+    for (GamePlayer player : players) {
+      maxBoxes = Math.max(maxBoxes, player.getHurtBoxCount());
+    }
+
+    ticks = new int[this.capacity];
+    counts = new int[this.capacity * players.length];
+    bounds = new double[this.capacity * players.length * maxBoxes * 4];
+    Arrays.fill(ticks, -1);
+    newestTick = -1;
+  }
+
+  /**
+   * Records the hurtboxes of every player as they are at {@param tick}.
+   *
+   * @param tick the current tick
+   */
+  public void record(int tick) {
+    int slot = tick & mask;
+    ticks[slot] = tick;
+    newestTick = tick;
+
+    for (int p = 0; p < players.length; p++) {
+      int entry = slot * players.length + p;
+      counts[entry] = players[p].getHurtBoxBounds(bounds, entry * maxBoxes * 4, maxBoxes);
+    }
+  }
+
+  /**
+   * Checks whether a box overlaps any hurtbox {@param player} had at {@param tick}. Ticks older
+   * than the history use the oldest recorded tick.
+   *
+   * @param player index of the defending player
+   * @param tick the tick to check against
+   * @param minX left edge of the box
+   * @param minY top edge of the box
+   * @param maxX right edge of the box
+   * @param maxY bottom edge of the box
+   * @return true if the box touches a hurtbox, false if not or nothing has been recorded
+   */
+  public boolean overlaps(int player, int tick, double minX, double minY, double maxX,
+      double maxY) {
+    if (newestTick < 0) {
+      return false;
+    }
+    tick = Math.min(tick, newestTick);
+    tick = Math.max(tick, Math.max(0, newestTick - capacity + 1));
+    if (ticks[tick & mask] != tick) {
+      return false;
+    }
+
+    int entry = (tick & mask) * players.length + player;
+    int offset = entry * maxBoxes * 4;
+    for (int i = 0; i < counts[entry]; i++, offset += 4) {
+      if (maxX >= bounds[offset] && maxY >= bounds[offset + 1]
+          && minX <= bounds[offset + 2] && minY <= bounds[offset + 3]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the number of bytes the history takes when saved.
+   *
+   * @return size in bytes
+   */
+  @Override
+  public int getSavedBytes() {
+    int ints = ticks.length + counts.length + 1;
+    return bounds.length * Double.BYTES + (ints * Integer.BYTES + 7) / 8 * 8;
+  }
+
+  /**
+   * Saves the history in a region of {@param arena}.
+   *
+   * @param arena the arena to save in
+   * @param offset byte offset of the history in the arena
+   */
+  @Override
+  public void save(StateArena arena, int offset) {
+    arena.putDoubles(offset, bounds, bounds.length);
+    offset += bounds.length * Double.BYTES;
+    arena.putInts(offset, ticks, ticks.length);
+    offset += ticks.length * Integer.BYTES;
+    arena.putInts(offset, counts, counts.length);
+    arena.putInt(offset + counts.length * Integer.BYTES, newestTick);
+  }
+
+  /**
+   * Puts the history back as saved in {@param arena}.
+   *
+   * @param arena the arena to restore from
+   * @param offset byte offset of the history in the arena
+   */
+  @Override
+  public void restore(StateArena arena, int offset) {
+    arena.getDoubles(offset, bounds, bounds.length);
+    offset += bounds.length * Double.BYTES;
+    arena.getInts(offset, ticks, ticks.length);
+    offset += ticks.length * Integer.BYTES;
+    arena.getInts(offset, counts, counts.length);
+    newestTick = arena.getInt(offset + counts.length * Integer.BYTES);
+  }
+
+  /**
+   * Gets the number of ticks kept.
+   *
+   * @return the capacity in ticks
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+}
@@ -0,0 +1,252 @@
+package server;
+
+import common.GamePlayer.ACTION;
+import common.MotionMatcher;
+import common.StateArena;
+
+/**
+ * A ring of the action bitmask of a player for each of the last ticks, together with the state
+ * needed to recognise motion inputs in it.
+ * <p>
+ * Each tick turns into at most three input symbols, a direction if it changed and a punch or kick
+ * if pressed, so recording a tick takes constant time however many motions the character has.
+ * The whole history is saved along with the stage, so a restored state recognises the same
+ * motions again.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class InputHistory implements StateArena.Part {
+
+  private static final int HIT = 1 << ACTION.HIT.ordinal();
+  private static final int KICK = 1 << ACTION.KICK.ordinal();
+  private static final int NEUTRAL = 4;
+
+  private MotionMatcher matcher;
+  private int[] masks;
+  private int maskMask;
+  private int tick;
+
+  private int[] symbolTicks;
+  // Tick each direction symbol was let go, -1 while it is held.
+  private int[] releaseTicks;
+  private int symbolMask;
+  private int symbolCount;
+  private int state;
+  private int direction;
+  private int directionSymbol;
+  private int previousMask;
+
+  // Number of ints saved besides the arrays.
+  private static final int SAVED_FIELDS = 6;
+
+  /**
+   * Creates an instance of InputHistory.
+   *
+   * @param matcher the motions to recognise
+   * @param capacity the number of ticks kept, rounded up to a power of two
+   */
+  public InputHistory(MotionMatcher matcher, int capacity) {
+    this.matcher = matcher;
+    masks = new int[Integer.highestOneBit(Math.max(1, capacity - 1)) << 1];
+    maskMask = masks.length - 1;
+    symbolTicks = new int[Integer.highestOneBit(Math.max(1, matcher.getMaxLength())) << 1];
+    releaseTicks = new int[symbolTicks.length];
+    symbolMask = symbolTicks.length - 1;
+    direction = NEUTRAL;
+  }
+
+  /**
+   * Records the input of a tick and recognises motions completed by it.
+   *
+   * @param mask the action bitmask held this tick
+   * @param faceRight whether the player faces right
+   * @return index of the motion completed this tick, or -1 if none
+   */
+  public int record(int mask, boolean faceRight) {
+    masks[tick & maskMask] = mask;
+
+    int motion = -1;
+    int held = MotionMatcher.getDirection(mask);
+    // Neutral is not a symbol, so letting go between two directions does not break a motion.
+    if (held != direction) {
+      if (direction != NEUTRAL && symbolCount - directionSymbol <= symbolTicks.length) {
+        releaseTicks[directionSymbol & symbolMask] = tick;
+      }
+      direction = held;
+      if (held != NEUTRAL) {
+        directionSymbol = symbolCount;
+        motion = feed(held, faceRight);
+      }
+    }
+    // Of the motions completed in the same tick the first one added counts.
+    int pressed = mask & ~previousMask;
+    if ((pressed & HIT) != 0) {
+      motion = first(motion, feed(MotionMatcher.PUNCH, faceRight));
+    }
+    if ((pressed & KICK) != 0) {
+      motion = first(motion, feed(MotionMatcher.KICK, faceRight));
+    }
+    previousMask = mask;
+
+    tick++;
+    return motion;
+  }
+
+  /**
+   * Gets the motion added first of two.
+   *
+   * @param a index of a motion, or -1
+   * @param b index of a motion, or -1
+   * @return the lower index, or -1 if both are
+   */
+  private static int first(int a, int b) {
+    return a < 0 ? b : b < 0 ? a : Math.min(a, b);
+  }
+
+  /**
+   * Feeds a symbol to the matcher and checks the motions completed by it.
+   *
+   * @param symbol the symbol
+   * @param faceRight whether the player faces right
+   * @return index of the first motion completed in time by the symbol, or -1 if none
+   */
+  private int feed(int symbol, boolean faceRight) {
+    symbolTicks[symbolCount & symbolMask] = tick;
+    releaseTicks[symbolCount & symbolMask] = -1;
+    symbolCount++;
+    state = matcher.next(state, symbol);
+
+    // Only the patterns for the way the player is facing count.
+    long completed = matcher.getMatches(state)
+        & (faceRight ? 0x5555555555555555L : 0xAAAAAAAAAAAAAAAAL);
+    while (completed != 0) {
+      int pattern = Long.numberOfTrailingZeros(completed);
+      completed &= completed - 1;
+      if (inTime(pattern / 2)) {
+        return pattern / 2;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether the symbols of a motion completed by the last symbol fed were entered within
+   * its window and its first direction was charged long enough. Letting go of the direction, even
+   * to neutral, ends the charge.
+   *
+   * @param motion index of the motion
+   * @return true if the motion counts
+   */
+  private boolean inTime(int motion) {
+    int length = matcher.getLength(motion);
+    if (length < 2) {
+      return true;
+    }
+
+    int first = symbolCount - length;
+    int second = symbolTicks[(first + 1) & symbolMask];
+    if (tick - second > matcher.getWindow(motion)) {
+      return false;
+    }
+    int released = releaseTicks[first & symbolMask];
+    int charged = (released < 0 ? tick : released) - symbolTicks[first & symbolMask];
+    return charged >= matcher.getCharge(motion);
+  }
+
+  /**
+   * Gets the action bitmask of an earlier tick.
+   *
+   * @param ticksAgo 0 for the last recorded tick, 1 for the one before and so on
+   * @return the action bitmask, 0 for ticks that have not been recorded or are too old
+   */
+  public int getMask(int ticksAgo) {
+    if (ticksAgo < 0 || ticksAgo >= Math.min(tick, masks.length)) {
+      return 0;
+    }
+    return masks[(tick - 1 - ticksAgo) & maskMask];
+  }
+
+  /**
+   * Gets the number of ticks an action has been held without interruption.
+   *
+   * @param action the action
+   * @return the ticks, at most the capacity of the history
+   */
+  public int getHeldTicks(ACTION action) {
+    int bit = 1 << action.ordinal();
+    int ticks = 0;
+    while (ticks < Math.min(tick, masks.length) && (getMask(ticks) & bit) != 0) {
+      ticks++;
+    }
+    return ticks;
+  }
+
+  /**
+   * Gets the number of bytes the history takes when saved.
+   *
+   * @return size in bytes
+   */
+  @Override
+  public int getSavedBytes() {
+    int ints = masks.length + 2 * symbolTicks.length + SAVED_FIELDS;
+    return (ints * Integer.BYTES + 7) / 8 * 8;
+  }
+
+  /**
+   * Saves the history in a region of {@param arena}.
+   *
+   * @param arena the arena to save in
+   * @param offset byte offset of the history in the arena
+   */
+  @Override
+  public void save(StateArena arena, int offset) {
+    arena.putInt(offset, tick);
+    arena.putInt(offset + 4, symbolCount);
+    arena.putInt(offset + 8, state);
+    arena.putInt(offset + 12, direction);
+    arena.putInt(offset + 16, directionSymbol);
+    arena.putInt(offset + 20, previousMask);
+    offset += SAVED_FIELDS * Integer.BYTES;
+    arena.putInts(offset, masks, masks.length);
+    offset += masks.length * Integer.BYTES;
+    arena.putInts(offset, symbolTicks, symbolTicks.length);
+    offset += symbolTicks.length * Integer.BYTES;
+    arena.putInts(offset, releaseTicks, releaseTicks.length);
+  }
+
+  /**
+   * Puts the history back as saved in {@param arena}.
+   *
+   * @param arena the arena to restore from
+   * @param offset byte offset of the history in the arena
+   */
+  @Override
+  public void restore(StateArena arena, int offset) {
+    tick = arena.getInt(offset);
+    symbolCount = arena.getInt(offset + 4);
+    state = arena.getInt(offset + 8);
+    direction = arena.getInt(offset + 12);
+    directionSymbol = arena.getInt(offset + 16);
+    previousMask = arena.getInt(offset + 20);
+    offset += SAVED_FIELDS * Integer.BYTES;
+    arena.getInts(offset, masks, masks.length);
+    offset += masks.length * Integer.BYTES;
+    arena.getInts(offset, symbolTicks, symbolTicks.length);
+    offset += symbolTicks.length * Integer.BYTES;
+    arena.getInts(offset, releaseTicks, releaseTicks.length);
+  }
+
+  /**
+   * Gets the number of ticks recorded.
+   *
+   * @return the ticks
+   */
+  public int getTick() {
+    return tick;
+  }
+}
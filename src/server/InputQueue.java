@@ -0,0 +1,113 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue of timestamped input events from any number of producer threads to
+ * the engine thread.
+ * <p>
+ * Producers claim a slot by advancing {@code tail} and publish it by setting the sequence number
+ * of the slot, so the consumer never sees a half written event. Events are kept in primitive
+ * arrays, offering and polling never allocate.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class InputQueue {
+
+  private long[] times;
+  private int[] events;
+  private AtomicLongArray sequences;
+  private int mask;
+  private AtomicLong tail;
+  private long head;
+  private long polledTime;
+
+  /**
+   * Creates an instance of InputQueue.
+   *
+   * @param capacity the number of events that fit, must be a power of two
+   */
+  public InputQueue(int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two");
+    }
+    times = new long[capacity];
+    events = new int[capacity];
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    mask = capacity - 1;
+    tail = new AtomicLong();
+  }
+
+  /**
+   * Adds an event. Safe to call from any thread.
+   *
+   * @param time when the event happened, from {@link System#nanoTime()}
+   * @param event the event, must not be negative
+   * @return false if the queue was full and the event was dropped
+   */
+  public boolean offer(long time, int event) {
+    while (true) {
+      long t = tail.get();
+      int slot = (int) t & mask;
+      long sequence = sequences.get(slot);
+      if (sequence == t) {
+        if (tail.compareAndSet(t, t + 1)) {
+          times[slot] = time;
+          events[slot] = event;
+          sequences.set(slot, t + 1);
+          return true;
+        }
+      } else if (sequence < t) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Takes the oldest event if it happened no later than {@param until}. Only called by the
+   * consumer thread.
+   *
+   * @param until the latest time of an event to take, from {@link System#nanoTime()}
+   * @return the event, or -1 if the queue is empty or the oldest event is later
+   */
+  public int poll(long until) {
+    int slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1 || times[slot] - until > 0) {
+      return -1;
+    }
+
+    polledTime = times[slot];
+    int event = events[slot];
+    sequences.set(slot, head + mask + 1);
+    head++;
+    return event;
+  }
+
+  /**
+   * Gets the time of the event last taken by {@link #poll(long)}.
+   *
+   * @return the time from {@link System#nanoTime()}
+   */
+  public long getPolledTime() {
+    return polledTime;
+  }
+
+  /**
+   * Answers whether there are events that have not been taken. Only called by the consumer
+   * thread.
+   *
+   * @return true if the queue is empty
+   */
+  public boolean isEmpty() {
+    return sequences.get((int) head & mask) != head + 1;
+  }
+}
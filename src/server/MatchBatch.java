@@ -0,0 +1,197 @@
+package server;
+
+import common.PlayerStore;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A number of matches ticked together in lockstep on one thread, the players of all of them
+ * being moved by one call to {@link PhysicsKernel} each tick instead of one call per match.
+ * <p>
+ * Each match is an engine whose first controller is the {@link StageController} of its stage.
+ * A tick of the batch does the part of the stage update before moving for every match, gathers
+ * the columns of the players of every match into one store, moves them all and copies them
+ * back, and then ticks each engine, which carries on from there. Gathered, the players fill
+ * the vectors of the Vector API step of {@link PhysicsKernel}, if turned on, even though each
+ * match only has a few. Matches with fixed-point physics are moved one by one. Matches end up
+ * exactly where ticking their engines one by one would have taken them.
+ * <p>
+ * Run on a thread of its own a batch ticks its matches in real time, the way a
+ * {@link GameEngine} runs a single match, and matches may be added and removed while it runs.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class MatchBatch implements Runnable {
+
+  private ArrayList<GameEngine> engines;
+  private ArrayList<StageController> controllers;
+  // The players of every match one after the other, and the ground of each.
+  private PlayerStore gathered;
+  private double[] grounds;
+  private double[] onGround;
+  private volatile boolean running;
+
+  /**
+   * Creates an empty instance of MatchBatch.
+   */
+  public MatchBatch() {
+    engines = new ArrayList<>();
+    controllers = new ArrayList<>();
+    gathered = new PlayerStore(0);
+    grounds = new double[0];
+    onGround = new double[0];
+    running = true;
+  }
+
+  /**
+   * Adds a match to the batch. The engine should no longer be ticked by itself.
+   *
+   * @param engine the engine of the match
+   * @param controller the stage controller, the first controller of {@param engine}
+   */
+  public synchronized void add(GameEngine engine, StageController controller) {
+    engines.add(engine);
+    controllers.add(controller);
+    update();
+  }
+
+  /**
+   * Removes a match from the batch.
+   *
+   * @param engine the engine of the match
+   */
+  public synchronized void remove(GameEngine engine) {
+    int index = engines.indexOf(engine);
+    if (index < 0) {
+      return;
+    }
+    engines.remove(index);
+    controllers.remove(index);
+    update();
+  }
+
+  /**
+   * Makes room for the players of every match in the gathered store.
+   */
+  private void update() {
+    int players = 0;
+    for (StageController controller : controllers) {
+      players += controller.stage.getStore().size();
+    }
+    gathered = new PlayerStore(players);
+    grounds = new double[players];
+    onGround = new double[players];
+  }
+
+  /**
+   * Gets the number of matches.
+   *
+   * @return the number of matches
+   */
+  public synchronized int size() {
+    return engines.size();
+  }
+
+  /**
+   * Ticks every match once.
+   *
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  public synchronized void tick(double delta) {
+    for (StageController controller : controllers) {
+      controller.beginBatchedTick();
+    }
+
+    int count = 0;
+    for (StageController controller : controllers) {
+      PlayerStore store = controller.stage.getStore();
+      if (store.isFixedPoint()) {
+        PhysicsKernel.step(store, controller.stage.getGroundLevelY(), delta);
+        continue;
+      }
+      copy(store, 0, gathered, count, store.size(), true);
+      for (int i = count; i < count + store.size(); i++) {
+        grounds[i] = controller.stage.getGroundLevelY();
+      }
+      count += store.size();
+    }
+
+    PhysicsKernel.step(gathered, grounds, onGround, count, delta);
+
+    count = 0;
+    for (StageController controller : controllers) {
+      PlayerStore store = controller.stage.getStore();
+      if (!store.isFixedPoint()) {
+        copy(gathered, count, store, 0, store.size(), false);
+        count += store.size();
+      }
+    }
+
+    for (GameEngine engine : engines) {
+      engine.tick(delta);
+    }
+  }
+
+  /**
+   * Copies the columns the physics reads or writes from one store to another.
+   *
+   * @param from the store to copy from
+   * @param fromSlot first slot to copy in {@param from}
+   * @param to the store to copy to
+   * @param toSlot first slot to copy to in {@param to}
+   * @param length the number of slots
+   * @param sizes whether the sizes of the players, which the physics only reads, are copied
+   */
+  private static void copy(PlayerStore from, int fromSlot, PlayerStore to, int toSlot,
+      int length, boolean sizes) {
+    System.arraycopy(from.getX(), fromSlot, to.getX(), toSlot, length);
+    System.arraycopy(from.getY(), fromSlot, to.getY(), toSlot, length);
+    System.arraycopy(from.getVelocityX(), fromSlot, to.getVelocityX(), toSlot, length);
+    System.arraycopy(from.getVelocityY(), fromSlot, to.getVelocityY(), toSlot, length);
+    System.arraycopy(from.getFlags(), fromSlot, to.getFlags(), toSlot, length);
+    if (sizes) {
+      System.arraycopy(from.getWidth(), fromSlot, to.getWidth(), toSlot, length);
+      System.arraycopy(from.getHeight(), fromSlot, to.getHeight(), toSlot, length);
+    }
+  }
+
+  /**
+   * Ticks the matches in real time at {@link GameEngine#DEFAULT_TPS} until {@link #stop()} is
+   * called, sleeping for what is left of each tick.
+   */
+  @Override
+  public void run() {
+    long tickTime = TimeUnit.SECONDS.toNanos(1) / GameEngine.DEFAULT_TPS;
+    long before = System.nanoTime();
+    double delta = 0;
+
+    while (running) {
+      tick(delta);
+
+      long sleep = tickTime - (System.nanoTime() - before);
+      if (sleep > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+      }
+
+      long now = System.nanoTime();
+      delta = (now - before) / 1e9;
+      before = now;
+    }
+  }
+
+  /**
+   * Stops {@link #run()} after the current tick.
+   */
+  public void stop() {
+    running = false;
+  }
+}
@@ -0,0 +1,523 @@
+package server;
+
+import common.GamePlayer.ACTION;
+import common.GameStage;
+import common.StageSnapshot;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javafx.scene.input.KeyEvent;
+
+/**
+ * Records a match as a compact input log.
+ * <p>
+ * Every tick the held actions of each player are sampled into a bitmask. Consecutive ticks with
+ * equal masks and equal tick length are run-length encoded, so a match of mostly held or idle
+ * inputs only takes a few kilobytes. Records are gathered in one of two large buffers. A full
+ * buffer is handed to a writer thread that appends it to the replay file while the other one is
+ * filled, so the engine thread does not wait for the disk.
+ * <p>
+ * Every {@link #KEYFRAME_INTERVAL} ticks a full {@link StageSnapshot} is written as a keyframe and
+ * on close an index of all keyframes is appended, which lets {@link ReplayPlayer} seek without
+ * simulating the match from the start. File layout:
+ * <pre>
+ * header   magic, version, players, tps, start time, keyframe interval, character XML
+ * records  RUN | KEYFRAME, the first keyframe is tick 0
+ * INDEX    keyframe count, (tick, file offset) per keyframe, total ticks
+ * END
+ * trailer  file offset of INDEX, magic
+ * </pre>
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class MatchRecorder implements GameController {
+
+  /**
+   * First four bytes of every replay file, "FSRP".
+   */
+  public static final int MAGIC = 0x46535250;
+  /**
+   * Replay file format version.
+   */
+  public static final short VERSION = 3;
+  /**
+   * Record tag for a run of identical ticks.
+   */
+  public static final byte RECORD_RUN = 1;
+  /**
+   * Record tag for a full state keyframe.
+   */
+  public static final byte RECORD_KEYFRAME = 2;
+  /**
+   * Record tag for the keyframe index written on close.
+   */
+  public static final byte RECORD_INDEX = 3;
+  /**
+   * Record tag marking the end of a match.
+   */
+  public static final byte RECORD_END = 0;
+  /**
+   * Number of ticks between keyframes.
+   */
+  public static final int KEYFRAME_INTERVAL = 100;
+  /**
+   * Size of the trailer, index offset and magic.
+   */
+  public static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+  /**
+   * Directory replays are written to.
+   */
+  public static final String REPLAY_DIRECTORY = "replays";
+
+  // Size of the in-memory chunk that is written to disk in one go.
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String CHARACTER_FILE = "charater.xml";
+  // Handed to the writer thread after the last buffer to make it stop.
+  private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0);
+
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private BlockingQueue<ByteBuffer> fullBuffers;
+  private BlockingQueue<ByteBuffer> freeBuffers;
+  private Thread writerThread;
+  private long fileOffset;
+  private int playerCount;
+  // Largest possible run record, tag + varint run + varint delta + one mask byte per player.
+  private int maxRecordSize;
+  private GameStage stage;
+  private StageSnapshot snapshot;
+
+  // Written by network threads, read by the engine thread.
+  private AtomicIntegerArray heldMasks;
+  private AtomicIntegerArray pressedMasks;
+
+  private int[] runMasks;
+  private int[] sampleMasks;
+  private int runDeltaMillis;
+  private int runLength;
+  private int tick;
+  private boolean closed;
+
+  private int[] keyframeTicks;
+  private long[] keyframeOffsets;
+  private int keyframeCount;
+
+  /**
+   * Creates an instance of MatchRecorder that appends to {@param file}. The current state of
+   * {@param stage} is written as the first keyframe.
+   *
+   * @param file the replay file
+   * @param stage the stage of the match
+   * @param tps the tick rate the match is simulated at
+   * @throws IOException if the file can not be opened or the header not written, or the stage
+   *     has more players than the header can hold
+   */
+  public MatchRecorder(Path file, GameStage stage, int tps) throws IOException {
+    this.stage = stage;
+    playerCount = stage.getPlayers().length;
+    // The player count is one signed byte of the header.
+    if (playerCount > Byte.MAX_VALUE) {
+      throw new IOException("Can not record more than " + Byte.MAX_VALUE + " players");
+    }
+    maxRecordSize = 1 + 5 + 5 + playerCount;
+    snapshot = new StageSnapshot(playerCount);
+    keyframeTicks = new int[64];
+    keyframeOffsets = new long[64];
+
+    heldMasks = new AtomicIntegerArray(playerCount);
+    pressedMasks = new AtomicIntegerArray(playerCount);
+    runMasks = new int[playerCount];
+    sampleMasks = new int[playerCount];
+    buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    fullBuffers = new ArrayBlockingQueue<>(2);
+    freeBuffers = new ArrayBlockingQueue<>(2);
+    freeBuffers.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+
+    writeHeader(tps);
+    writeKeyframe();
+
+    writerThread = new Thread(this::writeBuffers, "MatchRecorder");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Creates a recorder writing to a time stamped file in {@link #REPLAY_DIRECTORY}.
+   *
+   * @param stage the stage of the match
+   * @param tps the tick rate the match is simulated at
+   * @return the recorder
+   * @throws IOException if the file can not be opened
+   */
+  public static MatchRecorder create(GameStage stage, int tps) throws IOException {
+    return new MatchRecorder(
+        Paths.get(REPLAY_DIRECTORY, "match-" + System.currentTimeMillis() + ".rep"),
+        stage, tps);
+  }
+
+  /**
+   * Writes magic, version, player count, tick rate, start time, keyframe interval and the
+   * character definitions.
+   */
+  private void writeHeader(int tps) throws IOException {
+    byte[] characters;
+    try {
+      characters = Files.readAllBytes(Paths.get(CHARACTER_FILE));
+    } catch (IOException e) {
+      System.err.println("Could not read character definitions for recording");
+      characters = new byte[0];
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(4 + 2 + 1 + 4 + 8 + 4 + 4 + characters.length);
+    header.putInt(MAGIC);
+    header.putShort(VERSION);
+    header.put((byte) playerCount);
+    header.putInt(tps);
+    header.putLong(System.currentTimeMillis());
+    header.putInt(KEYFRAME_INTERVAL);
+    header.putInt(characters.length);
+    header.put(characters);
+    header.flip();
+
+    while (header.hasRemaining()) {
+      fileOffset += channel.write(header);
+    }
+  }
+
+  /**
+   * Marks an action as started for a player. Safe to call from any thread.
+   *
+   * @param slot the player index
+   * @param action the action that started
+   */
+  public void actionStart(int slot, ACTION action) {
+    int bit = 1 << action.ordinal();
+    heldMasks.accumulateAndGet(slot, bit, (mask, b) -> mask | b);
+    // Remember the press until the next tick so that taps shorter than a tick are not lost.
+    pressedMasks.accumulateAndGet(slot, bit, (mask, b) -> mask | b);
+  }
+
+  /**
+   * Marks an action as ended for a player. Safe to call from any thread.
+   *
+   * @param slot the player index
+   * @param action the action that ended
+   */
+  public void actionEnd(int slot, ACTION action) {
+    int bit = 1 << action.ordinal();
+    heldMasks.accumulateAndGet(slot, bit, (mask, b) -> mask & ~b);
+  }
+
+  /**
+   * Samples the input of each player for this tick. The recorder should be the last controller
+   * updated in a tick.
+   *
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  @Override
+  public synchronized void update(double delta) {
+    if (closed) {
+      return;
+    }
+
+    int deltaMillis = (int) Math.round(delta * 1000);
+    boolean same = runLength > 0 && deltaMillis == runDeltaMillis;
+
+    for (int i = 0; i < playerCount; i++) {
+      sampleMasks[i] = heldMasks.get(i) | pressedMasks.getAndSet(i, 0);
+      same &= sampleMasks[i] == runMasks[i];
+    }
+
+    if (same) {
+      runLength++;
+    } else {
+      flushRun();
+      runDeltaMillis = deltaMillis;
+      System.arraycopy(sampleMasks, 0, runMasks, 0, playerCount);
+      runLength = 1;
+    }
+    tick++;
+  }
+
+  /**
+   * Writes a keyframe every {@link #KEYFRAME_INTERVAL} ticks, once the timers of the tick have
+   * fired.
+   */
+  @Override
+  public synchronized void onTickEnd() {
+    if (!closed && tick % KEYFRAME_INTERVAL == 0) {
+      flushRun();
+      writeKeyframe();
+    }
+  }
+
+  /**
+   * Gets the number of ticks recorded so far.
+   *
+   * @return the number of ticks
+   */
+  public synchronized int getTick() {
+    return tick;
+  }
+
+  /**
+   * Writes the pending run, the keyframe index, the end marker and closes the file. Further ticks
+   * are ignored.
+   */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    flushRun();
+    writeIndex();
+    flushBuffer();
+    putUninterruptibly(fullBuffers, END_OF_FILE);
+
+    boolean interrupted = false;
+    while (writerThread.isAlive()) {
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    try {
+      channel.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Attaches this recorder to an engine.
+   *
+   * @param engine the engine to attach this controller to
+   */
+  @Override
+  public void attach(GameEngine engine) {
+    engine.addController(this);
+  }
+
+  /**
+   * Does nothing, input is recorded through {@link #actionStart(int, ACTION)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyPressed(KeyEvent event) {
+
+  }
+
+  /**
+   * Does nothing, input is recorded through {@link #actionEnd(int, ACTION)}.
+   *
+   * @param event the event that has been fired
+   */
+  @Override
+  public void onKeyReleased(KeyEvent event) {
+
+  }
+
+  /**
+   * Appends the current run to the buffer, writing the buffer to disk first if it is full.
+   */
+  private void flushRun() {
+    if (runLength == 0) {
+      return;
+    }
+
+    ensureRemaining(maxRecordSize);
+    buffer.put(RECORD_RUN);
+    putVarInt(buffer, runLength);
+    putVarInt(buffer, runDeltaMillis);
+    for (int i = 0; i < playerCount; i++) {
+      buffer.put((byte) runMasks[i]);
+    }
+    runLength = 0;
+  }
+
+  /**
+   * Appends a keyframe of the current tick, the last sampled masks and the stage state to the
+   * buffer and remembers its offset for the index.
+   */
+  private void writeKeyframe() {
+    ensureRemaining(1 + Integer.BYTES + playerCount + snapshot.getByteSize());
+
+    if (keyframeCount == keyframeTicks.length) {
+      keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+      keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+    }
+    keyframeTicks[keyframeCount] = tick;
+    keyframeOffsets[keyframeCount] = fileOffset + buffer.position();
+    keyframeCount++;
+
+    snapshot.captureFrom(stage);
+    buffer.put(RECORD_KEYFRAME);
+    buffer.putInt(tick);
+    for (int i = 0; i < playerCount; i++) {
+      buffer.put((byte) sampleMasks[i]);
+    }
+    snapshot.write(buffer);
+  }
+
+  /**
+   * Writes the keyframe index, the end marker and the trailer. Flushes as often as needed since
+   * the index of a long match may be larger than the buffer.
+   */
+  private void writeIndex() {
+    long indexOffset = fileOffset + buffer.position();
+
+    ensureRemaining(1 + Integer.BYTES);
+    buffer.put(RECORD_INDEX);
+    buffer.putInt(keyframeCount);
+    for (int i = 0; i < keyframeCount; i++) {
+      ensureRemaining(Integer.BYTES + Long.BYTES);
+      buffer.putInt(keyframeTicks[i]);
+      buffer.putLong(keyframeOffsets[i]);
+    }
+
+    ensureRemaining(Integer.BYTES + 1 + TRAILER_SIZE);
+    buffer.putInt(tick);
+    buffer.put(RECORD_END);
+    buffer.putLong(indexOffset);
+    buffer.putInt(MAGIC);
+  }
+
+  /**
+   * Hands the buffer to the writer thread if less than {@param bytes} remain in it.
+   */
+  private void ensureRemaining(int bytes) {
+    if (buffer.remaining() < bytes) {
+      flushBuffer();
+    }
+  }
+
+  /**
+   * Hands the buffer to the writer thread and continues in the other one, which only waits if
+   * the writer has not yet finished with it.
+   */
+  private void flushBuffer() {
+    buffer.flip();
+    fileOffset += buffer.remaining();
+    putUninterruptibly(fullBuffers, buffer);
+
+    boolean interrupted = false;
+    buffer = null;
+    while (buffer == null) {
+      try {
+        buffer = freeBuffers.take();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Appends the buffers handed over by {@link #flushBuffer()} to the file until the end of the
+   * file is handed over, run by the writer thread. A buffer that can not be written is dropped.
+   */
+  private void writeBuffers() {
+    while (true) {
+      ByteBuffer full;
+      try {
+        full = fullBuffers.take();
+      } catch (InterruptedException e) {
+        continue;
+      }
+      if (full == END_OF_FILE) {
+        return;
+      }
+
+      try {
+        while (full.hasRemaining()) {
+          channel.write(full);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      full.clear();
+      freeBuffers.add(full);
+    }
+  }
+
+  /**
+   * Puts an element in a queue, waiting for space even if interrupted.
+   *
+   * @param queue the queue
+   * @param element the element
+   */
+  private static void putUninterruptibly(BlockingQueue<ByteBuffer> queue, ByteBuffer element) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        queue.put(element);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes an unsigned LEB128 variable length integer.
+   *
+   * @param buffer the target buffer
+   * @param value the value, must not be negative
+   */
+  static void putVarInt(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Reads an unsigned LEB128 variable length integer.
+   *
+   * @param buffer the source buffer
+   * @return the value
+   */
+  static int getVarInt(ByteBuffer buffer) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
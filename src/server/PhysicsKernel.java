@@ -0,0 +1,325 @@
+package server;
+
+import common.FixedPoint;
+import common.PlayerStore;
+
+/**
+ * Friction, gravity and the walls, ground and ceiling of the stage, applied to every player of
+ * a store as loops over its columns.
+ * <p>
+ * A match steps its own store from {@link StageController}, a {@link MatchBatch} gathers the
+ * players of all its matches into one store and steps them in one call. Players are stepped one
+ * at a time unless the optional Vector API step is turned on, see {@link #isVectorized()}.
+ * Every player is stepped with the same arithmetic either way, so the results do not depend on
+ * how the matches are run. Stores with fixed-point physics are stepped with the same rules in
+ * integer arithmetic, see {@link FixedPoint}.
+ * <p>
+ * A player that went past a wall or the ceiling during a tick is put where it would be had it
+ * bounced off at the moment it touched, so the distance covered does not depend on the tick
+ * rate, and is kept within the stage however fast it was going. A player that reaches the
+ * ground stops on it. {@link #bound(PlayerStore, double)} does this at the end of every tick,
+ * after the players have moved.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class PhysicsKernel {
+
+  private static final double GRAVITY = 9.82;
+  static final double STAGE_WIDTH = 16;
+
+  // System property that turns on the Vector API step.
+  private static final String VECTOR_PROPERTY = "physics.vector";
+  private static final VectorStep VECTOR_STEP = loadVectorStep();
+  private static boolean vectorized = VECTOR_STEP != null && Boolean.getBoolean(VECTOR_PROPERTY);
+
+  /**
+   * Loads the Vector API step, which is compiled from {@code src-vector} and needs the
+   * {@code jdk.incubator.vector} module.
+   *
+   * @return the step, or null if it is not on the class path or the module is not loaded
+   */
+  private static VectorStep loadVectorStep() {
+    try {
+      return (VectorStep) Class.forName("server.VectorPhysicsKernel").getDeclaredConstructor()
+          .newInstance();
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      if (Boolean.getBoolean(VECTOR_PROPERTY)) {
+        System.err.println("Vector physics needs --add-modules jdk.incubator.vector: " + e);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Answers whether players are stepped several at a time with the Vector API. Off unless the
+   * server is run with {@code -Dphysics.vector=true}, {@code --add-modules jdk.incubator.vector}
+   * and the classes compiled from {@code src-vector} on the class path.
+   *
+   * @return true if the Vector API step is used
+   */
+  public static boolean isVectorized() {
+    return vectorized;
+  }
+
+  /**
+   * Sets whether players are stepped with the Vector API if it is available, used to compare the
+   * two. Only called while no players are being stepped.
+   *
+   * @param vectorized true to use the Vector API step
+   */
+  static void setVectorized(boolean vectorized) {
+    PhysicsKernel.vectorized = vectorized && VECTOR_STEP != null;
+  }
+
+  /**
+   * Steps the first players of a store without fixed-point physics, each on the ground of its
+   * own stage.
+   *
+   * @param store the store
+   * @param grounds y-coordinate of the ground of the stage of each player
+   * @param onGround room for whether each player is on the ground, used by the Vector API
+   * @param count the number of players to step
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  public static void step(PlayerStore store, double[] grounds, double[] onGround, int count,
+      double delta) {
+    if (store.isFixedPoint()) {
+      throw new IllegalArgumentException("Fixed-point stores are stepped one by one");
+    }
+
+    double groundFriction = -5 * delta;
+    double airFriction = -2.5 * delta;
+    double fall = GRAVITY * delta;
+    int[] flags = store.getFlags();
+    int i = 0;
+    if (vectorized) {
+      // The flags are kept as masks of the vectors while they are stepped.
+      for (int j = 0; j < count; j++) {
+        onGround[j] = flags[j] & PlayerStore.ON_GROUND;
+      }
+      i = VECTOR_STEP.step(store, grounds, onGround, count, groundFriction, airFriction, fall);
+      for (int j = 0; j < i; j++) {
+        flags[j] = onGround[j] != 0 ? flags[j] | PlayerStore.ON_GROUND
+            : flags[j] & ~PlayerStore.ON_GROUND;
+      }
+    }
+    for (; i < count; i++) {
+      step(store, i, grounds[i], groundFriction, airFriction, fall);
+    }
+  }
+
+  /**
+   * Steps the players of a store.
+   *
+   * @param store the store
+   * @param ground y-coordinate of the ground of the stage
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  public static void step(PlayerStore store, double ground, double delta) {
+    if (store.isFixedPoint()) {
+      stepFixed(store, ground, delta);
+      return;
+    }
+
+    double groundFriction = -5 * delta;
+    double airFriction = -2.5 * delta;
+    double fall = GRAVITY * delta;
+    for (int i = 0; i < store.size(); i++) {
+      step(store, i, ground, groundFriction, airFriction, fall);
+    }
+  }
+
+  /**
+   * Steps one player of a store. The Vector API step does the same for several players at a
+   * time and must be kept in line with this.
+   *
+   * @param store the store
+   * @param i slot of the player
+   * @param ground y-coordinate of the ground of the stage
+   * @param groundFriction change of the x-velocity per unit of it on the ground this tick
+   * @param airFriction change of the x-velocity per unit of it in the air this tick
+   * @param fall change of the y-velocity in the air this tick
+   */
+  private static void step(PlayerStore store, int i, double ground, double groundFriction,
+      double airFriction, double fall) {
+    double[] y = store.getY();
+    double[] vx = store.getVelocityX();
+    double[] vy = store.getVelocityY();
+    double[] height = store.getHeight();
+    int[] flags = store.getFlags();
+    double feetY = y[i] + height[i];
+
+    //Set player as not on ground if above ground level
+    if (feetY < ground) {
+      flags[i] &= ~PlayerStore.ON_GROUND;
+    }
+
+    //Apply air resistance + eventual ground friction to reduce x-velocity
+    boolean onGround = (flags[i] & PlayerStore.ON_GROUND) != 0;
+    vx[i] += vx[i] * (onGround ? groundFriction : airFriction);
+
+    //Apply gravity acceleration if not on ground and handle ground collision
+    if (feetY < ground) {
+      vy[i] += fall;
+    } else if (!onGround) {
+      flags[i] |= PlayerStore.ON_GROUND;
+      y[i] = ground - height[i];
+      vy[i] = 0;
+    }
+
+    bounce(store, i, ground);
+  }
+
+  /**
+   * Puts every player of a store that has moved out of the stage back in, done at the end of a
+   * tick so that players are never seen outside. Players below the ground are put on it, and
+   * land on the next step.
+   *
+   * @param store the store
+   * @param ground y-coordinate of the ground of the stage
+   */
+  public static void bound(PlayerStore store, double ground) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] height = store.getHeight();
+    for (int i = 0; i < store.size(); i++) {
+      y[i] = Math.min(y[i], ground - height[i]);
+      bounce(store, i, ground);
+      if (store.isFixedPoint()) {
+        x[i] = FixedPoint.toDouble(FixedPoint.toFixed(x[i]));
+        y[i] = FixedPoint.toDouble(FixedPoint.toFixed(y[i]));
+      }
+    }
+  }
+
+  /**
+   * Bounces a player off the walls and ceiling of the stage, putting it back as far as it went
+   * past them.
+   *
+   * @param store the store
+   * @param i slot of the player
+   * @param ground y-coordinate of the ground of the stage
+   */
+  private static void bounce(PlayerStore store, int i, double ground) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVelocityX();
+    double[] vy = store.getVelocityY();
+    double width = store.getWidth()[i];
+
+    //Stage wall collision
+    double feetX = x[i] + width / 2;
+    double right = STAGE_WIDTH - width;
+    if (feetX + width / 2 > STAGE_WIDTH) {
+      x[i] = Math.max(0, right - Math.max(0, x[i] - right));
+      vx[i] = -vx[i];
+    } else if (feetX - width / 2 < 0) {
+      x[i] = Math.min(right, -x[i]);
+      vx[i] = -vx[i];
+    }
+
+    //Stage ceiling collision
+    if (y[i] < 0) {
+      y[i] = Math.min(ground - store.getHeight()[i], -y[i]);
+      vy[i] = -vy[i];
+    }
+  }
+
+  /**
+   * Steps the players of a store with fixed-point physics. Velocities are scaled by the tick
+   * length by dividing by the tick rate, rounding towards zero.
+   *
+   * @param store the store
+   * @param ground y-coordinate of the ground of the stage
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  private static void stepFixed(PlayerStore store, double ground, double delta) {
+    double[] x = store.getX();
+    double[] y = store.getY();
+    double[] vx = store.getVelocityX();
+    double[] vy = store.getVelocityY();
+    double[] width = store.getWidth();
+    double[] height = store.getHeight();
+    int[] flags = store.getFlags();
+    long rate = FixedPoint.toRate(delta);
+    long groundY = FixedPoint.toFixed(ground);
+    long stageWidth = FixedPoint.toFixed(STAGE_WIDTH);
+    long fall = FixedPoint.toFixed(GRAVITY) / rate;
+
+    for (int i = 0; i < store.size(); i++) {
+      long px = FixedPoint.toFixed(x[i]);
+      long py = FixedPoint.toFixed(y[i]);
+      long pvx = FixedPoint.toFixed(vx[i]);
+      long pvy = FixedPoint.toFixed(vy[i]);
+      long w = FixedPoint.toFixed(width[i]);
+      long h = FixedPoint.toFixed(height[i]);
+      long feetX = px + w / 2;
+      long feetY = py + h;
+
+      if (feetY < groundY) {
+        flags[i] &= ~PlayerStore.ON_GROUND;
+      }
+
+      // Friction of 5 per second on the ground and 2.5 in the air.
+      boolean onGround = (flags[i] & PlayerStore.ON_GROUND) != 0;
+      pvx -= onGround ? pvx * 5 / rate : pvx * 5 / (2 * rate);
+
+      if (feetY < groundY) {
+        pvy += fall;
+      } else if (!onGround) {
+        flags[i] |= PlayerStore.ON_GROUND;
+        py = groundY - h;
+        pvy = 0;
+      }
+
+      long right = stageWidth - w;
+      if (feetX + w / 2 > stageWidth) {
+        px = Math.max(0, right - Math.max(0, px - right));
+        pvx = -pvx;
+      } else if (feetX - w / 2 < 0) {
+        px = Math.min(right, -px);
+        pvx = -pvx;
+      }
+
+      if (py < 0) {
+        py = Math.min(groundY - h, -py);
+        pvy = -pvy;
+      }
+
+      x[i] = FixedPoint.toDouble(px);
+      y[i] = FixedPoint.toDouble(py);
+      vx[i] = FixedPoint.toDouble(pvx);
+      vy[i] = FixedPoint.toDouble(pvy);
+    }
+  }
+
+  /**
+   * Step of several players at a time, implemented with the Vector API in {@code src-vector}.
+   */
+  interface VectorStep {
+
+    /**
+     * Steps the first players of a store, as many as fill whole vectors. Whether each player is
+     * on the ground is read from and written to {@param onGround} as {@code 1} or {@code 0}
+     * instead of the flags of the store, which {@link PhysicsKernel} copies them from and back to.
+     *
+     * @param store the store, without fixed-point physics
+     * @param grounds y-coordinate of the ground of the stage of each player
+     * @param onGround whether each player is on the ground
+     * @param count the number of players that may be stepped
+     * @param groundFriction change of the x-velocity per unit of it on the ground this tick
+     * @param airFriction change of the x-velocity per unit of it in the air this tick
+     * @param fall change of the y-velocity in the air this tick
+     * @return the number of players stepped, the rest are left to the scalar step
+     */
+    int step(PlayerStore store, double[] grounds, double[] onGround, int count,
+        double groundFriction, double airFriction, double fall);
+  }
+}
@@ -1,16 +1,25 @@
 package server;
 
-import common.ActionCycle.CYCLE;
+import common.CancelGraph;
+import common.FixedPoint;
 import common.GamePlayer;
 import common.GamePlayer.ACTION;
+import common.PlayerStore;
+import common.StateArena;
 import java.util.HashMap;
-import java.util.HashSet;
 import javafx.geometry.Point2D;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 
 /**
  * Handles the state of a player each tick. Takes into consideration input from users
+ * <p>
+ * Key events and actions received from other threads are queued with the time they happened and
+ * applied at the start of the next tick that begins after them, so the held actions only ever
+ * change on the engine thread.
+ * <p>
+ * The held actions, the motion of the tick and the input history are saved along with the stage
+ * by a {@link StateArena}, so a restored state plays out the same with the same input.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -19,15 +28,43 @@ import javafx.scene.input.KeyEvent;
  * @author Karl Ängermark (karlang)
  * @version 2017-02-28
  */
-public class PlayerController implements GameController {
+public class PlayerController implements GameController, StateArena.Part {
 
   /**
    * player reference.
    */
   public GamePlayer player;
 
+  /**
+   * Speed a held move left or right walks at, on top of the velocity of the player.
+   */
+  static final int WALK_SPEED = 4;
+  /**
+   * Speed a held fall drops a player in the air at, on top of its velocity.
+   */
+  static final int FALL_SPEED = 2;
+  /**
+   * Upwards velocity a jump gives a player on the ground.
+   */
+  static final int JUMP_SPEED = 6;
+
+  // Events queued by other threads, one action or a whole mask in the low bits.
+  private static final int QUEUE_CAPACITY = 256;
+  private static final int EVENT_START = 1 << 8;
+  private static final int EVENT_END = 2 << 8;
+  private static final int EVENT_MASK = 3 << 8;
+  private static final int EVENT_DATA = 0xFF;
+  // Ticks of input kept for motion inputs.
+  private static final int HISTORY_TICKS = 64;
+
   private HashMap<KeyCode, ACTION> keyBinds;
-  private HashSet<ACTION> actions; //actions to be performed during update
+  private InputQueue inputQueue;
+  private int actions; //bitmask of actions to be performed during update
+  private long[] actionTimes;
+  private InputHistory history;
+  private int motion;
+  private MatchRecorder recorder;
+  private int recorderSlot;
 
   /**
    * Creates an instance of PlayerController.
@@ -36,7 +73,19 @@ public class PlayerController implements GameController {
   public PlayerController(GamePlayer player) {
     this.player = player;
     keyBinds = new HashMap<>();
-    actions = new HashSet<>();
+    inputQueue = new InputQueue(QUEUE_CAPACITY);
+    actionTimes = new long[ACTION.values().length];
+    history = new InputHistory(player.getMotions(), HISTORY_TICKS);
+    motion = -1;
+  }
+
+  /**
+   * Answers whether an action is held.
+   * @param action the action
+   * @return true if held
+   */
+  private boolean isHeld(ACTION action) {
+    return (actions & (1 << action.ordinal())) != 0;
   }
 
   /**
@@ -45,23 +94,30 @@ public class PlayerController implements GameController {
    */
   @Override
   public void update(double delta) {
-    if (actions.contains(ACTION.MOVE_LEFT)) {
+    applyQueuedInput(System.nanoTime());
+    motion = history.record(actions, isFacingRight());
+    if (player.getStore().isFixedPoint()) {
+      moveFixed(delta);
+      return;
+    }
+
+    if (isHeld(ACTION.MOVE_LEFT)) {
       player.setFaceRight(false);
-      player.setPosition(player.getPosition().add(-4 * delta, 0));
+      player.setPosition(player.getPosition().add(-WALK_SPEED * delta, 0));
     }
-    if (actions.contains(ACTION.MOVE_RIGHT)) {
+    if (isHeld(ACTION.MOVE_RIGHT)) {
       player.setFaceRight(true);
-      player.setPosition(player.getPosition().add(4 * delta, 0));
+      player.setPosition(player.getPosition().add(WALK_SPEED * delta, 0));
     }
-    if (actions.contains(ACTION.JUMP)) {
+    if (isHeld(ACTION.JUMP)) {
       if (player.isOnGround()) {
-        player.accelerate(new Point2D(0, -6));
+        player.accelerate(new Point2D(0, -JUMP_SPEED));
         player.setOnGround(false);
       }
     }
-    if (actions.contains(ACTION.FALL)) {
+    if (isHeld(ACTION.FALL)) {
       if (!player.isOnGround()) {
-        player.setPosition(player.getPosition().add(0, 2 * delta));
+        player.setPosition(player.getPosition().add(0, FALL_SPEED * delta));
       }
     }
     if (player.stateKicking.isActive()) {
@@ -72,12 +128,116 @@ public class PlayerController implements GameController {
 
     }
 
-    player.statePunching.update(delta);
-    player.stateStunned.update(delta);
-    player.stateKicking.update(delta);
     player.setPosition(player.getPosition().add(player.getVelocity().multiply(delta)));
   }
 
+  /**
+   * Moves the player by the held actions and its velocity with fixed-point physics, see
+   * {@link FixedPoint}.
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  private void moveFixed(double delta) {
+    PlayerStore store = player.getStore();
+    int slot = player.getSlot();
+    long rate = FixedPoint.toRate(delta);
+    long x = FixedPoint.toFixed(store.getX()[slot]);
+    long y = FixedPoint.toFixed(store.getY()[slot]);
+    long vy = FixedPoint.toFixed(store.getVelocityY()[slot]);
+
+    if (isHeld(ACTION.MOVE_LEFT)) {
+      player.setFaceRight(false);
+      x -= WALK_SPEED * FixedPoint.ONE / rate;
+    }
+    if (isHeld(ACTION.MOVE_RIGHT)) {
+      player.setFaceRight(true);
+      x += WALK_SPEED * FixedPoint.ONE / rate;
+    }
+    if (isHeld(ACTION.JUMP) && player.isOnGround()) {
+      vy -= JUMP_SPEED * FixedPoint.ONE;
+      player.setOnGround(false);
+    }
+    if (isHeld(ACTION.FALL) && !player.isOnGround()) {
+      y += FALL_SPEED * FixedPoint.ONE / rate;
+    }
+
+    x += FixedPoint.toFixed(store.getVelocityX()[slot]) / rate;
+    y += vy / rate;
+    store.getX()[slot] = FixedPoint.toDouble(x);
+    store.getY()[slot] = FixedPoint.toDouble(y);
+    store.getVelocityY()[slot] = FixedPoint.toDouble(vy);
+  }
+
+  /**
+   * Gets the way the player faces this tick, which a single held direction turns it to.
+   * @return true if facing right
+   */
+  private boolean isFacingRight() {
+    boolean left = isHeld(ACTION.MOVE_LEFT);
+    boolean right = isHeld(ACTION.MOVE_RIGHT);
+    return left == right ? player.isFaceRight() : right;
+  }
+
+  /**
+   * Gets the motion input completed this tick.
+   * @return index of the motion in {@link GamePlayer#getMotions()}, or -1 if none
+   */
+  public int getMotion() {
+    return motion;
+  }
+
+  /**
+   * Gets the input of the last ticks.
+   * @return the input history
+   */
+  public InputHistory getInputHistory() {
+    return history;
+  }
+
+  /**
+   * Gets the number of bytes the state of the controller takes when saved.
+   * @return size in bytes
+   */
+  @Override
+  public int getSavedBytes() {
+    return 2 * Integer.BYTES + history.getSavedBytes();
+  }
+
+  /**
+   * Saves the held actions, the motion and the input history in a region of {@param arena}.
+   * @param arena the arena to save in
+   * @param offset byte offset of the state in the arena
+   */
+  @Override
+  public void save(StateArena arena, int offset) {
+    arena.putInt(offset, actions);
+    arena.putInt(offset + Integer.BYTES, motion);
+    history.save(arena, offset + 2 * Integer.BYTES);
+  }
+
+  /**
+   * Puts the held actions, the motion and the input history back as saved in {@param arena},
+   * without starting any action. Only called on the engine thread, between ticks.
+   * @param arena the arena to restore from
+   * @param offset byte offset of the state in the arena
+   */
+  @Override
+  public void restore(StateArena arena, int offset) {
+    hold(arena.getInt(offset));
+    motion = arena.getInt(offset + Integer.BYTES);
+    history.restore(arena, offset + 2 * Integer.BYTES);
+  }
+
+  /**
+   * Lets the timers of the engine end the phases of the player's actions.
+   * @param engine the engine this controller was added to
+   */
+  @Override
+  public void onAdded(GameEngine engine) {
+    player.stateStunned.bind(engine.getTimers());
+    player.statePunching.bind(engine.getTimers());
+    player.stateKicking.bind(engine.getTimers());
+  }
+
   /**
    * Attaches this controller to an engine.
    * @param engine the engine to attach this controller to
@@ -97,61 +257,202 @@ public class PlayerController implements GameController {
   }
 
   /**
-   * Handles key presses based on key binds.
+   * Handles key presses based on key binds. The action starts on the next tick.
    * @param event the event that has been fired
    */
   @Override
   public void onKeyPressed(KeyEvent event) {
-    if (keyBinds.get(event.getCode()) == ACTION.HIT && player.statePunching.isReady()
-        && !player.stateStunned.isActive()) {
-      if (!player.stateKicking.isSpoolingUp() && !player.stateKicking.isActive()
-          && !player.stateKicking.isOnCoolDown()) {
-        player.statePunching.enterCycle(CYCLE.SPOOL_UP);
-      }
-
-    }
-    if (keyBinds.get(event.getCode()) == ACTION.KICK && player.stateKicking.isReady()
-        && !player.stateStunned.isActive()) {
-      if (!player.statePunching.isSpoolingUp() && !player.statePunching.isActive()
-          && !player.statePunching.isOnCoolDown()) {
-        player.stateKicking.enterCycle(CYCLE.SPOOL_UP);
-      }
-    }
-    if (keyBinds.containsKey(event.getCode())) {
-      actions.add(keyBinds.get(event.getCode()));
+    ACTION action = keyBinds.get(event.getCode());
+    if (action != null) {
+      actionStart(action);
     }
   }
 
   /**
-   * Handles key releases based on key binds.
+   * Handles key releases based on key binds. The action ends on the next tick.
    * @param event the event that has been fired
    */
   @Override
   public void onKeyReleased(KeyEvent event) {
-    if (keyBinds.containsKey(event.getCode())) {
-      actions.remove(keyBinds.get(event.getCode()));
+    ACTION action = keyBinds.get(event.getCode());
+    if (action != null) {
+      actionEnd(action);
+    }
+  }
+
+  /**
+   * Queues an event for the next tick.
+   * @param event the event
+   */
+  private void queue(int event) {
+    if (!inputQueue.offer(System.nanoTime(), event)) {
+      System.err.println("Input queue full, dropped input");
+    }
+  }
+
+  /**
+   * Applies the queued events that happened no later than {@param until}, in the order they
+   * were queued. Only called on the engine thread.
+   * @param until the start of the tick, from {@link System#nanoTime()}
+   */
+  private void applyQueuedInput(long until) {
+    for (int event = inputQueue.poll(until); event >= 0; event = inputQueue.poll(until)) {
+      long time = inputQueue.getPolledTime();
+      int data = event & EVENT_DATA;
+      switch (event & ~EVENT_DATA) {
+        case EVENT_START:
+          startAction(ACTION.values()[data], time);
+          break;
+        case EVENT_END:
+          endAction(ACTION.values()[data]);
+          break;
+        case EVENT_MASK:
+          applyMask(data, time);
+          break;
+        default:
+          break;
+      }
     }
   }
 
   /**
-   * Starts a player action.
+   * Sets the recorder that is told about every started and ended action.
+   * @param recorder the recorder, or null to stop recording
+   * @param slot the index of this player in the recording
+   */
+  public void setRecorder(MatchRecorder recorder, int slot) {
+    this.recorder = recorder;
+    this.recorderSlot = slot;
+  }
+
+  /**
+   * Gets the held actions as a bitmask with one bit per {@code ACTION} ordinal.
+   * @return the action bitmask
+   */
+  public int getActionMask() {
+    return actions;
+  }
+
+  /**
+   * Gets when a held action started.
+   * @param action the action
+   * @return the time from {@link System#nanoTime()}, of the tick it started on if it was not
+   *     queued, or 0 if it has never been held
+   */
+  public long getActionTime(ACTION action) {
+    return actionTimes[action.ordinal()];
+  }
+
+  /**
+   * Replaces the held actions without starting any of them, used when restoring saved states.
+   * Only called on the engine thread, between ticks.
+   * @param mask the action bitmask
+   */
+  public void setActionMask(int mask) {
+    hold(mask);
+  }
+
+  /**
+   * Sets the held actions, which are kept in the store of the player as well for the stage to
+   * see.
+   * @param mask the action bitmask
+   */
+  private void hold(int mask) {
+    actions = mask;
+    player.getStore().getActions()[player.getSlot()] = mask;
+  }
+
+  /**
+   * Starts the actions set in {@param mask} that are not held and ends the held actions that are
+   * not set, as if the corresponding keys had been pressed and released. Applied at once, so only
+   * called on the engine thread, between ticks.
+   * @param mask the action bitmask
+   */
+  public void applyActionMask(int mask) {
+    applyMask(mask, System.nanoTime());
+  }
+
+  /**
+   * Queues {@link #applyActionMask(int)} for the next tick, which applies it in
+   * {@link #update(double)} after the stage has checked for hits. Every simulation of a match
+   * queues its input this way, so that they all apply it at the same point of the tick. Safe to
+   * call from any thread.
+   * @param mask the action bitmask
+   */
+  public void queueActionMask(int mask) {
+    queue(EVENT_MASK | mask);
+  }
+
+  /**
+   * Starts a player action on the next tick. Safe to call from any thread.
    * @param action action to be started
    */
   public void actionStart(ACTION action) {
-    if (!actions.contains(ACTION.HIT) && action == ACTION.HIT) {
-      if (player.statePunching.isReady() && !player.stateStunned.isActive()) {
-        player.statePunching.enterCycle(CYCLE.SPOOL_UP);
+    queue(EVENT_START | action.ordinal());
+  }
+
+  /**
+   * Ends a player action on the next tick. Safe to call from any thread.
+   * @param action action to end
+   */
+  public void actionEnd(ACTION action) {
+    queue(EVENT_END | action.ordinal());
+  }
+
+  /**
+   * Starts and ends actions so that the held actions match {@param mask}.
+   * @param mask the action bitmask
+   * @param time when the change happened
+   */
+  private void applyMask(int mask, long time) {
+    int changed = actions ^ mask;
+    for (ACTION action : ACTION.values()) {
+      int bit = 1 << action.ordinal();
+      if ((changed & bit) != 0) {
+        if ((mask & bit) != 0) {
+          startAction(action, time);
+        } else {
+          endAction(action);
+        }
       }
     }
+  }
 
-    actions.add(action);
+  /**
+   * Starts a player action unless it is already held. Punches and kicks start their cycle if
+   * the cancel graph of the player lets them.
+   * @param action action to be started
+   * @param time when the action started
+   */
+  private void startAction(ACTION action, long time) {
+    if (isHeld(action)) {
+      return;
+    }
+    if (action == ACTION.HIT) {
+      player.startMove(CancelGraph.JAB);
+    }
+    if (action == ACTION.KICK) {
+      player.startMove(CancelGraph.KICK);
+    }
+
+    hold(actions | 1 << action.ordinal());
+    actionTimes[action.ordinal()] = time;
+    if (recorder != null) {
+      recorder.actionStart(recorderSlot, action);
+    }
   }
 
   /**
-   * Ends a player action.
+   * Ends a player action if it is held.
    * @param action action to end
    */
-  public void actionEnd(ACTION action) {
-    actions.remove(action);
+  private void endAction(ACTION action) {
+    if (!isHeld(action)) {
+      return;
+    }
+    hold(actions & ~(1 << action.ordinal()));
+    if (recorder != null) {
+      recorder.actionEnd(recorderSlot, action);
+    }
   }
 }
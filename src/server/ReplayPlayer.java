@@ -0,0 +1,330 @@
+package server;
+
+import common.GameStage;
+import common.StageSnapshot;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays back a match recorded by {@link MatchRecorder}.
+ * <p>
+ * The replay is simulated headless on its own {@code GameStage} which renderers can draw. Seeking
+ * binary searches the keyframe index, restores the closest keyframe at or before the target and
+ * simulates the remaining ticks from the recorded input, so any moment is at most
+ * {@link MatchRecorder#KEYFRAME_INTERVAL} ticks away. Playing backwards is done by seeking.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ReplayPlayer {
+
+  private ByteBuffer data;
+  private int playerCount;
+  private int tps;
+  private int length;
+  private int[] keyframeTicks;
+  private int[] keyframeOffsets;
+  private int keyframeCount;
+
+  private GameStage stage;
+  private GameEngine engine;
+  private PlayerController[] controllers;
+  private StageSnapshot snapshot;
+
+  private int[] runMasks;
+  private double runDelta;
+  private int runRemaining;
+  private int tick;
+
+  private double speed;
+  private double pendingTicks;
+
+  /**
+   * Creates an instance of ReplayPlayer and positions it at the first tick.
+   *
+   * @param file the replay file
+   * @throws IOException if the file can not be read or is not a replay
+   */
+  public ReplayPlayer(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      data = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (data.getInt() != MatchRecorder.MAGIC) {
+      throw new IOException("Not a replay file");
+    }
+    if (data.getShort() != MatchRecorder.VERSION) {
+      throw new IOException("Unsupported replay version");
+    }
+    playerCount = data.get();
+    tps = data.getInt();
+    data.getLong(); // start time
+    data.getInt(); // keyframe interval
+    byte[] characters = new byte[data.getInt()];
+    data.get(characters);
+
+    stage = new GameStage(playerCount, characters.length > 0 ? characters : null);
+    snapshot = new StageSnapshot(playerCount);
+    runMasks = new int[playerCount];
+
+    // Same controller order as the server so that every tick is simulated identically.
+    engine = new GameEngine();
+    StageController stageController = new StageController(stage);
+    stageController.attach(engine);
+    controllers = new PlayerController[playerCount];
+    for (int i = 0; i < playerCount; i++) {
+      controllers[i] = stageController.getPlayerController(i);
+    }
+
+    if (!readIndex()) {
+      scanIndex(data.position());
+    }
+    if (keyframeCount == 0) {
+      throw new IOException("Replay has no keyframes");
+    }
+
+    speed = 1;
+    restoreKeyframe(0);
+  }
+
+  /**
+   * Reads the keyframe index written when the recording was closed.
+   *
+   * @return false if the recording was not closed properly
+   */
+  private boolean readIndex() {
+    int trailer = data.limit() - MatchRecorder.TRAILER_SIZE;
+    if (trailer < 0 || data.getInt(trailer + Long.BYTES) != MatchRecorder.MAGIC) {
+      return false;
+    }
+
+    int offset = (int) data.getLong(trailer);
+    if (data.get(offset) != MatchRecorder.RECORD_INDEX) {
+      return false;
+    }
+
+    ByteBuffer index = data.duplicate();
+    index.position(offset + 1);
+    keyframeCount = index.getInt();
+    keyframeTicks = new int[keyframeCount];
+    keyframeOffsets = new int[keyframeCount];
+    for (int i = 0; i < keyframeCount; i++) {
+      keyframeTicks[i] = index.getInt();
+      keyframeOffsets[i] = (int) index.getLong();
+    }
+    length = index.getInt();
+    return true;
+  }
+
+  /**
+   * Builds the keyframe index by walking every record, used for recordings that were cut off.
+   *
+   * @param start offset of the first record
+   */
+  private void scanIndex(int start) {
+    ByteBuffer records = data.duplicate();
+    records.position(start);
+    keyframeTicks = new int[64];
+    keyframeOffsets = new int[64];
+    keyframeCount = 0;
+    length = 0;
+
+    try {
+      while (records.hasRemaining()) {
+        int offset = records.position();
+        byte tag = records.get();
+
+        if (tag == MatchRecorder.RECORD_RUN) {
+          int run = MatchRecorder.getVarInt(records);
+          MatchRecorder.getVarInt(records);
+          records.position(records.position() + playerCount);
+          length += run;
+        } else if (tag == MatchRecorder.RECORD_KEYFRAME) {
+          int keyframeTick = records.getInt();
+          records.position(records.position() + playerCount + snapshot.getByteSize());
+          if (keyframeCount == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+          }
+          keyframeTicks[keyframeCount] = keyframeTick;
+          keyframeOffsets[keyframeCount] = offset;
+          keyframeCount++;
+        } else {
+          break;
+        }
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      System.err.println("Replay was cut off after tick " + length);
+    }
+  }
+
+  /**
+   * Restores keyframe number {@param keyframe} and positions the record reader after it.
+   */
+  private void restoreKeyframe(int keyframe) {
+    data.position(keyframeOffsets[keyframe] + 1);
+    tick = data.getInt();
+    for (int i = 0; i < playerCount; i++) {
+      controllers[i].setActionMask(data.get() & 0xFF);
+    }
+    snapshot.read(data);
+    snapshot.restore(stage);
+    runRemaining = 0;
+  }
+
+  /**
+   * Reads records until the next run of ticks.
+   *
+   * @return false at the end of the recording
+   */
+  private boolean nextRun() {
+    while (data.hasRemaining()) {
+      byte tag = data.get();
+
+      if (tag == MatchRecorder.RECORD_RUN) {
+        runRemaining = MatchRecorder.getVarInt(data);
+        runDelta = MatchRecorder.getVarInt(data) / 1000d;
+        for (int i = 0; i < playerCount; i++) {
+          runMasks[i] = data.get() & 0xFF;
+        }
+        return true;
+      } else if (tag == MatchRecorder.RECORD_KEYFRAME) {
+        data.position(data.position() + Integer.BYTES + playerCount + snapshot.getByteSize());
+      } else {
+        data.position(data.position() - 1);
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Simulates one recorded tick.
+   *
+   * @return false if the end of the recording has been reached
+   */
+  public boolean step() {
+    if (tick >= length || (runRemaining == 0 && !nextRun())) {
+      return false;
+    }
+
+    for (int i = 0; i < playerCount; i++) {
+      controllers[i].queueActionMask(runMasks[i]);
+    }
+
+    engine.tick(runDelta);
+    runRemaining--;
+    tick++;
+    return true;
+  }
+
+  /**
+   * Moves the replay to {@param target}. Forward seeks within the same keyframe interval continue
+   * from the current tick, any other seek starts from the closest preceding keyframe.
+   *
+   * @param target the tick to seek to
+   */
+  public void seek(int target) {
+    target = Math.max(0, Math.min(target, length));
+
+    int keyframe = Arrays.binarySearch(keyframeTicks, 0, keyframeCount, target);
+    if (keyframe < 0) {
+      keyframe = -keyframe - 2;
+    }
+
+    if (target < tick || keyframeTicks[keyframe] > tick) {
+      restoreKeyframe(keyframe);
+    }
+    while (tick < target && step()) {
+    }
+  }
+
+  /**
+   * Advances the replay by {@param seconds} of real time scaled by the playback speed. Negative
+   * speeds play backwards.
+   *
+   * @param seconds real time since the last call
+   */
+  public void advance(double seconds) {
+    pendingTicks += seconds * tps * speed;
+
+    if (pendingTicks >= 1) {
+      int ticks = (int) pendingTicks;
+      pendingTicks -= ticks;
+      for (int i = 0; i < ticks; i++) {
+        if (!step()) {
+          pendingTicks = 0;
+          break;
+        }
+      }
+    } else if (pendingTicks <= -1) {
+      int ticks = (int) -pendingTicks;
+      pendingTicks += ticks;
+      seek(tick - ticks);
+    }
+  }
+
+  /**
+   * Sets the playback speed, 1 is real time, 0 is paused and negative values play backwards.
+   *
+   * @param speed the playback speed
+   */
+  public void setSpeed(double speed) {
+    this.speed = speed;
+  }
+
+  /**
+   * Gets the playback speed.
+   *
+   * @return the playback speed
+   */
+  public double getSpeed() {
+    return speed;
+  }
+
+  /**
+   * Gets the current tick.
+   *
+   * @return the current tick
+   */
+  public int getTick() {
+    return tick;
+  }
+
+  /**
+   * Gets the total number of ticks in the recording.
+   *
+   * @return the number of ticks
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Gets the tick rate the match was recorded at.
+   *
+   * @return ticks per second
+   */
+  public int getTickRate() {
+    return tps;
+  }
+
+  /**
+   * Gets the stage the replay is simulated on.
+   *
+   * @return the stage
+   */
+  public GameStage getGameStage() {
+    return stage;
+  }
+}
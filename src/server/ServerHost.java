@@ -0,0 +1,113 @@
+package server;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link GameServer} on a background thread so that a player can host a match from the
+ * game without blocking the user interface.
+ * <p>
+ * The listener is called on the background thread, user interfaces have to move the calls to
+ * their own thread.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ServerHost {
+
+  private Listener listener;
+  private ExecutorService executor;
+  private volatile GameServer server;
+
+  /**
+   * Creates an instance of ServerHost.
+   *
+   * @param listener told about the progress of the server
+   */
+  public ServerHost(Listener listener) {
+    this.listener = listener;
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "GameServer host");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts a server in the background. The listener is told when it accepts connections or if it
+   * could not be created.
+   *
+   * @param port the port to host on
+   */
+  public void start(int port) {
+    executor.execute(() -> {
+      try {
+        listener.onProgress("Starting server on port " + port);
+        server = new GameServer(port);
+        server.setProgressListener(listener::onProgress);
+        listener.onReady(server.getPort());
+        server.start();
+      } catch (IOException e) {
+        listener.onFailed(e);
+      }
+    });
+  }
+
+  /**
+   * Stops the server, if one is running, and the background thread.
+   */
+  public void stop() {
+    GameServer running = server;
+    if (running != null) {
+      running.stop();
+    }
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Gets the hosted server.
+   *
+   * @return the server, or null if it has not been created
+   */
+  public GameServer getServer() {
+    return server;
+  }
+
+  /**
+   * Receives the progress of a hosted server.
+   */
+  public interface Listener {
+
+    /**
+     * Called with a description of what the server is doing.
+     *
+     * @param message the description
+     */
+    void onProgress(String message);
+
+    /**
+     * Called once the server accepts connections.
+     *
+     * @param port the port the server accepts connections on
+     */
+    void onReady(int port);
+
+    /**
+     * Called if the server could not be created.
+     *
+     * @param exception the reason
+     */
+    void onFailed(IOException exception);
+  }
+}
@@ -0,0 +1,254 @@
+package server;
+
+import common.GameStage;
+import common.PlayerStore;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Measures the time a tick of the stage takes as the number of fighters grows, with every
+ * fighter pressing random actions.
+ * <p>
+ * Run with the fighter counts to measure as arguments, by default 2, 4, 8, 16, 32 and 64.
+ * <p>
+ * Run with {@code matches} and the match counts to measure, by default 1, 4, 16, 64 and 256, to
+ * compare ticking that many two player matches one by one with ticking them in a
+ * {@link MatchBatch}, with and without the Vector API step of {@link PhysicsKernel}, and the
+ * physics step alone of as many players. The Vector API step needs the classes compiled from
+ * {@code src-vector} and {@code --add-modules jdk.incubator.vector}, see the README.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class StageBenchmark {
+
+  private static final int WARMUP_TICKS = 5000;
+  private static final int TICKS = 20000;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args fighter counts
+   */
+  public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("matches")) {
+      int[] counts = parseCounts(Arrays.copyOfRange(args, 1, args.length),
+          new int[]{1, 4, 16, 64, 256});
+      measureMatches(counts);
+      return;
+    }
+
+    int[] counts = parseCounts(args, new int[]{2, 4, 8, 16, 32, 64});
+    System.out.println("fighters  us/tick  us/tick/fighter");
+    for (int count : counts) {
+      double micros = silently(() -> measure(count));
+      System.out.printf("%8d %8.2f %16.3f%n", count, micros, micros / count);
+    }
+  }
+
+  /**
+   * Parses the counts to measure.
+   *
+   * @param args the counts as arguments
+   * @param defaults the counts if there are no arguments
+   * @return the counts
+   */
+  private static int[] parseCounts(String[] args, int[] defaults) {
+    if (args.length == 0) {
+      return defaults;
+    }
+    int[] counts = new int[args.length];
+    for (int i = 0; i < args.length; i++) {
+      counts[i] = Integer.parseInt(args[i]);
+    }
+    return counts;
+  }
+
+  /**
+   * Runs a measurement with nothing printed to {@link System#out}. Loading characters and hits
+   * print, which would be measured as well.
+   *
+   * @param measurement the measurement
+   * @return the result of the measurement
+   */
+  private static double silently(DoubleSupplier measurement) {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+    }));
+    try {
+      return measurement.getAsDouble();
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  /**
+   * Measures ticking a number of matches separately and in batches, and the physics step of
+   * their players alone.
+   *
+   * @param counts the numbers of matches
+   */
+  private static void measureMatches(int[] counts) {
+    boolean before = PhysicsKernel.isVectorized();
+    PhysicsKernel.setVectorized(true);
+    boolean vector = PhysicsKernel.isVectorized();
+    if (!vector) {
+      System.out.println("Vector API step not available, vectorized is scalar");
+    }
+    System.out.println("matches  separate   batched  vectorized  step scalar  step vector"
+        + "  (us/tick)");
+    for (int count : counts) {
+      double separate = silently(() -> measureMatches(count, false));
+      PhysicsKernel.setVectorized(false);
+      double batched = silently(() -> measureMatches(count, true));
+      double scalarStep = measureStep(count * 2);
+      PhysicsKernel.setVectorized(vector);
+      double vectorized = silently(() -> measureMatches(count, true));
+      double vectorStep = measureStep(count * 2);
+      System.out.printf("%7d %9.2f %9.2f %11.2f %12.3f %12.3f%n", count, separate, batched,
+          vectorized, scalarStep, vectorStep);
+    }
+    PhysicsKernel.setVectorized(before);
+  }
+
+  /**
+   * Simulates a number of two player matches and measures their ticks.
+   *
+   * @param count the number of matches
+   * @param batched whether the matches are ticked by a {@link MatchBatch}
+   * @return average microseconds per tick of every match
+   */
+  private static double measureMatches(int count, boolean batched) {
+    GameStage[] stages = new GameStage[count];
+    GameEngine[] engines = new GameEngine[count];
+    PlayerController[] controllers = new PlayerController[count * 2];
+    MatchBatch batch = new MatchBatch();
+    for (int m = 0; m < count; m++) {
+      stages[m] = new GameStage();
+      engines[m] = new GameEngine();
+      StageController stageController = new StageController(stages[m]);
+      stageController.attach(engines[m]);
+      batch.add(engines[m], stageController);
+      controllers[2 * m] = stageController.getPlayerController(0);
+      controllers[2 * m + 1] = stageController.getPlayerController(1);
+    }
+
+    Random random = new Random(count);
+    int[] masks = new int[controllers.length];
+    double delta = 1d / GameEngine.DEFAULT_TPS;
+    long start = 0;
+    for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+      if (t == WARMUP_TICKS) {
+        start = System.nanoTime();
+      }
+      for (int i = 0; i < controllers.length; i++) {
+        if (random.nextInt(10) == 0) {
+          masks[i] ^= 1 << random.nextInt(6);
+          controllers[i].setActionMask(masks[i]);
+        }
+      }
+      if (batched) {
+        batch.tick(delta);
+      } else {
+        for (GameEngine engine : engines) {
+          engine.tick(delta);
+        }
+      }
+      if (t % 1000 == 0) {
+        for (GameStage stage : stages) {
+          stage.reset();
+        }
+      }
+    }
+    return (System.nanoTime() - start) / 1000d / TICKS;
+  }
+
+  /**
+   * Measures the physics step of a number of players, gathered the way a {@link MatchBatch}
+   * gathers them.
+   *
+   * @param players the number of players
+   * @return average microseconds per step
+   */
+  private static double measureStep(int players) {
+    PlayerStore store = new PlayerStore(players);
+    double[] grounds = new double[players];
+    double[] onGround = new double[players];
+    Random random = new Random(players);
+    for (int i = 0; i < players; i++) {
+      store.getX()[i] = random.nextDouble() * 15;
+      store.getY()[i] = random.nextDouble() * 3;
+      store.getWidth()[i] = 1;
+      store.getHeight()[i] = 2;
+      grounds[i] = 5;
+    }
+
+    double delta = 1d / GameEngine.DEFAULT_TPS;
+    // A step is short, so it takes many more of them for the JIT to be done.
+    int warmup = WARMUP_TICKS * 10;
+    long start = 0;
+    for (int t = 0; t < warmup + TICKS * 10; t++) {
+      if (t == warmup) {
+        start = System.nanoTime();
+      }
+      if (t % 100 == 0) {
+        // Keep the players moving.
+        for (int i = 0; i < players; i++) {
+          store.getVelocityX()[i] = random.nextDouble() * 20 - 10;
+          store.getVelocityY()[i] = -random.nextDouble() * 10;
+        }
+      }
+      PhysicsKernel.step(store, grounds, onGround, players, delta);
+    }
+    return (System.nanoTime() - start) / 1000d / (TICKS * 10);
+  }
+
+  /**
+   * Simulates a stage and measures its ticks.
+   *
+   * @param count the number of fighters
+   * @return average microseconds per tick
+   */
+  private static double measure(int count) {
+    GameStage stage = new GameStage(count);
+    GameEngine engine = new GameEngine();
+    StageController stageController = new StageController(stage);
+    stageController.attach(engine);
+    PlayerController[] controllers = new PlayerController[count];
+    for (int i = 0; i < count; i++) {
+      controllers[i] = stageController.getPlayerController(i);
+    }
+
+    Random random = new Random(count);
+    int[] masks = new int[count];
+    double delta = 1d / GameEngine.DEFAULT_TPS;
+    long start = 0;
+    for (int t = 0; t < WARMUP_TICKS + TICKS; t++) {
+      if (t == WARMUP_TICKS) {
+        start = System.nanoTime();
+      }
+      for (int i = 0; i < count; i++) {
+        if (random.nextInt(10) == 0) {
+          masks[i] ^= 1 << random.nextInt(6);
+          controllers[i].setActionMask(masks[i]);
+        }
+      }
+      engine.tick(delta);
+      if (t % 1000 == 0) {
+        // Keep the fighters in the fight.
+        stage.reset();
+      }
+    }
+    return (System.nanoTime() - start) / 1000d / TICKS;
+  }
+}
@@ -4,16 +4,25 @@ import static javafx.scene.input.KeyCode.getKeyCode;
 
 import client.FileHandler;
 import common.ActionCycle.CYCLE;
+import common.CancelGraph;
+import common.FixedPoint;
+import common.FrameTable;
+import common.GameDefaults;
 import common.GamePlayer;
 import common.GamePlayer.ACTION;
 import common.GameStage;
+import common.PlayerStore;
+import common.StateArena;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import javafx.geometry.Point2D;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.shape.Rectangle;
 
 /**
  * Handles the state of the stage each tick and each player controller within it
+ * <p>
+ * The tick counter and the hurtbox history are saved along with the stage by a
+ * {@link StateArena}, the players' controllers save their own state.
  *
  * @author Alexander Andersson (alexaan)
  * @author Linus Berglund (belinus)
@@ -22,192 +31,401 @@ import javafx.scene.shape.Rectangle;
  * @author Karl Ängermark (karlang)
  * @version 2017-02-28
  */
-public class StageController implements GameController {
+public class StageController implements GameController, StateArena.Part {
+
+  // Saved size of the tick counter, an int padded to keep the history after it 8-byte aligned.
+  private static final int TICK_BYTES = (Integer.BYTES + 7) / 8 * 8;
 
   GameStage stage;
-  private PlayerController player1Controller;
-  private PlayerController player2Controller;
+  // Controller of each player, by slot.
+  private PlayerController[] playerControllers;
+  private HurtboxHistory history;
+  // Ticks each player's attacks are checked in the past, written by network threads.
+  private AtomicIntegerArray rewindTicks;
+  private SweepAndPrune broadphase;
+  private int maxHurt;
+  private int maxHit;
+  // Boxes of the current frame of each player, maxHurt and maxHit boxes apart.
+  private double[] hurtBounds;
+  private double[] hitBounds;
+  private int[] hurtCounts;
+  private int[] hitCounts;
+  private int[] moves;
+  private int[] rewinds;
+  // Movement of each player until the next tick.
+  private double[] sweepX;
+  private double[] sweepY;
+  private double[] knockback;
+  // Hit points each knockback was worked out from, for fixed-point physics.
+  private int[] knockbackHP;
+  private int tick;
+  // Whether the players were moved by a batch for the next update.
+  private boolean batched;
 
   /**
-   * Creates a new instance of <tt>StageController</tt>, gets the controls and creates instances
-   * of PlayerController.
+   * Creates a new instance of <tt>StageController</tt>, gets the controls and creates an instance
+   * of PlayerController for every player.
    *
    * @param stage
    */
   public StageController(GameStage stage) {
     this.stage = stage;
-    player1Controller = new PlayerController(stage.getPlayer1());
-    player2Controller = new PlayerController(stage.getPlayer2());
+    GamePlayer[] players = stage.getPlayers();
+    playerControllers = new PlayerController[players.length];
+    for (int i = 0; i < players.length; i++) {
+      playerControllers[i] = new PlayerController(players[i]);
+    }
     getControls();
+
+    history = new HurtboxHistory(players,
+        (int) Math.ceil(GameDefaults.MAX_LAG_COMPENSATION * GameEngine.DEFAULT_TPS) + 1);
+    rewindTicks = new AtomicIntegerArray(players.length);
+    for (GamePlayer player : players) {
+      maxHurt = Math.max(maxHurt, player.getHurtBoxCount());
+      maxHit = Math.max(maxHit, player.getFrames().getMaxBoxes(FrameTable.HIT));
+    }
+    broadphase = new SweepAndPrune(players.length);
+    hurtBounds = new double[players.length * maxHurt * 4];
+    hitBounds = new double[players.length * maxHit * 4];
+    hurtCounts = new int[players.length];
+    hitCounts = new int[players.length];
+    moves = new int[players.length];
+    rewinds = new int[players.length];
+    sweepX = new double[players.length];
+    sweepY = new double[players.length];
+    knockback = new double[players.length];
+    knockbackHP = new int[players.length];
   }
 
   /**
-   * Updates the current events in the game.
+   * Makes attacks by a player be checked against where the other players were {@param seconds}
+   * ago, which is where the attacking player saw them. Capped at
+   * {@link GameDefaults#MAX_LAG_COMPENSATION}.
    *
-   * @param delta the time difference between this and the previous tick, used for scaling
+   * @param player index of the attacking player
+   * @param seconds how far behind the server the player sees the others
    */
-  @Override
-  public void update(double delta) {
-
-    double gravity = 9.82;
-
-    GamePlayer p1 = stage.getPlayer1();
-    GamePlayer p2 = stage.getPlayer2();
-    Point2D p1f = p1.getPosition().add(p1.getWidth() / 2, p1.getHeight());
-    Point2D p2f = p2.getPosition().add(p2.getWidth() / 2, p2.getHeight());
-
-    if (p1.getHP() < 0) {
-      p1.setHP(0);
-    }
-    if (p2.getHP() < 0) {
-      p2.setHP(0);
-    }
+  public void setLagCompensation(int player, double seconds) {
+    seconds = Math.max(0, Math.min(seconds, GameDefaults.MAX_LAG_COMPENSATION));
+    int ticks = (int) Math.round(seconds * GameEngine.DEFAULT_TPS);
+    rewindTicks.set(player, Math.min(ticks, history.getCapacity() - 1));
+  }
 
-    double kbMultiplier1 = ((double) p2.getMaxHP() / (p2.getHP() + 1)) / 1.5;
-    double kbMultiplier2 = ((double) p1.getMaxHP() / (p1.getHP() + 1)) / 1.5;
+  /**
+   * Checks whether a hitbox of the current frame of {@param attacker} touches a hurtbox of
+   * {@param defender}, rewound by the lag compensation of the attacker. Boxes that are not rewound
+   * are swept along the movement of both players until the next tick, so fast players cannot
+   * pass through each other between two ticks.
+   *
+   * @param attacker index of the attacking player
+   * @param defender index of the defending player
+   * @return true on a hit
+   */
+  private boolean hits(int attacker, int defender) {
+    int rewind = rewinds[attacker];
+    int hurt = defender * maxHurt * 4;
+    double dx = sweepX[defender] - sweepX[attacker];
+    double dy = sweepY[defender] - sweepY[attacker];
 
-    //Set player 1 as not on ground if above ground level
-    if (p1.getPosition().getY() + p1.getHeight() < stage.getGroundLevelY()) {
-      p1.setOnGround(false);
+    for (int h = attacker * maxHit * 4; h < (attacker * maxHit + hitCounts[attacker]) * 4;
+        h += 4) {
+      double minX = hitBounds[h];
+      double minY = hitBounds[h + 1];
+      double maxX = hitBounds[h + 2];
+      double maxY = hitBounds[h + 3];
+      if (rewind > 0) {
+        if (history.overlaps(defender, tick - rewind, minX, minY, maxX, maxY)) {
+          return true;
+        }
+        continue;
+      }
+      for (int i = hurt; i < hurt + hurtCounts[defender] * 4; i += 4) {
+        if (touches(minX, minY, maxX, maxY, i, dx, dy)) {
+          return true;
+        }
+      }
     }
+    return false;
+  }
 
-    //Set player 2 as not on ground if above ground level
-    if (p2.getPosition().getY() + p2.getHeight() < stage.getGroundLevelY()) {
-      p2.setOnGround(false);
+  /**
+   * Checks whether a hurtbox moving by {@param dx}, {@param dy} relative to a hitbox touches it at
+   * any time during the move, by finding the time it starts and stops overlapping along each
+   * axis.
+   *
+   * @param minX left edge of the hitbox
+   * @param minY top edge of the hitbox
+   * @param maxX right edge of the hitbox
+   * @param maxY bottom edge of the hitbox
+   * @param i index of the hurtbox in the hurtbox bounds
+   * @param dx relative movement along x
+   * @param dy relative movement along y
+   * @return true if they touch
+   */
+  private boolean touches(double minX, double minY, double maxX, double maxY, int i, double dx,
+      double dy) {
+    double enter = 0;
+    double exit = 1;
+    if (dx == 0) {
+      if (maxX < hurtBounds[i] || minX > hurtBounds[i + 2]) {
+        return false;
+      }
+    } else {
+      double t0 = (minX - hurtBounds[i + 2]) / dx;
+      double t1 = (maxX - hurtBounds[i]) / dx;
+      enter = Math.max(enter, Math.min(t0, t1));
+      exit = Math.min(exit, Math.max(t0, t1));
     }
-
-    //Apply air resistance + eventual ground friction to reduce player 1 x-velocity
-    if (p1.isOnGround()) {
-      p1.accelerate(new Point2D(p1.getVelocity().multiply(-5 * delta).getX(), 0));
+    if (dy == 0) {
+      if (maxY < hurtBounds[i + 1] || minY > hurtBounds[i + 3]) {
+        return false;
+      }
     } else {
-      p1.accelerate(new Point2D(p1.getVelocity().multiply(-2.5 * delta).getX(), 0));
+      double t0 = (minY - hurtBounds[i + 3]) / dy;
+      double t1 = (maxY - hurtBounds[i + 1]) / dy;
+      enter = Math.max(enter, Math.min(t0, t1));
+      exit = Math.min(exit, Math.max(t0, t1));
     }
+    return enter <= exit;
+  }
 
-    //Apply air resistance + eventual ground friction to reduce player 2 x-velocity
-    if (p2.isOnGround()) {
-      p2.accelerate(new Point2D(p2.getVelocity().multiply(-5 * delta).getX(), 0));
+  /**
+   * Updates the current events in the game.
+   *
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  @Override
+  public void update(double delta) {
+    if (batched) {
+      batched = false;
     } else {
-      p2.accelerate(new Point2D(p2.getVelocity().multiply(-2.5 * delta).getX(), 0));
+      beginTick();
+      PhysicsKernel.step(stage.getStore(), stage.getGroundLevelY(), delta);
     }
+    findHits(delta);
+    tick++;
+  }
 
-    //Apply gravity acceleration if not on ground and handle ground collision
-    if (p1f.getY() < stage.getGroundLevelY()) {
-      p1.accelerate(new Point2D(0, gravity * delta));
-    } else if (!p1.isOnGround()) {
-      p1.setOnGround(true);
-      p1.setPosition(new Point2D(p1.getPosition().getX()
-          , stage.getGroundLevelY() - p1.getHeight()));
-      p1.setVelocity(new Point2D(p1.getVelocity().getX(), 0));
-    }
+  /**
+   * Puts players that moved out of the stage during the tick back in.
+   */
+  @Override
+  public void onTickEnd() {
+    PhysicsKernel.bound(stage.getStore(), stage.getGroundLevelY());
+  }
 
-    if (p2f.getY() < stage.getGroundLevelY()) {
-      p2.accelerate(new Point2D(0, gravity * delta));
-    } else if (!p2.isOnGround()) {
-      p2.setOnGround(true);
-      p2.setPosition(new Point2D(p2.getPosition().getX()
-          , stage.getGroundLevelY() - p2.getHeight()));
-      p2.setVelocity(new Point2D(p2.getVelocity().getX(), 0));
+  /**
+   * Does the part of a tick before the players move, recording where they are and working out
+   * how far each would be knocked back.
+   */
+  private void beginTick() {
+    history.record(tick);
+
+    PlayerStore store = stage.getStore();
+    int[] HP = store.getHP();
+    int[] maxHP = store.getMaxHP();
+    for (int i = 0; i < store.size(); i++) {
+      HP[i] = Math.max(HP[i], 0);
+      knockback[i] = ((double) maxHP[i] / (HP[i] + 1)) / 1.5;
+      knockbackHP[i] = HP[i];
     }
+  }
+
+  /**
+   * Does the part of the next tick before the players move, leaving moving them to a
+   * {@link MatchBatch} which moves the players of all its matches at once before the next
+   * {@link #update(double)}.
+   */
+  void beginBatchedTick() {
+    beginTick();
+    batched = true;
+  }
 
-    //Stage wall collision
-    if (p1f.getX() + p1.getWidth() / 2 > 16) {
-      p1.setPosition(new Point2D(16 - p1.getWidth(), p1.getPosition().getY()));
-      p1.setVelocity(new Point2D(p1.getVelocity().getX() * -1, p1.getVelocity().getY()));
-    } else if (p1f.getX() - p1.getWidth() / 2 < 0) {
-      p1.setPosition(new Point2D(0, p1.getPosition().getY()));
-      p1.setVelocity(new Point2D(p1.getVelocity().getX() * -1, p1.getVelocity().getY()));
+  /**
+   * Checks HitBox/HurtBox collisions between players on different teams. Pairs are found by the
+   * broadphase and handled in order of attacker and then defender, attackers whose attacks are
+   * rewound are checked against every defender since the broadphase only knows where the
+   * defenders are now.
+   * <p>
+   * Each player is swept along how far it moves over the coming tick, its velocity together with
+   * the walk, jump and fall of its held actions. Both are in the store of the stage, so a
+   * restored state sweeps the same way again.
+   *
+   * @param delta the time difference between this and the previous tick, used for scaling
+   */
+  private void findHits(double delta) {
+    GamePlayer[] players = stage.getPlayers();
+    PlayerStore store = stage.getStore();
+    for (int i = 0; i < players.length; i++) {
+      sweepX[i] = (store.getVelocityX()[i] + getHeldVelocityX(store, i)) * delta;
+      sweepY[i] = (store.getVelocityY()[i] + getHeldVelocityY(store, i)) * delta;
+      moves[i] = players[i].getFrames().getMove(players[i].getFrame());
+      hitCounts[i] = players[i].getBoxBounds(FrameTable.HIT, hitBounds, i * maxHit * 4, maxHit);
+      hurtCounts[i] = players[i].getHurtBoxBounds(hurtBounds, i * maxHurt * 4, maxHurt);
+      rewinds[i] = rewindTicks.get(i);
+      broadphase.setBoxes(i, SweepAndPrune.HIT, hitBounds, i * maxHit * 4,
+          rewinds[i] > 0 ? 0 : hitCounts[i], sweepX[i], sweepY[i]);
+      broadphase.setBoxes(i, SweepAndPrune.HURT, hurtBounds, i * maxHurt * 4, hurtCounts[i],
+          sweepX[i], sweepY[i]);
     }
 
-    if (p2f.getX() + p2.getWidth() / 2 > 16) {
-      p2.setPosition(new Point2D(16 - p2.getWidth(), p2.getPosition().getY()));
-      p2.setVelocity(new Point2D(p2.getVelocity().getX() * -1, p2.getVelocity().getY()));
-    } else if (p2f.getX() - p2.getWidth() / 2 < 0) {
-      p2.setPosition(new Point2D(0, p2.getPosition().getY()));
-      p2.setVelocity(new Point2D(p2.getVelocity().getX() * -1, p2.getVelocity().getY()));
+    int pairCount = broadphase.sweep();
+    int[] pairs = broadphase.getPairs();
+    int next = 0;
+    for (int attacker = 0; attacker < players.length; attacker++) {
+      if (hitCounts[attacker] > 0 && rewinds[attacker] > 0) {
+        for (int defender = 0; defender < players.length; defender++) {
+          tryHit(attacker, defender);
+        }
+        continue;
+      }
+      for (; next < pairCount && pairs[next] / players.length == attacker; next++) {
+        tryHit(attacker, pairs[next] % players.length);
+      }
     }
+  }
 
-    //Stage ceiling collision
-    if (p1.getPosition().getY() < 0) {
-      p1.setPosition(new Point2D(p1.getPosition().getX(), 0));
-      p1.setVelocity(new Point2D(p1.getVelocity().getX(), p1.getVelocity().getY() * -1));
+  /**
+   * Gets the speed along x the held actions of a player add to its velocity during a tick, as
+   * moved by its {@link PlayerController}.
+   *
+   * @param store the store of the stage
+   * @param i slot of the player
+   * @return the speed
+   */
+  private static double getHeldVelocityX(PlayerStore store, int i) {
+    int held = store.getActions()[i];
+    double speed = 0;
+    if ((held & 1 << ACTION.MOVE_LEFT.ordinal()) != 0) {
+      speed -= PlayerController.WALK_SPEED;
     }
-    if (p2.getPosition().getY() < 0) {
-      p2.setPosition(new Point2D(p2.getPosition().getX(), 0));
-      p2.setVelocity(new Point2D(p2.getVelocity().getX(), p2.getVelocity().getY() * -1));
+    if ((held & 1 << ACTION.MOVE_RIGHT.ordinal()) != 0) {
+      speed += PlayerController.WALK_SPEED;
     }
-    //Checks HitBox/HurtBox collisions
-    if (player1Controller.player.statePunching.isActive()) {
-      for (Rectangle hurt : p2.getHurtBoxes()) {
-        if (p1.getHitBox(0).getBoundsInParent().intersects(hurt.getBoundsInParent())) {
-          if (!p2.stateStunned.isActive()) {
-            p2.stateStunned.enterCycle(CYCLE.ACTIVE);
-            p2.setHP(p2.getHP() - 10);
-            System.out.println("Player 2 is hit - " + p2.getHP() + "HP");
-            if (p1.isFaceRight()) {
-              p2.accelerate(new Point2D(15, -3).multiply(kbMultiplier1));
-            } else {
-              p2.accelerate(new Point2D(-15, -3).multiply(kbMultiplier1));
-            }
-          }
-        }
-      }
+    return speed;
+  }
+
+  /**
+   * Gets the speed along y the held actions of a player add to its velocity during a tick, a
+   * jump from the ground or a fall in the air, as moved by its {@link PlayerController}.
+   *
+   * @param store the store of the stage
+   * @param i slot of the player
+   * @return the speed
+   */
+  private static double getHeldVelocityY(PlayerStore store, int i) {
+    int held = store.getActions()[i];
+    boolean onGround = (store.getFlags()[i] & PlayerStore.ON_GROUND) != 0;
+    double speed = 0;
+    if ((held & 1 << ACTION.JUMP.ordinal()) != 0 && onGround) {
+      speed -= PlayerController.JUMP_SPEED;
+      onGround = false;
     }
-    //Checks HitBox/HurtBox collisions
-    if (player1Controller.player.stateKicking.isActive()) {
-      for (Rectangle hurt : p2.getHurtBoxes()) {
-        if (p1.getHitBox(1).getBoundsInParent().intersects(hurt.getBoundsInParent())) {
-          if (!p2.stateStunned.isActive()) {
-            p2.stateStunned.enterCycle(CYCLE.ACTIVE);
-            p2.setHP(p2.getHP() - 20);
-            System.out.println("Player 2 is hit - " + p2.getHP() + "HP");
-            if (p1.isFaceRight()) {
-              p2.accelerate(new Point2D(20, -10).multiply(kbMultiplier1));
-            } else {
-              p2.accelerate(new Point2D(-20, -10).multiply(kbMultiplier1));
-            }
-          }
-        }
-      }
+    if ((held & 1 << ACTION.FALL.ordinal()) != 0 && !onGround) {
+      speed += PlayerController.FALL_SPEED;
     }
-    //Checks HitBox/HurtBox collisions
-    if (player2Controller.player.statePunching.isActive()) {
-      for (Rectangle hurt : p1.getHurtBoxes()) {
-        if (p2.getHitBox(0).getBoundsInParent().intersects(hurt.getBoundsInParent())) {
-          if (!p1.stateStunned.isActive()) {
-            p1.stateStunned.enterCycle(CYCLE.ACTIVE);
-            p1.setHP(p1.getHP() - 10);
-            System.out.println("Player 1 is hit - " + p1.getHP() + "HP");
-            if (p2.isFaceRight()) {
-              p1.accelerate(new Point2D(15, -3).multiply(kbMultiplier2));
-            } else {
-              p1.accelerate(new Point2D(-15, -3).multiply(kbMultiplier2));
-            }
-          }
-        }
-      }
+    return speed;
+  }
+
+  /**
+   * Hits {@param defender} with the move of {@param attacker} if they are on different teams,
+   * the defender is not already stunned and a hitbox touches a hurtbox.
+   *
+   * @param attacker index of the attacking player
+   * @param defender index of the defending player
+   */
+  private void tryHit(int attacker, int defender) {
+    GamePlayer[] players = stage.getPlayers();
+    GamePlayer a = players[attacker];
+    GamePlayer d = players[defender];
+    if (a.getTeam() == d.getTeam() || moves[attacker] < 0 || !hits(attacker, defender)) {
+      return;
     }
-    //Checks HitBox/HurtBox collisions
-    if (player2Controller.player.stateKicking.isActive()) {
-      for (Rectangle hurt : p1.getHurtBoxes()) {
-        if (p2.getHitBox(1).getBoundsInParent().intersects(hurt.getBoundsInParent())) {
-          if (!p1.stateStunned.isActive()) {
-            p1.stateStunned.enterCycle(CYCLE.ACTIVE);
-            p1.setHP(p1.getHP() - 20);
-            System.out.println("Player 1 is hit - " + p1.getHP() + "HP");
-            if (p2.isFaceRight()) {
-              p1.accelerate(new Point2D(20, -10).multiply(kbMultiplier2));
-            } else {
-              p1.accelerate(new Point2D(-20, -10).multiply(kbMultiplier2));
-            }
-          }
-        }
-      }
+    if (d.stateStunned.isActive()) {
+      return;
+    }
+
+    int damage = moves[attacker] == CancelGraph.KICK ? 20 : 10;
+    Point2D push = moves[attacker] == CancelGraph.KICK ? new Point2D(20, -10)
+        : new Point2D(15, -3);
+    d.stateStunned.enterCycle(CYCLE.ACTIVE);
+    d.setHP(d.getHP() - damage);
+    System.out.println("Player " + (defender + 1) + " is hit - " + d.getHP() + "HP");
+    if (stage.getStore().isFixedPoint()) {
+      knockFixed(a.isFaceRight() ? push : new Point2D(-push.getX(), push.getY()), defender);
+    } else if (a.isFaceRight()) {
+      d.accelerate(push.multiply(knockback[defender]));
+    } else {
+      d.accelerate(new Point2D(-push.getX(), push.getY()).multiply(knockback[defender]));
     }
   }
 
   /**
-   * Attaches The <tt>StageController</tt> and the two <tt>PlayerControllers</tt> to the
-   * <tt>GameEngine</tt>.
+   * Knocks a player back with fixed-point physics, the knockback being worked out as a fraction
+   * of integers.
+   *
+   * @param push the push of the move in the direction the attacker faces
+   * @param defender index of the player that is hit
+   */
+  private void knockFixed(Point2D push, int defender) {
+    PlayerStore store = stage.getStore();
+    long numerator = 2L * store.getMaxHP()[defender];
+    long denominator = 3L * (knockbackHP[defender] + 1);
+    long dx = FixedPoint.toFixed(push.getX()) * numerator / denominator;
+    long dy = FixedPoint.toFixed(push.getY()) * numerator / denominator;
+    store.getVelocityX()[defender] = FixedPoint.toDouble(
+        FixedPoint.toFixed(store.getVelocityX()[defender]) + dx);
+    store.getVelocityY()[defender] = FixedPoint.toDouble(
+        FixedPoint.toFixed(store.getVelocityY()[defender]) + dy);
+  }
+
+  /**
+   * Gets the number of bytes the tick counter and hurtbox history take when saved.
+   *
+   * @return size in bytes
+   */
+  @Override
+  public int getSavedBytes() {
+    return TICK_BYTES + history.getSavedBytes();
+  }
+
+  /**
+   * Saves the tick counter and hurtbox history in a region of {@param arena}.
+   *
+   * @param arena the arena to save in
+   * @param offset byte offset of the state in the arena
+   */
+  @Override
+  public void save(StateArena arena, int offset) {
+    arena.putInt(offset, tick);
+    history.save(arena, offset + TICK_BYTES);
+  }
+
+  /**
+   * Puts the tick counter and hurtbox history back as saved in {@param arena}.
+   *
+   * @param arena the arena to restore from
+   * @param offset byte offset of the state in the arena
+   */
+  @Override
+  public void restore(StateArena arena, int offset) {
+    tick = arena.getInt(offset);
+    history.restore(arena, offset + TICK_BYTES);
+  }
+
+  /**
+   * Gets the controller of a player.
+   *
+   * @param slot index of the player on the stage
+   * @return the controller
+   */
+  public PlayerController getPlayerController(int slot) {
+    return playerControllers[slot];
+  }
+
+  /**
+   * Attaches The <tt>StageController</tt> and the <tt>PlayerController</tt> of every player to
+   * the <tt>GameEngine</tt>.
    *
    * @param engine the engine to attach this controller to
    */
@@ -215,8 +433,9 @@ public class StageController implements GameController {
   public void attach(GameEngine engine) {
     engine.addController(this); // Ping-pong pow!
 
-    player1Controller.attach(engine);
-    player2Controller.attach(engine);
+    for (PlayerController controller : playerControllers) {
+      controller.attach(engine);
+    }
   }
 
   /**
@@ -226,8 +445,9 @@ public class StageController implements GameController {
    */
   @Override
   public void onKeyPressed(KeyEvent event) {
-    player1Controller.onKeyPressed(event);
-    player2Controller.onKeyPressed(event);
+    for (PlayerController controller : playerControllers) {
+      controller.onKeyPressed(event);
+    }
     //gameClient.setKeyPressed(event); //Add key to client sendlist
   }
 
@@ -237,13 +457,15 @@ public class StageController implements GameController {
    */
   @Override
   public void onKeyReleased(KeyEvent event) {
-    player1Controller.onKeyReleased(event);
-    player2Controller.onKeyReleased(event);
+    for (PlayerController controller : playerControllers) {
+      controller.onKeyReleased(event);
+    }
     //gameClient.setKeyReleased(event); //Remove key from client sendlist
   }
 
   /**
-   * Gets the current controls from the Settings.
+   * Gets the current controls from the Settings. The keyboard has controls for the first two
+   * players.
    */
   public void getControls() {
     ArrayList<String> impControls = FileHandler.importControls();
@@ -256,19 +478,15 @@ public class StageController implements GameController {
                 .toLowerCase());
       }
     }
-    // Player controls
-    player1Controller.bindKey(getKeyCode(impControls.get(0)), ACTION.JUMP);
-    player1Controller.bindKey(getKeyCode(impControls.get(1)), ACTION.MOVE_LEFT);
-    player1Controller.bindKey(getKeyCode(impControls.get(3)), ACTION.MOVE_RIGHT);
-    player1Controller.bindKey(getKeyCode(impControls.get(2)), ACTION.FALL);
-    player1Controller.bindKey(getKeyCode(impControls.get(4)), ACTION.HIT);
-    player1Controller.bindKey(getKeyCode(impControls.get(5)), ACTION.KICK);
-
-    player2Controller.bindKey(getKeyCode(impControls.get(6)), ACTION.JUMP);
-    player2Controller.bindKey(getKeyCode(impControls.get(7)), ACTION.MOVE_LEFT);
-    player2Controller.bindKey(getKeyCode(impControls.get(9)), ACTION.MOVE_RIGHT);
-    player2Controller.bindKey(getKeyCode(impControls.get(8)), ACTION.FALL);
-    player2Controller.bindKey(getKeyCode(impControls.get(10)), ACTION.HIT);
-    player2Controller.bindKey(getKeyCode(impControls.get(11)), ACTION.KICK);
+    // Player controls, six keys per player
+    for (int i = 0; i < Math.min(2, playerControllers.length); i++) {
+      PlayerController controller = playerControllers[i];
+      controller.bindKey(getKeyCode(impControls.get(i * 6)), ACTION.JUMP);
+      controller.bindKey(getKeyCode(impControls.get(i * 6 + 1)), ACTION.MOVE_LEFT);
+      controller.bindKey(getKeyCode(impControls.get(i * 6 + 3)), ACTION.MOVE_RIGHT);
+      controller.bindKey(getKeyCode(impControls.get(i * 6 + 2)), ACTION.FALL);
+      controller.bindKey(getKeyCode(impControls.get(i * 6 + 4)), ACTION.HIT);
+      controller.bindKey(getKeyCode(impControls.get(i * 6 + 5)), ACTION.KICK);
+    }
   }
 }
@@ -0,0 +1,183 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Broadphase of hit detection that finds the players whose hitboxes may touch the hurtboxes of
+ * another player without testing every pair.
+ * <p>
+ * Each player has one bounding box around all of its hitboxes and one around all of its
+ * hurtboxes. The boxes are kept sorted by their left edge and swept from left to right, so only
+ * boxes that overlap along x are compared. Players move little between ticks, so the order of
+ * the previous tick is nearly sorted and sorting it again by insertion takes close to linear
+ * time.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class SweepAndPrune {
+
+  /**
+   * Box around the hurtboxes of a player.
+   */
+  public static final int HURT = 0;
+  /**
+   * Box around the hitboxes of a player.
+   */
+  public static final int HIT = 1;
+
+  private int players;
+  // Bounds of box 2 * player + kind, empty boxes have minX of positive infinity.
+  private double[] minX;
+  private double[] minY;
+  private double[] maxX;
+  private double[] maxY;
+  private int[] order;
+  private int[] active;
+  private int[] pairs;
+  private int pairCount;
+
+  /**
+   * Creates an instance of SweepAndPrune.
+   *
+   * @param players the number of players
+   */
+  public SweepAndPrune(int players) {
+    this.players = players;
+    minX = new double[players * 2];
+    minY = new double[players * 2];
+    maxX = new double[players * 2];
+    maxY = new double[players * 2];
+    Arrays.fill(minX, Double.POSITIVE_INFINITY);
+    order = new int[players * 2];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    active = new int[players * 2];
+    pairs = new int[players * 4];
+  }
+
+  /**
+   * Sets a bounding box of a player for this tick.
+   *
+   * @param player index of the player
+   * @param kind {@link #HURT} or {@link #HIT}
+   * @param bounds minX, minY, maxX, maxY of each box to be bounded
+   * @param offset index of the first value in {@param bounds}
+   * @param count the number of boxes, 0 to leave the player without a box of this kind
+   */
+  public void setBoxes(int player, int kind, double[] bounds, int offset, int count) {
+    setBoxes(player, kind, bounds, offset, count, 0, 0);
+  }
+
+  /**
+   * Sets a bounding box of a player for this tick around where its boxes are now and where they
+   * will have moved by {@param dx}, {@param dy}, so that boxes passing each other before the next
+   * tick are paired as well.
+   *
+   * @param player index of the player
+   * @param kind {@link #HURT} or {@link #HIT}
+   * @param bounds minX, minY, maxX, maxY of each box to be bounded
+   * @param offset index of the first value in {@param bounds}
+   * @param count the number of boxes, 0 to leave the player without a box of this kind
+   * @param dx movement along x until the next tick
+   * @param dy movement along y until the next tick
+   */
+  public void setBoxes(int player, int kind, double[] bounds, int offset, int count, double dx,
+      double dy) {
+    int box = player * 2 + kind;
+    if (count == 0) {
+      minX[box] = Double.POSITIVE_INFINITY;
+      return;
+    }
+
+    double x0 = Double.POSITIVE_INFINITY;
+    double y0 = Double.POSITIVE_INFINITY;
+    double x1 = Double.NEGATIVE_INFINITY;
+    double y1 = Double.NEGATIVE_INFINITY;
+    for (int i = offset; i < offset + count * 4; i += 4) {
+      x0 = Math.min(x0, bounds[i]);
+      y0 = Math.min(y0, bounds[i + 1]);
+      x1 = Math.max(x1, bounds[i + 2]);
+      y1 = Math.max(y1, bounds[i + 3]);
+    }
+    minX[box] = x0 + Math.min(0, dx);
+    minY[box] = y0 + Math.min(0, dy);
+    maxX[box] = x1 + Math.max(0, dx);
+    maxY[box] = y1 + Math.max(0, dy);
+  }
+
+  /**
+   * Finds every attacker and defender whose hit and hurt bounding boxes touch. Pairs are
+   * encoded as {@code attacker * players + defender} and sorted, so they come in the same order
+   * as testing every attacker against every defender would.
+   *
+   * @return the number of pairs, see {@link #getPairs()}
+   */
+  public int sweep() {
+    // Insertion sort, nearly sorted from the previous tick.
+    for (int i = 1; i < order.length; i++) {
+      int box = order[i];
+      int j = i - 1;
+      while (j >= 0 && minX[order[j]] > minX[box]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = box;
+    }
+
+    pairCount = 0;
+    int activeCount = 0;
+    for (int box : order) {
+      if (minX[box] == Double.POSITIVE_INFINITY) {
+        break;
+      }
+
+      int kept = 0;
+      for (int i = 0; i < activeCount; i++) {
+        int other = active[i];
+        if (maxX[other] < minX[box]) {
+          continue;
+        }
+        active[kept++] = other;
+        if ((other & 1) != (box & 1) && other / 2 != box / 2
+            && maxY[other] >= minY[box] && minY[other] <= maxY[box]) {
+          int hit = (box & 1) == HIT ? box : other;
+          int hurt = hit == box ? other : box;
+          addPair(hit / 2 * players + hurt / 2);
+        }
+      }
+      activeCount = kept;
+      active[activeCount++] = box;
+    }
+
+    Arrays.sort(pairs, 0, pairCount);
+    return pairCount;
+  }
+
+  /**
+   * Adds a pair, growing the array of pairs if needed.
+   *
+   * @param pair the encoded pair
+   */
+  private void addPair(int pair) {
+    if (pairCount == pairs.length) {
+      pairs = Arrays.copyOf(pairs, pairs.length * 2);
+    }
+    pairs[pairCount++] = pair;
+  }
+
+  /**
+   * Gets the pairs found by the last sweep. The array is reused and only the first
+   * {@link #sweep()} entries are valid.
+   *
+   * @return the encoded pairs
+   */
+  public int[] getPairs() {
+    return pairs;
+  }
+}
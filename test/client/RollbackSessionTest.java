@@ -0,0 +1,153 @@
+package client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import common.GameStage;
+import common.StateArena;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RollbackSession} ends up in the same state whether the remote input arrives
+ * in time or late and has to be rolled back, or the match is taken over from a saved state.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class RollbackSessionTest {
+
+  private static final int INPUT_DELAY = 2;
+  private static final int MAX_ROLLBACK = 8;
+  private static final int FRAMES = 3000;
+  private static final double FRAME_TIME = 0.01;
+
+  // Final state of the last match played.
+  private StateArena saved;
+
+  /**
+   * Makes up the input of a player for every frame, changing a held action now and then.
+   *
+   * @param seed seed of the input
+   * @return one action bitmask per frame
+   */
+  private static int[] makeInput(long seed) {
+    Random random = new Random(seed);
+    int[] masks = new int[FRAMES + INPUT_DELAY + 1];
+    int mask = 0;
+    for (int f = 0; f < masks.length; f++) {
+      if (random.nextInt(12) == 0) {
+        mask ^= 1 << random.nextInt(6);
+      }
+      masks[f] = mask;
+    }
+    return masks;
+  }
+
+  /**
+   * Plays a match with the remote player's input arriving {@param latency} frames after the
+   * frame it is for, and saves the final state.
+   *
+   * @param latency frames the remote input is late, 0 for before it is needed
+   * @param fixedPoint whether the stage uses fixed-point physics
+   * @return the session, with its final state saved in region 0 of {@link #saved}
+   */
+  private RollbackSession play(int latency, boolean fixedPoint) {
+    int[] local = makeInput(1);
+    int[] remote = makeInput(2);
+    GameStage stage = new GameStage();
+    stage.setFixedPoint(fixedPoint);
+    RollbackSession session = new RollbackSession(stage, 0, INPUT_DELAY, MAX_ROLLBACK,
+        (frame, mask) -> { });
+
+    int sent = INPUT_DELAY - 1;
+    for (int f = 0; f < FRAMES; f++) {
+      for (; sent < f + INPUT_DELAY - latency; sent++) {
+        session.addRemoteInput(1, sent + 1, remote[sent + 1]);
+      }
+      session.setLocalInput(local[f]);
+      session.update(FRAME_TIME);
+    }
+    // The last frame is simulated with every input confirmed.
+    for (; sent < FRAMES + INPUT_DELAY; sent++) {
+      session.addRemoteInput(1, sent + 1, remote[sent + 1]);
+    }
+    session.setLocalInput(local[FRAMES]);
+    session.update(FRAME_TIME);
+
+    saved = session.createArena(1);
+    saved.save(stage, 0);
+    return session;
+  }
+
+  @Test
+  public void rollbackMatchesStraightRun() {
+    RollbackSession straight = play(0, false);
+    StateArena expected = saved;
+    RollbackSession rolledBack = play(6, false);
+
+    assertEquals(0, straight.getRollbacks());
+    assertTrue(rolledBack.getRollbacks() > 0);
+    assertEquals(straight.getFrame(), rolledBack.getFrame());
+    assertTrue(expected.matches(0, saved, 0));
+  }
+
+  @Test
+  public void rollbackMatchesStraightRunFixedPoint() {
+    RollbackSession straight = play(0, true);
+    StateArena expected = saved;
+    RollbackSession rolledBack = play(6, true);
+
+    assertTrue(rolledBack.getRollbacks() > 0);
+    assertEquals(straight.getFrame(), rolledBack.getFrame());
+    assertTrue(expected.matches(0, saved, 0));
+  }
+
+  @Test
+  public void loadedSessionMatchesOriginal() {
+    int[] local = makeInput(1);
+    int[] remote = makeInput(2);
+    GameStage stage = new GameStage();
+    RollbackSession original = new RollbackSession(stage, 0, INPUT_DELAY, MAX_ROLLBACK,
+        (frame, mask) -> { });
+    GameStage loadedStage = new GameStage();
+    RollbackSession loaded = new RollbackSession(loadedStage, 0, INPUT_DELAY, MAX_ROLLBACK,
+        (frame, mask) -> { });
+
+    int half = FRAMES / 2;
+    for (int f = 0; f < FRAMES; f++) {
+      if (f == half) {
+        // Handed over as the server does, with the local input already decided.
+        StateArena transfer = original.createArena(1);
+        byte[] state = new byte[transfer.getRegionBytes()];
+        transfer.save(stage, 0);
+        transfer.getRegion(0, state);
+        loaded.load(f, state, Arrays.copyOfRange(local, f - INPUT_DELAY, f), INPUT_DELAY);
+        for (int r = f; r < f + INPUT_DELAY; r++) {
+          loaded.addRemoteInput(1, r, remote[r]);
+        }
+      }
+      original.addRemoteInput(1, f + INPUT_DELAY, remote[f + INPUT_DELAY]);
+      original.setLocalInput(local[f]);
+      original.update(FRAME_TIME);
+      if (f >= half) {
+        loaded.addRemoteInput(1, f + INPUT_DELAY, remote[f + INPUT_DELAY]);
+        loaded.setLocalInput(local[f]);
+        loaded.update(FRAME_TIME);
+      }
+    }
+
+    StateArena expected = original.createArena(1);
+    expected.save(stage, 0);
+    saved = loaded.createArena(1);
+    saved.save(loadedStage, 0);
+    assertEquals(original.getFrame(), loaded.getFrame());
+    assertEquals(0, loaded.getRollbacks());
+    assertTrue(expected.matches(0, saved, 0));
+  }
+}
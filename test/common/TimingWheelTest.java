@@ -0,0 +1,149 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import common.TimingWheel.Timer;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link TimingWheel} fires timers on their deadline, also after they have been moved
+ * down from the upper wheels.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class TimingWheelTest {
+
+  private TimingWheel wheel;
+  // The tick each timer fired on, in the order they fired.
+  private ArrayList<Long> fired;
+
+  @Before
+  public void setUp() {
+    wheel = new TimingWheel();
+    fired = new ArrayList<>();
+  }
+
+  /**
+   * Creates a timer that records the tick it fires on, the tick that was current when the wheel
+   * was advanced.
+   *
+   * @return the timer
+   */
+  private Timer record() {
+    return new Timer(() -> fired.add(wheel.getTick() - 1));
+  }
+
+  /**
+   * Advances the wheel to a tick.
+   *
+   * @param tick the tick to stop on
+   */
+  private void advanceTo(long tick) {
+    while (wheel.getTick() < tick) {
+      wheel.advance();
+    }
+  }
+
+  @Test
+  public void firesOnDeadlineInEveryWheel() {
+    // Either side of where each wheel goes round.
+    long[] deadlines = {0, 1, 255, 256, 257, 511, 512, 65535, 65536, 65537, 70000, 16777215,
+        16777216, 16777300};
+    for (long deadline : deadlines) {
+      wheel.schedule(record(), deadline);
+    }
+    assertEquals(deadlines.length, wheel.size());
+
+    advanceTo(16777400);
+    assertEquals(deadlines.length, fired.size());
+    for (int i = 0; i < deadlines.length; i++) {
+      assertEquals(deadlines[i], (long) fired.get(i));
+    }
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void firesOnDeadlineScheduledMidRound() {
+    // Scheduled when the lower wheels are part way round, so the deadlines are in the middle of
+    // a slot of the upper wheels.
+    advanceTo(300);
+    wheel.schedule(record(), 300 + 256);
+    wheel.schedule(record(), 300 + 1000);
+    advanceTo(70000);
+    wheel.schedule(record(), 70000 + 65536 * 3 + 17);
+
+    advanceTo(400000);
+    assertEquals(3, fired.size());
+    assertEquals(556, (long) fired.get(0));
+    assertEquals(1300, (long) fired.get(1));
+    assertEquals(70000 + 65536 * 3 + 17, (long) fired.get(2));
+  }
+
+  @Test
+  public void cancelAfterCascade() {
+    Timer timer = record();
+    wheel.schedule(timer, 1000);
+    // Moved down from the second wheel on tick 768.
+    advanceTo(800);
+    assertTrue(timer.isScheduled());
+
+    wheel.cancel(timer);
+    assertFalse(timer.isScheduled());
+    assertEquals(0, wheel.size());
+    advanceTo(2000);
+    assertTrue(fired.isEmpty());
+  }
+
+  @Test
+  public void rescheduleFromUpperWheel() {
+    Timer timer = record();
+    wheel.schedule(timer, 70000);
+    advanceTo(66000);
+    // A deadline that has passed fires on the next advance.
+    wheel.schedule(timer, 600);
+    assertEquals(1, wheel.size());
+    advanceTo(80000);
+    assertEquals(1, fired.size());
+    assertEquals(66000, (long) fired.get(0));
+  }
+
+  @Test
+  public void timerScheduledWhileFiringWaitsForNextTick() {
+    Timer[] timer = new Timer[1];
+    timer[0] = new Timer(() -> {
+      fired.add(wheel.getTick() - 1);
+      if (fired.size() < 5) {
+        wheel.schedule(timer[0], wheel.getTick() + 299);
+      }
+    });
+    wheel.schedule(timer[0], 10);
+
+    advanceTo(5000);
+    assertEquals(5, fired.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(10 + 300 * i, (long) fired.get(i));
+    }
+  }
+
+  @Test
+  public void submittedTimerScheduledOnNextAdvance() throws InterruptedException {
+    advanceTo(250);
+    Thread other = new Thread(() -> wheel.submit(record(), 10));
+    other.start();
+    other.join();
+    assertEquals(0, wheel.size());
+
+    advanceTo(300);
+    assertEquals(1, fired.size());
+    assertEquals(260, (long) fired.get(0));
+  }
+}
@@ -0,0 +1,111 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+
+import common.FixedPoint;
+import common.GameStage;
+import common.PlayerStore;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that matches with fixed-point physics step the same way every time they are played
+ * with the same input.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class FixedPointTest {
+
+  private static final int TICKS = 3000;
+
+  /**
+   * Plays a match with random input and hashes its state after every tick.
+   *
+   * @param players the number of players
+   * @param jitter how much the length of a tick may be off, never enough to change its rate
+   * @param seed seed of the jitter
+   * @return the hash after each tick
+   */
+  private static long[] play(int players, double jitter, long seed) {
+    GameStage stage = new GameStage(players);
+    stage.setFixedPoint(true);
+    GameEngine engine = new GameEngine();
+    StageController controller = new StageController(stage);
+    controller.attach(engine);
+
+    Random input = new Random(5);
+    Random timing = new Random(seed);
+    long[] hashes = new long[TICKS];
+    for (int t = 0; t < TICKS; t++) {
+      for (int p = 0; p < players; p++) {
+        if (input.nextInt(10) == 0) {
+          PlayerController player = controller.getPlayerController(p);
+          player.applyActionMask(player.getActionMask() ^ 1 << input.nextInt(6));
+        }
+      }
+      engine.tick(0.01 + (timing.nextDouble() - 0.5) * jitter);
+      assertOnGrid(stage.getStore());
+      hashes[t] = FixedPoint.hash(stage.getStore());
+    }
+    return hashes;
+  }
+
+  /**
+   * Checks that the positions and velocities of every player are whole fixed-point numbers.
+   *
+   * @param store the store
+   */
+  private static void assertOnGrid(PlayerStore store) {
+    for (int i = 0; i < store.size(); i++) {
+      assertOnGrid(store.getX()[i]);
+      assertOnGrid(store.getY()[i]);
+      assertOnGrid(store.getVelocityX()[i]);
+      assertOnGrid(store.getVelocityY()[i]);
+    }
+  }
+
+  /**
+   * Checks that a number is a whole fixed-point number.
+   *
+   * @param value the number
+   */
+  private static void assertOnGrid(double value) {
+    assertEquals(value, FixedPoint.toDouble(FixedPoint.toFixed(value)), 0);
+  }
+
+  @Test
+  public void convertsExactly() {
+    assertEquals(FixedPoint.ONE, FixedPoint.toFixed(1));
+    assertEquals(-FixedPoint.ONE / 2, FixedPoint.toFixed(-0.5));
+    assertEquals(1, FixedPoint.toFixed(1d / FixedPoint.ONE));
+    for (long value : new long[]{0, 1, -1, 12345, -987654321, 16 * FixedPoint.ONE + 3}) {
+      assertEquals(value, FixedPoint.toFixed(FixedPoint.toDouble(value)));
+    }
+    assertEquals(100, FixedPoint.toRate(0.01));
+    assertEquals(100, FixedPoint.toRate(0.01004));
+  }
+
+  @Test
+  public void sameInputSameState() {
+    long[] first = play(2, 0, 1);
+    long[] second = play(2, 0, 1);
+    for (int t = 0; t < TICKS; t++) {
+      assertEquals("tick " + t, first[t], second[t]);
+    }
+  }
+
+  @Test
+  public void sameStateWhateverTheTickLength() {
+    // Ticks of slightly different lengths have the same rate, which is all the physics uses.
+    long[] steady = play(3, 0, 1);
+    long[] jittery = play(3, 0.00008, 2);
+    for (int t = 0; t < TICKS; t++) {
+      assertEquals("tick " + t, steady[t], jittery[t]);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+
+import common.GamePlayer.ACTION;
+import common.MotionMatcher;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests recognising motion inputs with {@link InputHistory} and {@link MotionMatcher}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class InputHistoryTest {
+
+  private static final int LEFT = 1 << ACTION.MOVE_LEFT.ordinal();
+  private static final int RIGHT = 1 << ACTION.MOVE_RIGHT.ordinal();
+  private static final int UP = 1 << ACTION.JUMP.ordinal();
+  private static final int DOWN = 1 << ACTION.FALL.ordinal();
+  private static final int PUNCH = 1 << ACTION.HIT.ordinal();
+  private static final int KICK = 1 << ACTION.KICK.ordinal();
+
+  private static final int FIREBALL = 0;
+  private static final int FLASH_KICK = 1;
+  private static final int ROLL = 2;
+
+  private MotionMatcher matcher;
+  private InputHistory history;
+
+  @Before
+  public void setUp() {
+    matcher = new MotionMatcher();
+    matcher.addMotion("Fireball", "236P", 25, 0);
+    matcher.addMotion("Flash kick", "28K", 15, 50);
+    matcher.addMotion("Roll", "236", 10, 0);
+    history = new InputHistory(matcher, 64);
+  }
+
+  /**
+   * Records a mask for a number of ticks.
+   *
+   * @return the motion completed in the last of them, or -1
+   */
+  private int hold(int mask, int ticks, boolean faceRight) {
+    int motion = -1;
+    for (int i = 0; i < ticks; i++) {
+      motion = history.record(mask, faceRight);
+    }
+    return motion;
+  }
+
+  @Test
+  public void quarterCircleAndPunch() {
+    hold(DOWN, 2, true);
+    hold(DOWN | RIGHT, 2, true);
+    hold(RIGHT, 2, true);
+    assertEquals(FIREBALL, hold(RIGHT | PUNCH, 1, true));
+  }
+
+  @Test
+  public void neutralBetweenDirectionsKeepsMotion() {
+    hold(DOWN, 2, true);
+    hold(0, 3, true);
+    hold(DOWN | RIGHT, 2, true);
+    hold(RIGHT, 2, true);
+    assertEquals(FIREBALL, hold(RIGHT | PUNCH, 1, true));
+  }
+
+  @Test
+  public void directionAndButtonInSameTick() {
+    hold(DOWN, 2, true);
+    hold(DOWN | RIGHT, 2, true);
+    // The direction completes the roll and the punch the fireball, which was added first.
+    assertEquals(FIREBALL, hold(RIGHT | PUNCH, 1, true));
+  }
+
+  @Test
+  public void windowCountsFromCompletingSymbol() {
+    hold(DOWN, 2, true);
+    hold(DOWN | RIGHT, 20, true);
+    // The roll is completed by the direction, not the punch pressed with it, and is too slow.
+    assertEquals(-1, hold(RIGHT | KICK, 1, true));
+  }
+
+  @Test
+  public void directionEndingMotionWithButtonInSameTick() {
+    hold(DOWN, 2, true);
+    hold(DOWN | RIGHT, 5, true);
+    assertEquals(ROLL, hold(RIGHT | KICK, 1, true));
+  }
+
+  @Test
+  public void mirroredMotion() {
+    hold(DOWN, 2, false);
+    hold(DOWN | LEFT, 2, false);
+    hold(LEFT, 2, false);
+    assertEquals(FIREBALL, hold(LEFT | PUNCH, 1, false));
+  }
+
+  @Test
+  public void mirroredMotionOnlyForFacing() {
+    hold(DOWN, 2, true);
+    hold(DOWN | LEFT, 2, true);
+    hold(LEFT, 2, true);
+    assertEquals(-1, hold(LEFT | PUNCH, 1, true));
+
+    hold(0, 30, false);
+    hold(DOWN, 2, false);
+    hold(DOWN | RIGHT, 2, false);
+    hold(RIGHT, 2, false);
+    assertEquals(-1, hold(RIGHT | PUNCH, 1, false));
+  }
+
+  @Test
+  public void chargedMotion() {
+    hold(DOWN, 60, true);
+    hold(UP, 2, true);
+    assertEquals(FLASH_KICK, hold(UP | KICK, 1, true));
+  }
+
+  @Test
+  public void chargeTooShort() {
+    hold(DOWN, 20, true);
+    hold(UP, 2, true);
+    assertEquals(-1, hold(UP | KICK, 1, true));
+  }
+
+  @Test
+  public void chargeInterruptedByNeutral() {
+    hold(DOWN, 10, true);
+    hold(0, 45, true);
+    hold(UP, 2, true);
+    assertEquals(-1, hold(UP | KICK, 1, true));
+  }
+
+  @Test
+  public void maskHistory() {
+    hold(DOWN, 3, true);
+    hold(PUNCH, 1, true);
+    assertEquals(PUNCH, history.getMask(0));
+    assertEquals(DOWN, history.getMask(1));
+    assertEquals(1, history.getHeldTicks(ACTION.HIT));
+    assertEquals(0, history.getHeldTicks(ACTION.FALL));
+    assertEquals(4, history.getTick());
+  }
+}
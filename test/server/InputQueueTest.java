@@ -0,0 +1,109 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link InputQueue} hands events to the consumer in the order they were offered.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class InputQueueTest {
+
+  private static final int PRODUCERS = 4;
+  private static final int EVENTS = 100000;
+
+  @Test
+  public void pollsInOrderOffered() {
+    InputQueue queue = new InputQueue(8);
+    // Round the ring a few times.
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 6; i++) {
+        assertTrue(queue.offer(round * 10 + i, round * 6 + i));
+      }
+      for (int i = 0; i < 6; i++) {
+        assertEquals(round * 6 + i, queue.poll(Long.MAX_VALUE));
+        assertEquals(round * 10 + i, queue.getPolledTime());
+      }
+      assertTrue(queue.isEmpty());
+      assertEquals(-1, queue.poll(Long.MAX_VALUE));
+    }
+  }
+
+  @Test
+  public void holdsBackLaterEvents() {
+    InputQueue queue = new InputQueue(8);
+    queue.offer(100, 1);
+    queue.offer(200, 2);
+    queue.offer(150, 3);
+
+    assertEquals(1, queue.poll(199));
+    // The oldest event is later, so the earlier one behind it waits as well.
+    assertEquals(-1, queue.poll(199));
+    assertFalse(queue.isEmpty());
+    assertEquals(2, queue.poll(200));
+    assertEquals(3, queue.poll(200));
+  }
+
+  @Test
+  public void dropsWhenFull() {
+    InputQueue queue = new InputQueue(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(0, i));
+    }
+    assertFalse(queue.offer(0, 4));
+
+    assertEquals(0, queue.poll(0));
+    assertTrue(queue.offer(0, 5));
+    for (int expected : new int[]{1, 2, 3, 5}) {
+      assertEquals(expected, queue.poll(0));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityMustBePowerOfTwo() {
+    new InputQueue(6);
+  }
+
+  @Test
+  public void keepsOrderOfEachProducer() throws InterruptedException {
+    InputQueue queue = new InputQueue(64);
+    Thread[] producers = new Thread[PRODUCERS];
+    for (int p = 0; p < PRODUCERS; p++) {
+      int producer = p;
+      producers[p] = new Thread(() -> {
+        for (int i = 0; i < EVENTS; i++) {
+          while (!queue.offer(0, i * PRODUCERS + producer)) {
+            Thread.yield();
+          }
+        }
+      });
+      producers[p].start();
+    }
+
+    // Events of one producer come in the order it offered them, none lost or repeated.
+    int[] next = new int[PRODUCERS];
+    for (int polled = 0; polled < EVENTS * PRODUCERS; ) {
+      int event = queue.poll(0);
+      if (event < 0) {
+        Thread.yield();
+        continue;
+      }
+      int producer = event % PRODUCERS;
+      assertEquals(next[producer]++, event / PRODUCERS);
+      polled++;
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+}
@@ -0,0 +1,114 @@
+package server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import common.GameStage;
+import common.PlayerStore;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that matches ticked by a {@link MatchBatch} end up exactly where ticking their engines one
+ * by one takes them.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class MatchBatchTest {
+
+  private static final int MATCHES = 5;
+  private static final int TICKS = 2000;
+
+  @After
+  public void tearDown() {
+    PhysicsKernel.setVectorized(false);
+  }
+
+  /**
+   * Plays a number of matches with the same random input.
+   *
+   * @param batched whether to tick the matches in a batch
+   * @param fixedPoint whether the stages use fixed-point physics
+   * @return the stages
+   */
+  private static GameStage[] play(boolean batched, boolean fixedPoint) {
+    GameStage[] stages = new GameStage[MATCHES];
+    GameEngine[] engines = new GameEngine[MATCHES];
+    StageController[] controllers = new StageController[MATCHES];
+    MatchBatch batch = new MatchBatch();
+    for (int m = 0; m < MATCHES; m++) {
+      stages[m] = new GameStage(2 + m % 2);
+      stages[m].setFixedPoint(fixedPoint && m % 2 == 0);
+      engines[m] = new GameEngine();
+      controllers[m] = new StageController(stages[m]);
+      controllers[m].attach(engines[m]);
+      batch.add(engines[m], controllers[m]);
+    }
+
+    Random random = new Random(3);
+    for (int t = 0; t < TICKS; t++) {
+      for (int m = 0; m < MATCHES; m++) {
+        for (int p = 0; p < stages[m].getPlayers().length; p++) {
+          if (random.nextInt(10) == 0) {
+            PlayerController controller = controllers[m].getPlayerController(p);
+            controller.setActionMask(controller.getActionMask() ^ 1 << random.nextInt(6));
+          }
+        }
+      }
+      double delta = t % 3 == 0 ? 0.011 : 0.01;
+      if (batched) {
+        batch.tick(delta);
+      } else {
+        for (GameEngine engine : engines) {
+          engine.tick(delta);
+        }
+      }
+    }
+    return stages;
+  }
+
+  /**
+   * Checks that the players of two sets of stages have the same bits.
+   *
+   * @param expected stages ticked one by one
+   * @param actual stages ticked in a batch
+   */
+  private static void assertSameStages(GameStage[] expected, GameStage[] actual) {
+    for (int m = 0; m < MATCHES; m++) {
+      PlayerStore a = expected[m].getStore();
+      PlayerStore b = actual[m].getStore();
+      assertArrayEquals(PhysicsKernelTest.bits(a.getX()), PhysicsKernelTest.bits(b.getX()));
+      assertArrayEquals(PhysicsKernelTest.bits(a.getY()), PhysicsKernelTest.bits(b.getY()));
+      assertArrayEquals(PhysicsKernelTest.bits(a.getVelocityX()),
+          PhysicsKernelTest.bits(b.getVelocityX()));
+      assertArrayEquals(PhysicsKernelTest.bits(a.getVelocityY()),
+          PhysicsKernelTest.bits(b.getVelocityY()));
+      assertArrayEquals(a.getHP(), b.getHP());
+      assertArrayEquals(a.getFlags(), b.getFlags());
+      assertArrayEquals(a.getPhases(), b.getPhases());
+    }
+  }
+
+  @Test
+  public void batchMatchesEngines() {
+    assertSameStages(play(false, false), play(true, false));
+  }
+
+  @Test
+  public void vectorBatchMatchesEngines() {
+    PhysicsKernel.setVectorized(true);
+    assumeTrue(PhysicsKernel.isVectorized());
+    assertSameStages(play(false, false), play(true, false));
+  }
+
+  @Test
+  public void batchWithFixedPointMatchesEngines() {
+    assertSameStages(play(false, true), play(true, true));
+  }
+}
@@ -0,0 +1,114 @@
+package server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+import common.PlayerStore;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that the Vector API step of {@link PhysicsKernel} steps players exactly like its scalar
+ * step. Skipped unless the classes compiled from {@code src-vector} are on the class path and
+ * the tests are run with {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class PhysicsKernelTest {
+
+  // Not a multiple of any vector length, so the scalar tail is used as well.
+  private static final int PLAYERS = 67;
+  private static final int TICKS = 200;
+
+  @After
+  public void tearDown() {
+    PhysicsKernel.setVectorized(false);
+  }
+
+  /**
+   * Makes up players all over the stage and beyond it, some of them exactly on the ground or
+   * against a wall.
+   *
+   * @param grounds filled with the ground of each player
+   * @return the store
+   */
+  private static PlayerStore makePlayers(double[] grounds) {
+    Random random = new Random(7);
+    PlayerStore store = new PlayerStore(PLAYERS);
+    for (int i = 0; i < PLAYERS; i++) {
+      grounds[i] = 4 + random.nextInt(3);
+      store.getWidth()[i] = 0.5 + random.nextDouble();
+      store.getHeight()[i] = 1 + random.nextInt(3) * 0.5;
+      store.getX()[i] = -2 + random.nextDouble() * 20;
+      store.getY()[i] = -3 + random.nextDouble() * 10;
+      store.getVelocityX()[i] = (random.nextDouble() - 0.5) * 60;
+      store.getVelocityY()[i] = (random.nextDouble() - 0.5) * 60;
+      store.getFlags()[i] = random.nextInt(4);
+      switch (i % 5) {
+        case 0:
+          store.getY()[i] = grounds[i] - store.getHeight()[i];
+          break;
+        case 1:
+          store.getX()[i] = PhysicsKernel.STAGE_WIDTH - store.getWidth()[i];
+          break;
+        case 2:
+          store.getX()[i] = 0;
+          break;
+        default:
+          break;
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Steps players a number of ticks.
+   *
+   * @param vectorized whether to use the Vector API
+   * @return the store after the last tick
+   */
+  private static PlayerStore run(boolean vectorized) {
+    double[] grounds = new double[PLAYERS];
+    PlayerStore store = makePlayers(grounds);
+    PhysicsKernel.setVectorized(vectorized);
+    for (int t = 0; t < TICKS; t++) {
+      PhysicsKernel.step(store, grounds, new double[PLAYERS], PLAYERS, t % 3 == 0 ? 0.011 : 0.01);
+    }
+    return store;
+  }
+
+  @Test
+  public void vectorMatchesScalar() {
+    PhysicsKernel.setVectorized(true);
+    assumeTrue(PhysicsKernel.isVectorized());
+
+    PlayerStore scalar = run(false);
+    PlayerStore vector = run(true);
+    assertArrayEquals(bits(scalar.getX()), bits(vector.getX()));
+    assertArrayEquals(bits(scalar.getY()), bits(vector.getY()));
+    assertArrayEquals(bits(scalar.getVelocityX()), bits(vector.getVelocityX()));
+    assertArrayEquals(bits(scalar.getVelocityY()), bits(vector.getVelocityY()));
+    assertArrayEquals(scalar.getFlags(), vector.getFlags());
+  }
+
+  /**
+   * Gets the bits of doubles, so that equal values with different bits such as zero and
+   * negative zero differ.
+   *
+   * @param values the doubles
+   * @return the bits of each
+   */
+  static long[] bits(double[] values) {
+    long[] bits = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bits[i] = Double.doubleToRawLongBits(values[i]);
+    }
+    return bits;
+  }
+}
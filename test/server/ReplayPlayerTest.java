@@ -0,0 +1,160 @@
+package server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import common.GamePlayer;
+import common.GamePlayer.ACTION;
+import common.GameStage;
+import common.StageSnapshot;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javafx.geometry.Point2D;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ReplayPlayer} plays a match recorded by {@link MatchRecorder} the way it was
+ * played live, with input applied at the same point of the tick.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class ReplayPlayerTest {
+
+  private static final int TPS = 100;
+  private static final int TICKS = 1000;
+
+  private Path file;
+  private GameStage stage;
+  private GameEngine engine;
+  private StageController controller;
+  private MatchRecorder recorder;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("match", ".rep");
+    Files.delete(file);
+    // Set up like the server, input is queued between ticks.
+    stage = new GameStage();
+    engine = new GameEngine();
+    controller = new StageController(stage);
+    controller.attach(engine);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (recorder != null) {
+      recorder.close();
+    }
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Starts recording the match from its current state.
+   *
+   * @throws IOException if the recording can not be started
+   */
+  private void record() throws IOException {
+    recorder = new MatchRecorder(file, stage, TPS);
+    for (int p = 0; p < stage.getPlayers().length; p++) {
+      controller.getPlayerController(p).setRecorder(recorder, p);
+    }
+    recorder.attach(engine);
+  }
+
+  /**
+   * Gets the state of every player on a stage as bytes.
+   *
+   * @param stage the stage
+   * @return the state
+   */
+  private static byte[] state(GameStage stage) {
+    StageSnapshot snapshot = StageSnapshot.capture(stage);
+    ByteBuffer buffer = ByteBuffer.allocate(snapshot.getByteSize());
+    snapshot.write(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Plays a match with random input, recording it.
+   *
+   * @return the state after every tick
+   * @throws IOException if the recording can not be started
+   */
+  private byte[][] playRandom() throws IOException {
+    record();
+    int players = stage.getPlayers().length;
+    Random input = new Random(3);
+    int[] masks = new int[players];
+    byte[][] live = new byte[TICKS + 1][];
+    live[0] = state(stage);
+    for (int t = 1; t <= TICKS; t++) {
+      for (int p = 0; p < players; p++) {
+        if (input.nextInt(8) == 0) {
+          masks[p] ^= 1 << input.nextInt(6);
+          controller.getPlayerController(p).queueActionMask(masks[p]);
+        }
+      }
+      engine.tick(1d / TPS);
+      live[t] = state(stage);
+    }
+    recorder.close();
+    return live;
+  }
+
+  @Test
+  public void playsLikeLive() throws IOException {
+    byte[][] live = playRandom();
+    ReplayPlayer replay = new ReplayPlayer(file);
+    assertEquals(TICKS, replay.getLength());
+    for (int t = 1; t <= TICKS; t++) {
+      replay.step();
+      assertArrayEquals("tick " + t, live[t], state(replay.getGameStage()));
+    }
+  }
+
+  @Test
+  public void seeksLikeLive() throws IOException {
+    byte[][] live = playRandom();
+    ReplayPlayer replay = new ReplayPlayer(file);
+    for (int target : new int[]{750, 130, 999, 0, 401}) {
+      replay.seek(target);
+      assertEquals(target, replay.getTick());
+      assertArrayEquals("tick " + target, live[target], state(replay.getGameStage()));
+    }
+  }
+
+  @Test
+  public void startsWalkingAfterHitsLikeLive() throws IOException {
+    // Right of where the attacker's punch will be, close enough to walk through it in a tick.
+    GamePlayer[] players = stage.getPlayers();
+    players[1].setPosition(new Point2D(4, players[0].getPosition().getY()));
+    record();
+
+    for (int t = 0; t < 100; t++) {
+      engine.tick(1d / TPS);
+    }
+    controller.getPlayerController(0).queueActionMask(1 << ACTION.HIT.ordinal());
+    for (int t = 0; t < 25; t++) {
+      engine.tick(1d / TPS);
+    }
+    // The walk starts after the hits of the tick are checked, so the punch misses.
+    controller.getPlayerController(1).queueActionMask(1 << ACTION.MOVE_LEFT.ordinal());
+    engine.tick(0.5);
+    recorder.close();
+    assertEquals(100, players[1].getHP());
+
+    ReplayPlayer replay = new ReplayPlayer(file);
+    replay.seek(replay.getLength());
+    assertArrayEquals(state(stage), state(replay.getGameStage()));
+  }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import common.FrameTable;
+import common.GamePlayer;
+import common.GamePlayer.ACTION;
+import common.GameStage;
+import javafx.geometry.Point2D;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link StageController} sweeps hurtboxes along the movement of their player, so
+ * that a player passing through a hitbox between two ticks is hit.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class StageControllerTest {
+
+  private static final double TICK = 0.01;
+
+  private GameStage stage;
+  private GameEngine engine;
+  private StageController controller;
+  private GamePlayer attacker;
+  private GamePlayer defender;
+  // Bounds of the hitbox of the attacker, then of the hurtboxes of the defender.
+  private double[] bounds;
+
+  @Before
+  public void setUp() {
+    stage = new GameStage();
+    engine = new GameEngine();
+    controller = new StageController(stage);
+    controller.attach(engine);
+    attacker = stage.getPlayers()[0];
+    defender = stage.getPlayers()[1];
+    bounds = new double[64];
+
+    // Land, then punch until the hitbox is out.
+    for (int t = 0; t < 100; t++) {
+      engine.tick(TICK);
+    }
+    controller.getPlayerController(0).applyActionMask(1 << ACTION.HIT.ordinal());
+    for (int t = 0; t < 25; t++) {
+      engine.tick(TICK);
+    }
+    assertEquals(1, attacker.getBoxBounds(FrameTable.HIT, bounds, 0, 1));
+  }
+
+  /**
+   * Puts the defender to the right of the hitbox of the attacker, on the ground.
+   *
+   * @param velocityX x-velocity of the defender
+   */
+  private void placeDefender(double velocityX) {
+    defender.setPosition(new Point2D(5, attacker.getPosition().getY()));
+    defender.setVelocity(new Point2D(velocityX, 0));
+  }
+
+  /**
+   * Checks that no hurtbox of the defender touches the hitbox of the attacker where they are
+   * and where the defender will have moved to, unless hit on the way.
+   *
+   * @param dx how far the defender moves along x
+   */
+  private void assertClear(double dx) {
+    int hurt = defender.getHurtBoxBounds(bounds, 4, 8);
+    for (int i = 4; i < 4 + hurt * 4; i += 4) {
+      assertTrue(bounds[i] > bounds[2] || bounds[i + 2] < bounds[0]);
+      assertTrue(bounds[i] + dx > bounds[2] || bounds[i + 2] + dx < bounds[0]);
+    }
+  }
+
+  @Test
+  public void fastPlayerPassingThroughIsHit() {
+    placeDefender(-200);
+    // Slowed by the friction of the ground before it moves.
+    assertClear(-200 * (1 - 5 * TICK) * TICK);
+    engine.tick(TICK);
+
+    assertEquals(90, defender.getHP());
+  }
+
+  @Test
+  public void walkingPastIsHit() {
+    placeDefender(0);
+    controller.getPlayerController(1).setActionMask(1 << ACTION.MOVE_LEFT.ordinal());
+    // Long enough to walk through the hitbox in one tick.
+    assertClear(-PlayerController.WALK_SPEED * 0.5);
+    engine.tick(0.5);
+
+    assertEquals(90, defender.getHP());
+  }
+
+  @Test
+  public void stoppingShortIsNotHit() {
+    placeDefender(-50);
+    engine.tick(TICK);
+
+    assertTrue(defender.getPosition().getX() < 5);
+    assertClear(0);
+    assertEquals(100, defender.getHP());
+  }
+}
@@ -0,0 +1,131 @@
+package server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that {@link SweepAndPrune} finds the same pairs, in the same order, as testing every
+ * attacker against every defender.
+ *
+ * @author Alexander Andersson (alexaan)
+ * @author Linus Berglund (belinus)
+ * @author Erik Källberg (kalerik)
+ * @author Timmy Truong (timmyt)
+ * @author Karl Ängermark (karlang)
+ * @version 2017-02-28
+ */
+public class SweepAndPruneTest {
+
+  private static final int PLAYERS = 24;
+  private static final int TICKS = 200;
+
+  /**
+   * Gets the pairs of the last sweep.
+   *
+   * @param broadphase the broadphase
+   * @param count the number of pairs it found
+   * @return the pairs
+   */
+  private static int[] pairs(SweepAndPrune broadphase, int count) {
+    return Arrays.copyOf(broadphase.getPairs(), count);
+  }
+
+  @Test
+  public void sameAsEveryPair() {
+    Random random = new Random(11);
+    SweepAndPrune broadphase = new SweepAndPrune(PLAYERS);
+    // minX, minY, maxX, maxY of the bounding box of each player and kind.
+    double[][] boxes = new double[PLAYERS * 2][4];
+    boolean[] empty = new boolean[PLAYERS * 2];
+    for (int b = 0; b < boxes.length; b++) {
+      boxes[b][0] = random.nextDouble() * 16;
+      boxes[b][1] = random.nextDouble() * 6;
+    }
+
+    for (int t = 0; t < TICKS; t++) {
+      // Players move a little every tick and now and then start or stop attacking.
+      for (int b = 0; b < boxes.length; b++) {
+        boxes[b][0] += (random.nextDouble() - 0.5) * 0.5;
+        boxes[b][1] += (random.nextDouble() - 0.5) * 0.5;
+        boxes[b][2] = boxes[b][0] + 0.5 + random.nextDouble();
+        boxes[b][3] = boxes[b][1] + 0.5 + random.nextDouble();
+        if (random.nextInt(8) == 0) {
+          empty[b] = !empty[b];
+        }
+        broadphase.setBoxes(b / 2, b % 2, boxes[b], 0, empty[b] ? 0 : 1);
+      }
+
+      int[] expected = new int[PLAYERS * PLAYERS];
+      int count = 0;
+      for (int attacker = 0; attacker < PLAYERS; attacker++) {
+        for (int defender = 0; defender < PLAYERS; defender++) {
+          double[] hit = boxes[attacker * 2 + SweepAndPrune.HIT];
+          double[] hurt = boxes[defender * 2 + SweepAndPrune.HURT];
+          if (attacker != defender && !empty[attacker * 2 + SweepAndPrune.HIT]
+              && !empty[defender * 2 + SweepAndPrune.HURT]
+              && hit[0] <= hurt[2] && hit[2] >= hurt[0] && hit[1] <= hurt[3]
+              && hit[3] >= hurt[1]) {
+            expected[count++] = attacker * PLAYERS + defender;
+          }
+        }
+      }
+      assertArrayEquals("tick " + t, Arrays.copyOf(expected, count),
+          pairs(broadphase, broadphase.sweep()));
+    }
+  }
+
+  @Test
+  public void boundsEveryBox() {
+    SweepAndPrune broadphase = new SweepAndPrune(2);
+    // Two hitboxes far apart, the hurtbox only touches the second.
+    double[] hit = {0, 0, 1, 1, 5, 0, 6, 1};
+    double[] hurt = {5.5, 0.5, 7, 2};
+    broadphase.setBoxes(0, SweepAndPrune.HIT, hit, 0, 2);
+    broadphase.setBoxes(1, SweepAndPrune.HURT, hurt, 0, 1);
+    assertArrayEquals(new int[]{1}, pairs(broadphase, broadphase.sweep()));
+
+    // Only the first hitbox, from an offset.
+    broadphase.setBoxes(0, SweepAndPrune.HIT, hit, 0, 1);
+    assertEquals(0, broadphase.sweep());
+    broadphase.setBoxes(0, SweepAndPrune.HIT, hit, 4, 1);
+    assertEquals(1, broadphase.sweep());
+  }
+
+  @Test
+  public void pairsBoxesPassingEachOther() {
+    SweepAndPrune broadphase = new SweepAndPrune(2);
+    double[] hit = {4, 4, 4.5, 4.5};
+    double[] hurt = {6, 4, 6.5, 5};
+    broadphase.setBoxes(0, SweepAndPrune.HIT, hit, 0, 1);
+
+    // Ends on the other side of the hitbox by the next tick.
+    broadphase.setBoxes(1, SweepAndPrune.HURT, hurt, 0, 1, -4, 0);
+    assertEquals(1, broadphase.sweep());
+    // Stops short of it.
+    broadphase.setBoxes(1, SweepAndPrune.HURT, hurt, 0, 1, -1, 0);
+    assertEquals(0, broadphase.sweep());
+    // Moving away from it.
+    broadphase.setBoxes(1, SweepAndPrune.HURT, hurt, 0, 1, 4, 0);
+    assertEquals(0, broadphase.sweep());
+    // The attacker rushing in instead.
+    broadphase.setBoxes(1, SweepAndPrune.HURT, hurt, 0, 1);
+    broadphase.setBoxes(0, SweepAndPrune.HIT, hit, 0, 1, 3, 0);
+    assertEquals(1, broadphase.sweep());
+  }
+
+  @Test
+  public void neverPairsPlayerWithItself() {
+    SweepAndPrune broadphase = new SweepAndPrune(3);
+    double[] box = {1, 1, 2, 2};
+    broadphase.setBoxes(1, SweepAndPrune.HIT, box, 0, 1);
+    broadphase.setBoxes(1, SweepAndPrune.HURT, box, 0, 1);
+    assertEquals(0, broadphase.sweep());
+
+    broadphase.setBoxes(2, SweepAndPrune.HURT, box, 0, 1);
+    assertArrayEquals(new int[]{1 * 3 + 2}, pairs(broadphase, broadphase.sweep()));
+  }
+}